@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx;
+
+import javax.annotation.Nullable;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.crashinvaders.vfx.effects.ChainVfxEffect;
+import com.crashinvaders.vfx.effects.VfxEffect;
+import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
+import com.crashinvaders.vfx.gl.VfxGLUtils;
+
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Reuses the output of the unchanged leading effects of an effect chain
+ * across frames.
+ * <p>
+ * The cache keeps a copy of the chain input and a checkpoint: the output of
+ * the longest prefix of effects that are not {@linkplain VfxEffect#VOLATILE
+ * volatile} and whose {@linkplain VfxEffect#getRevision() revisions} haven't
+ * changed since the previous frame. As long as the input and these effects
+ * stay the same, the chain resumes from the checkpoint. A fully static chain
+ * costs a single copy.
+ */
+final class VfxChainCache implements Disposable {
+
+    private final VfxRenderContext context;
+
+    private NestableFrameBuffer input;
+    private int inputGeneration;
+    private boolean inputValid;
+
+    private NestableFrameBuffer checkpoint;
+    private int checkpointLength = -1;
+    private final Array<ChainVfxEffect> checkpointEffects = new Array<>();
+    private final IntArray checkpointRevisions = new IntArray();
+
+    private final Array<ChainVfxEffect> lastEffects = new Array<>();
+    private final IntArray lastRevisions = new IntArray();
+    private final IntArray revisions = new IntArray();
+
+    private ChainVfxEffect pendingEffect;
+    private int pendingLength;
+
+    VfxChainCache(VfxRenderContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Prepares the chain buffers before the chain is rendered. They must not
+     * be capturing, with the captured input in the source buffer.
+     *
+     * @param generation
+     *            changes whenever a new input has been captured
+     * @return the index of the first effect that has to be rendered. If all
+     *         effects can be skipped, the result is already in the
+     *         destination buffer.
+     */
+    int begin(Array<ChainVfxEffect> chain, int generation,
+            VfxPingPongWrapper buffers) {
+        int stable = updateRevisions(chain);
+
+        boolean blendingWasEnabled = VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+
+        int first;
+        if (!inputValid || generation != inputGeneration) {
+            if (input == null) {
+                input = context.getBufferPool().obtain();
+            }
+            context.getBufferRenderer().renderToFbo(buffers.getSrcBuffer(),
+                    input);
+            inputGeneration = generation;
+            inputValid = true;
+            checkpointLength = -1;
+            first = 0;
+        } else if (matchesCheckpoint(chain)) {
+            first = checkpointLength;
+            context.getBufferRenderer().renderToFbo(checkpoint,
+                    first == chain.size ? buffers.getDstBuffer()
+                            : buffers.getSrcBuffer());
+        } else {
+            first = 0;
+            context.getBufferRenderer().renderToFbo(input,
+                    buffers.getSrcBuffer());
+        }
+
+        if (blendingWasEnabled) {
+            Gdx.gl.glEnable(GL20.GL_BLEND);
+        }
+
+        // Move the checkpoint behind the stable effects.
+        pendingEffect = stable > first ? chain.get(stable - 1) : null;
+        pendingLength = stable;
+        return first;
+    }
+
+    /**
+     * Records the revisions of the chain's effects for the next call.
+     *
+     * @return the number of leading effects that are the same as in the
+     *         previous call, are not volatile and haven't changed since
+     */
+    int updateRevisions(Array<ChainVfxEffect> chain) {
+        revisions.clear();
+        for (int i = 0; i < chain.size; i++) {
+            revisions.add(chain.get(i).getRevision());
+        }
+
+        int stable = 0;
+        while (stable < chain.size && stable < lastEffects.size
+                && revisions.get(stable) != VfxEffect.VOLATILE
+                && chain.get(stable) == lastEffects.get(stable)
+                && revisions.get(stable) == lastRevisions.get(stable)) {
+            stable++;
+        }
+        lastEffects.clear();
+        lastEffects.addAll(chain);
+        lastRevisions.clear();
+        lastRevisions.addAll(revisions);
+        return stable;
+    }
+
+    /**
+     * Stores the checkpoint, if the effect is the last one of the stable
+     * prefix. Has to be called after each effect, with its output in the
+     * destination buffer.
+     *
+     * @param buffers
+     *            the buffers holding the output or <code>null</code>, if it
+     *            can't be read back; the previous checkpoint is kept then
+     */
+    void endEffect(ChainVfxEffect effect,
+            @Nullable VfxPingPongWrapper buffers) {
+        if (effect != pendingEffect)
+            return;
+        if (buffers == null) {
+            pendingEffect = null;
+            return;
+        }
+
+        if (checkpoint == null) {
+            checkpoint = context.getBufferPool().obtain();
+        }
+        boolean blendingWasEnabled = VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+        context.getBufferRenderer().renderToFbo(buffers.getDstBuffer(),
+                checkpoint);
+        if (blendingWasEnabled) {
+            Gdx.gl.glEnable(GL20.GL_BLEND);
+        }
+
+        checkpointLength = pendingLength;
+        checkpointEffects.clear();
+        checkpointRevisions.clear();
+        for (int i = 0; i < pendingLength; i++) {
+            checkpointEffects.add(lastEffects.get(i));
+            checkpointRevisions.add(lastRevisions.get(i));
+        }
+        pendingEffect = null;
+    }
+
+    /**
+     * Drops the cached input and checkpoint, e.g. because the buffers have
+     * been resized.
+     */
+    void invalidate() {
+        if (input != null) {
+            context.getBufferPool().free(input);
+            input = null;
+        }
+        if (checkpoint != null) {
+            context.getBufferPool().free(checkpoint);
+            checkpoint = null;
+        }
+        inputValid = false;
+        checkpointLength = -1;
+        checkpointEffects.clear();
+        lastEffects.clear();
+        pendingEffect = null;
+    }
+
+    @Override
+    public void dispose() {
+        invalidate();
+    }
+
+    private boolean matchesCheckpoint(Array<ChainVfxEffect> chain) {
+        if (checkpointLength <= 0 || checkpointLength > chain.size)
+            return false;
+        for (int i = 0; i < checkpointLength; i++) {
+            if (chain.get(i) != checkpointEffects.get(i)
+                    || revisions.get(i) != checkpointRevisions.get(i))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.crashinvaders.vfx;
+
+import java.util.function.Predicate;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.crashinvaders.vfx.effects.ChainVfxEffect;
+import com.crashinvaders.vfx.effects.FusedVfxEffect;
+import com.crashinvaders.vfx.effects.FusibleVfxEffect;
+import com.crashinvaders.vfx.gl.VfxShaderFusion;
+
+/**
+ * Replaces runs of consecutive {@link FusibleVfxEffect}s in an effect chain
+ * with cached {@link FusedVfxEffect}s.
+ * <p>
+ * Every combination of effects gets its own program, e.g. whenever an effect
+ * of a run is disabled. The cache therefore keeps at most
+ * {@link #MAX_ENTRIES} combinations and disposes the least recently used ones
+ * beyond that.
+ * <p>
+ * New combinations aren't compiled while the chain is rendered. They are
+ * rendered unfused until {@link #compilePending()} has compiled them, after
+ * the chain.
+ */
+final class VfxFusionStage implements Disposable {
+
+    /** The maximum number of cached combinations. */
+    static final int MAX_ENTRIES = 8;
+
+    private final Array<Entry> entries = new Array<>();
+    private final ObjectSet<ChainVfxEffect> fusible = new ObjectSet<>();
+    private final ObjectSet<ChainVfxEffect> nonFusible = new ObjectSet<>();
+    private final Array<FusibleVfxEffect> tmpRun = new Array<>();
+    /** The number of {@link #process(Array, Array, Predicate)} calls. */
+    private long processCount;
+
+    /**
+     * Writes the effects to <code>out</code>, with all fusible runs of two or
+     * more effects replaced by a single fused effect.
+     *
+     * @param candidates
+     *            decides which effects may be fused at all
+     */
+    void process(Array<ChainVfxEffect> effects, Array<ChainVfxEffect> out,
+            Predicate<ChainVfxEffect> candidates) {
+        out.clear();
+        processCount++;
+
+        int i = 0;
+        while (i < effects.size) {
+            int end = i;
+            while (end < effects.size && candidates.test(effects.get(end))
+                    && isFusible(effects.get(end))) {
+                end++;
+            }
+
+            if (end - i >= 2) {
+                FusedVfxEffect fused = find(effects, i, end - i);
+                if (fused != null) {
+                    out.add(fused);
+                    i = end;
+                    continue;
+                }
+            }
+
+            if (end == i) {
+                end++;
+            }
+            for (; i < end; i++) {
+                out.add(effects.get(i));
+            }
+        }
+
+        trimEntries();
+    }
+
+    /**
+     * Compiles one of the combinations that have been requested but not
+     * compiled yet. Only one program is compiled per call, to spread the cost
+     * over several frames.
+     *
+     * @return whether a program has been compiled
+     */
+    boolean compilePending() {
+        for (int i = 0; i < entries.size; i++) {
+            Entry entry = entries.get(i);
+            if (!entry.compiled) {
+                // A failed attempt is cached as well to not retry every
+                // frame.
+                entry.fused = FusedVfxEffect.fuse(entry.effects);
+                entry.compiled = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Disposes the least recently used combinations beyond
+     * {@link #MAX_ENTRIES}. The ones used by the current chain are kept.
+     */
+    private void trimEntries() {
+        while (entries.size > MAX_ENTRIES) {
+            int oldest = -1;
+            for (int i = 0; i < entries.size; i++) {
+                Entry entry = entries.get(i);
+                if (entry.lastUsed != processCount && (oldest == -1
+                        || entry.lastUsed < entries.get(oldest).lastUsed)) {
+                    oldest = i;
+                }
+            }
+            if (oldest == -1)
+                return; // All of them are in use
+            entries.removeIndex(oldest).dispose();
+        }
+    }
+
+    /** Disposes all the fused effects that include the specified effect. */
+    void evict(ChainVfxEffect effect) {
+        fusible.remove(effect);
+        nonFusible.remove(effect);
+        if (!(effect instanceof FusibleVfxEffect))
+            return;
+
+        for (int i = entries.size - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if (entry.effects.contains((FusibleVfxEffect) effect, true)) {
+                entry.dispose();
+                entries.removeIndex(i);
+            }
+        }
+    }
+
+    /** Disposes all the fused effects. */
+    void clear() {
+        for (int i = 0; i < entries.size; i++) {
+            entries.get(i).dispose();
+        }
+        entries.clear();
+        fusible.clear();
+        nonFusible.clear();
+    }
+
+    @Override
+    public void dispose() {
+        clear();
+    }
+
+    private boolean isFusible(ChainVfxEffect effect) {
+        if (!(effect instanceof FusibleVfxEffect))
+            return false;
+        if (fusible.contains(effect))
+            return true;
+        if (nonFusible.contains(effect))
+            return false;
+
+        boolean result = VfxShaderFusion.isFusible(
+                ((FusibleVfxEffect) effect).getFragmentSource());
+        (result ? fusible : nonFusible).add(effect);
+        return result;
+    }
+
+    /**
+     * @return the fused effect for the run, or <code>null</code> if it cannot
+     *         be fused or hasn't been compiled yet. In the latter case, the
+     *         run is queued for {@link #compilePending()}.
+     */
+    private FusedVfxEffect find(Array<ChainVfxEffect> effects, int offset,
+            int count) {
+        for (int i = 0; i < entries.size; i++) {
+            Entry entry = entries.get(i);
+            if (entry.matches(effects, offset, count)) {
+                entry.lastUsed = processCount;
+                return entry.fused;
+            }
+        }
+
+        tmpRun.clear();
+        for (int i = 0; i < count; i++) {
+            tmpRun.add((FusibleVfxEffect) effects.get(offset + i));
+        }
+        Entry entry = new Entry(tmpRun);
+        entry.lastUsed = processCount;
+        entries.add(entry);
+        tmpRun.clear();
+        return null;
+    }
+
+    private static class Entry implements Disposable {
+        final Array<FusibleVfxEffect> effects;
+        /** <code>null</code> until compiled or if the effects can't be fused */
+        FusedVfxEffect fused;
+        boolean compiled;
+        /** The last process call that used the combination. */
+        long lastUsed;
+
+        Entry(Array<FusibleVfxEffect> effects) {
+            this.effects = new Array<>(effects);
+        }
+
+        boolean matches(Array<ChainVfxEffect> chain, int offset, int count) {
+            if (effects.size != count)
+                return false;
+            for (int i = 0; i < count; i++) {
+                if (effects.get(i) != chain.get(offset + i))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void dispose() {
+            if (fused != null) {
+                fused.dispose();
+            }
+        }
+    }
+}
@@ -21,16 +21,28 @@ import java.util.function.Predicate;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.glutils.HdpiUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.ObjectIntMap;
 import com.crashinvaders.vfx.effects.ChainVfxEffect;
+import com.crashinvaders.vfx.effects.FusibleVfxEffect;
+import com.crashinvaders.vfx.effects.ScalableVfxEffect;
+import com.crashinvaders.vfx.effects.VfxEffect;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
+import com.crashinvaders.vfx.framebuffer.VfxScreenBuffer;
+import com.crashinvaders.vfx.framebuffer.VfxTextureBuffer;
+import com.crashinvaders.vfx.gl.VfxExternalTexture;
+import com.crashinvaders.vfx.gl.VfxGpuTimer;
+import com.crashinvaders.vfx.graph.VfxRenderGraph;
 
 import de.damios.guacamole.Preconditions;
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+import de.damios.guacamole.gdx.log.Logger;
+import de.damios.guacamole.gdx.log.LoggerService;
 
 /**
  * Handles post processing effects. Provides a way to beginCapture the rendered
@@ -42,7 +54,10 @@ import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
  *
  * @author metaphore
  */
-public final class VfxManager implements Disposable {
+public final class VfxManager
+        implements VfxMemoryReport.Reporter, Disposable {
+
+    private static final Logger LOG = LoggerService.getLogger(VfxManager.class);
 
     private static final Vector2 tmpVec = new Vector2();
     private final Array<ChainVfxEffect> tmpArray = new Array<>();
@@ -54,6 +69,29 @@ public final class VfxManager implements Disposable {
 
     private final VfxPingPongWrapper pingPongWrapper;
 
+    private final VfxRenderGraph renderGraph = new VfxRenderGraph();
+
+    private final VfxFusionStage fusionStage = new VfxFusionStage();
+    private final Array<ChainVfxEffect> fusedArray = new Array<>();
+    private boolean fusionEnabled = false;
+
+    private VfxChainCache chainCache;
+    private int inputGeneration;
+
+    private final EffectHooks effectHooks = new EffectHooks();
+    private final GpuTimes gpuTimes = new GpuTimes();
+    private VfxGpuTimer gpuTimer;
+    private VfxGpuTimer.Listener gpuTimingListener;
+    private VfxResolutionGovernor resolutionGovernor;
+    private float pendingRenderScale = 1f;
+    private VfxProfiler profiler;
+
+    private VfxScreenBuffer screenBuffer;
+
+    private VfxTextureBuffer textureInput;
+    private VfxExternalTexture externalTexture;
+    private boolean textureInputPending = false;
+
     private boolean capturing = false;
     private boolean disabled = false;
 
@@ -74,12 +112,33 @@ public final class VfxManager implements Disposable {
         this.context = new VfxRenderContext(screenWidth, screenHeight,
                 hasDepth);
         this.pingPongWrapper = new VfxPingPongWrapper(
-                context.getBufferPool().obtain(),
-                context.getBufferPool().obtain());
+                context.getBufferPool().newFrameBuffer(),
+                context.getBufferPool().newFrameBuffer());
     }
 
     @Override
     public void dispose() {
+        if (gpuTimer != null) {
+            gpuTimer.dispose();
+            gpuTimer = null;
+        }
+        if (chainCache != null) {
+            chainCache.dispose();
+            chainCache = null;
+        }
+        if (screenBuffer != null) {
+            screenBuffer.dispose();
+            screenBuffer = null;
+        }
+        if (textureInput != null) {
+            textureInput.dispose();
+            textureInput = null;
+        }
+        if (externalTexture != null) {
+            externalTexture.dispose();
+            externalTexture = null;
+        }
+        fusionStage.dispose();
         pingPongWrapper.dispose();
         context.dispose();
     }
@@ -115,6 +174,216 @@ public final class VfxManager implements Disposable {
      */
     public void setBlendingEnabled(boolean blendingEnabled) {
         this.blendingEnabled = blendingEnabled;
+        // Blits would ignore the blending.
+        context.getBufferRenderer().setBlendingEnabled(blendingEnabled);
+    }
+
+    public boolean isFusionEnabled() {
+        return fusionEnabled;
+    }
+
+    /**
+     * Enables merging of consecutive {@link FusibleVfxEffect}s into a single
+     * generated shader pass. The fused shader programs are compiled after a
+     * chain has used a new combination of effects for the first time (one
+     * program per frame; until then, the effects are rendered separately) and
+     * cached until one of their effects is removed. Disabled by default.
+     */
+    public void setFusionEnabled(boolean fusionEnabled) {
+        this.fusionEnabled = fusionEnabled;
+    }
+
+    public boolean isChainCachingEnabled() {
+        return chainCache != null;
+    }
+
+    /**
+     * Enables reusing the output of the unchanged leading effects of the
+     * chain across frames. Each {@link #applyEffects()} then resumes the
+     * chain after the longest prefix of effects whose
+     * {@linkplain com.crashinvaders.vfx.effects.VfxEffect#getRevision()
+     * revision} hasn't changed, as long as no new input has been captured. A
+     * fully static chain costs a single copy. This suits menus and pause
+     * screens, where the input is captured once and
+     * {@link #applyEffects()} is called every frame. Time-varying effects
+     * (e.g. film grain) end the reusable prefix.
+     * <p>
+     * Costs two additional buffers and an extra copy whenever a new input is
+     * captured. Disabled by default.
+     */
+    public void setChainCachingEnabled(boolean enabled) {
+        Preconditions.checkState(!applyingEffects,
+                "Cannot change the chain caching when applying effects.");
+
+        if (enabled && chainCache == null) {
+            chainCache = new VfxChainCache(context);
+        } else if (!enabled && chainCache != null) {
+            chainCache.dispose();
+            chainCache = null;
+        }
+        updateEffectHooks();
+    }
+
+    /** @return whether GPU timing of the effects is active. */
+    public boolean isGpuTimingEnabled() {
+        return gpuTimingListener != null && gpuTimer != null;
+    }
+
+    /**
+     * Enables measuring the GPU time of every effect in the chain via timer
+     * queries. The results are reported to the listener a few frames later,
+     * so the pipeline is never stalled. If the OpenGL context doesn't support
+     * timer queries, GPU timing stays disabled.
+     *
+     * @param listener
+     *            the listener to receive the timings; <code>null</code>
+     *            disables GPU timing
+     * @see VfxGpuTimer#isSupported()
+     */
+    public void setGpuTimingListener(VfxGpuTimer.Listener listener) {
+        Preconditions.checkState(!applyingEffects,
+                "Cannot change GPU timing when applying effects.");
+
+        this.gpuTimingListener = listener;
+        updateGpuTimer();
+    }
+
+    public VfxResolutionGovernor getResolutionGovernor() {
+        return resolutionGovernor;
+    }
+
+    /**
+     * Installs a governor that lowers the resolution of the effect chain when
+     * it exceeds its time budget. The chain is then rendered at the scaled
+     * size and upscaled once with linear filtering when the result is
+     * rendered. Effects implementing {@link ScalableVfxEffect} are told the
+     * scale to keep their pixel-sized parameters visually constant.
+     * <p>
+     * The governor is updated after every {@link #applyEffects()}; a new scale
+     * takes effect with the next {@link #beginCapture()} or
+     * {@link #useAsInput(NestableFrameBuffer)}. Its
+     * {@linkplain VfxResolutionGovernor#getSource() source} is read when it is
+     * installed.
+     *
+     * @param governor
+     *            the governor; <code>null</code> restores the full resolution
+     */
+    public void setResolutionGovernor(VfxResolutionGovernor governor) {
+        Preconditions.checkState(!applyingEffects,
+                "Cannot change the resolution governor when applying effects.");
+
+        this.resolutionGovernor = governor;
+        this.pendingRenderScale = governor != null ? governor.getScale() : 1f;
+        updateGpuTimer();
+    }
+
+    /**
+     * @return the scale the effect chain is currently rendered at, relative to
+     *         the back buffer.
+     */
+    public float getRenderScale() {
+        return context.getRenderScale();
+    }
+
+    private void updateGpuTimer() {
+        if (gpuTimer != null) {
+            gpuTimer.dispose();
+            gpuTimer = null;
+        }
+        boolean governed = resolutionGovernor != null && resolutionGovernor
+                .getSource() == VfxResolutionGovernor.Source.GpuTime;
+        if (gpuTimingListener != null || governed) {
+            if (VfxGpuTimer.isSupported()) {
+                gpuTimer = new VfxGpuTimer(gpuTimes);
+            } else if (gpuTimingListener != null) {
+                LOG.info("Timer queries are not supported, GPU timing is disabled.");
+            }
+        }
+        updateEffectHooks();
+    }
+
+    private void applyRenderScale() {
+        if (pendingRenderScale == context.getRenderScale())
+            return;
+
+        context.setRenderScale(pendingRenderScale);
+        invalidateChainCache();
+        pingPongWrapper.resize(context.getBufferWidth(),
+                context.getBufferHeight());
+        // The result is upscaled when rendered, so smooth it.
+        TextureFilter filter = pendingRenderScale < 1f ? TextureFilter.Linear
+                : TextureFilter.Nearest;
+        pingPongWrapper.getSrcBuffer().getColorBufferTexture().setFilter(filter,
+                filter);
+        pingPongWrapper.getDstBuffer().getColorBufferTexture().setFilter(filter,
+                filter);
+
+        for (int i = 0; i < allEffects.size; i++) {
+            resizeEffect(allEffects.get(i));
+        }
+    }
+
+    private void invalidateChainCache() {
+        if (chainCache != null) {
+            chainCache.invalidate();
+        }
+    }
+
+    private void resizeEffect(ChainVfxEffect effect) {
+        int divisor = renderGraph.getResolutionDivisor(effect);
+        effect.resize(
+                VfxRenderGraph.getScaledSize(context.getBufferWidth(), divisor),
+                VfxRenderGraph.getScaledSize(context.getBufferHeight(),
+                        divisor));
+        if (effect instanceof ScalableVfxEffect) {
+            ((ScalableVfxEffect) effect)
+                    .setRenderScale(context.getRenderScale() / divisor);
+        }
+    }
+
+    /**
+     * Adds the estimated GPU memory of the ping-pong buffers, the buffer pool
+     * and all added effects that implement {@link VfxMemoryReport.Reporter}
+     * to the report.
+     */
+    @Override
+    public void reportMemory(VfxMemoryReport report) {
+        pingPongWrapper.reportMemory(report, this);
+        context.getBufferPool().reportMemory(report);
+        for (int i = 0; i < allEffects.size; i++) {
+            ChainVfxEffect effect = allEffects.get(i);
+            if (effect instanceof VfxMemoryReport.Reporter) {
+                ((VfxMemoryReport.Reporter) effect).reportMemory(report);
+            }
+        }
+    }
+
+    /** @return whether CPU profiling of the effects is active. */
+    public boolean isProfilingEnabled() {
+        return profiler != null;
+    }
+
+    /**
+     * Enables recording the CPU time of every effect in the chain and of
+     * their nested sub-passes. The listener receives the samples at the end
+     * of every {@link #applyEffects()}.
+     *
+     * @param listener
+     *            the listener to receive the samples; <code>null</code>
+     *            disables profiling
+     */
+    public void setProfilerListener(VfxProfiler.Listener listener) {
+        Preconditions.checkState(!applyingEffects,
+                "Cannot change profiling when applying effects.");
+
+        profiler = listener != null ? new VfxProfiler(listener) : null;
+        context.setProfiler(profiler);
+        updateEffectHooks();
+    }
+
+    private void updateEffectHooks() {
+        renderGraph.setEffectListener(gpuTimer != null || profiler != null
+                || chainCache != null ? effectHooks : null);
     }
 
     public boolean isApplyingEffects() {
@@ -135,6 +404,23 @@ public final class VfxManager implements Disposable {
         return context;
     }
 
+    /** @return the render graph the effect chain is executed with. */
+    public VfxRenderGraph getRenderGraph() {
+        return renderGraph;
+    }
+
+    /**
+     * Forces the render graph to be rebuilt before the next
+     * {@link #applyEffects()}. Only needed for effects that change the
+     * structure of their render passes without reporting it through
+     * {@link ChainVfxEffect#getRenderPassesRevision()}.
+     *
+     * @see ChainVfxEffect#setupRenderPasses(VfxRenderGraph.Builder)
+     */
+    public void invalidateRenderGraph() {
+        renderGraph.invalidate();
+    }
+
     /**
      * Adds an effect to the effect chain and transfers ownership to the
      * VfxManager. The order of the inserted effects IS important, since effects
@@ -155,20 +441,66 @@ public final class VfxManager implements Disposable {
         priorities.put(effect, priority);
         allEffects.sort((e1, e2) -> Integer.compare(priorities.get(e1, 0),
                 priorities.get(e2, 0)));
-        effect.resize(HdpiUtils.toBackBufferX(width),
-                HdpiUtils.toBackBufferY(height));
+        resizeEffect(effect);
     }
 
     /** Removes the specified effect from the effect chain. */
     public void removeEffect(ChainVfxEffect effect) {
         allEffects.removeValue(effect, false);
         priorities.remove(effect, 0);
+        renderGraph.setResolutionDivisor(effect, 1, false);
+        fusionStage.evict(effect);
     }
 
     /** Removes all effects from the effect chain. */
     public void removeAllEffects() {
         allEffects.clear();
         priorities.clear();
+        renderGraph.clearResolutionDivisors();
+        fusionStage.clear();
+    }
+
+    /**
+     * Lets the effect run at a fraction of the chain resolution, with its
+     * output upsampled bilinearly.
+     *
+     * @see #setEffectResolutionDivisor(ChainVfxEffect, int, boolean)
+     */
+    public void setEffectResolutionDivisor(ChainVfxEffect effect,
+            int divisor) {
+        setEffectResolutionDivisor(effect, divisor, false);
+    }
+
+    /**
+     * Lets the effect run at a fraction of the chain resolution. Its input is
+     * downsampled, it renders into smaller pooled buffers and its output is
+     * upsampled back into the chain. This makes expensive effects with a
+     * smooth result (e.g. blurs or bloom) cheap, without degrading the rest
+     * of the chain. Effects implementing {@link ScalableVfxEffect} are told
+     * the reduced scale. Effects with a divisor are never fused.
+     *
+     * @param divisor
+     *            the chain resolution is divided by it; <code>1</code>
+     *            restores the full resolution
+     * @param edgeAware
+     *            whether the output is upsampled with a luma-aware bilateral
+     *            filter, which keeps the edges of the input sharp
+     */
+    public void setEffectResolutionDivisor(ChainVfxEffect effect, int divisor,
+            boolean edgeAware) {
+        Preconditions.checkState(!applyingEffects,
+                "Cannot change the resolution when applying effects.");
+        Preconditions.checkArgument(allEffects.contains(effect, true),
+                "The effect has not been added to this manager.");
+
+        renderGraph.setResolutionDivisor(effect, divisor, edgeAware);
+        resizeEffect(effect);
+        invalidateChainCache();
+    }
+
+    /** @return the resolution divisor of the effect; 1 by default. */
+    public int getEffectResolutionDivisor(ChainVfxEffect effect) {
+        return renderGraph.getResolutionDivisor(effect);
     }
 
     /** Changes the order of the effect in the effect chain. */
@@ -195,7 +527,9 @@ public final class VfxManager implements Disposable {
                 "Cannot clear when applying effects.");
         Preconditions.checkState(!capturing, "Cannot clear when capturing.");
 
+        textureInputPending = false;
         pingPongWrapper.clear(color);
+        inputGeneration++;
     }
 
     public void resize(int screenWidth, int screenHeight) {
@@ -203,13 +537,13 @@ public final class VfxManager implements Disposable {
             this.width = screenWidth;
             this.height = screenHeight;
 
-            pingPongWrapper.resize(HdpiUtils.toBackBufferX(width),
-                    HdpiUtils.toBackBufferY(height));
             context.resize(width, height);
+            invalidateChainCache();
+            pingPongWrapper.resize(context.getBufferWidth(),
+                    context.getBufferHeight());
 
             for (int i = 0; i < allEffects.size; i++) {
-                allEffects.get(i).resize(HdpiUtils.toBackBufferX(width),
-                        HdpiUtils.toBackBufferY(height));
+                resizeEffect(allEffects.get(i));
             }
         }
     }
@@ -228,7 +562,10 @@ public final class VfxManager implements Disposable {
         if (capturing)
             return;
 
+        applyRenderScale();
         capturing = true;
+        textureInputPending = false;
+        inputGeneration++;
         pingPongWrapper.begin();
     }
 
@@ -247,22 +584,153 @@ public final class VfxManager implements Disposable {
         Preconditions.checkState(!applyingEffects,
                 "Cannot update the input buffer when applying effects.");
 
+        applyRenderScale();
+        textureInputPending = false;
+        inputGeneration++;
         context.getBufferRenderer().renderToFbo(fbo,
                 pingPongWrapper.getDstBuffer());
     }
 
+    /**
+     * Uses the texture as the input of the next {@link #applyEffects()}
+     * without copying it: the first effect reads the texture directly, the
+     * following ones continue in the internal buffers. The texture is
+     * stretched across the chain, so it should match the buffer size for
+     * effects that work with texel offsets.
+     * <p>
+     * The texture has to stay valid until the effects have been applied. If
+     * there is nothing to apply or the chain caching is enabled, it is copied
+     * like a {@linkplain #useAsInput(NestableFrameBuffer) buffer input}.
+     */
+    public void useAsInput(Texture texture) {
+        Preconditions.checkNotNull(texture, "The texture cannot be null.");
+        Preconditions.checkState(!capturing,
+                "Cannot set captured input when capture helper is currently capturing.");
+        Preconditions.checkState(!applyingEffects,
+                "Cannot update the input buffer when applying effects.");
+
+        if (textureInput == null) {
+            textureInput = new VfxTextureBuffer();
+        }
+        textureInput.setTexture(texture);
+
+        if (chainCache != null) {
+            // The cache keeps a copy of the input anyway.
+            useAsInput(textureInput);
+            textureInput.setTexture(null);
+            return;
+        }
+
+        applyRenderScale();
+        textureInputPending = true;
+        inputGeneration++;
+    }
+
+    /**
+     * Uses a GL texture that is owned elsewhere, e.g. by a video decoder, as
+     * the input of the next {@link #applyEffects()} without copying it.
+     *
+     * @see #useAsInput(Texture)
+     * @see VfxExternalTexture
+     */
+    public void useAsInput(int textureHandle, int width, int height) {
+        if (externalTexture == null) {
+            externalTexture = new VfxExternalTexture(textureHandle, width,
+                    height);
+        } else {
+            externalTexture.setHandle(textureHandle, width, height);
+        }
+        useAsInput(externalTexture);
+    }
+
+    /** Copies a pending texture input into the chain buffers. */
+    private void resolveTextureInput() {
+        if (!textureInputPending)
+            return;
+
+        textureInputPending = false;
+        context.getBufferRenderer().renderToFbo(textureInput,
+                pingPongWrapper.getDstBuffer());
+        textureInput.setTexture(null);
+    }
+
     /** Applies the effect chain. */
     public void applyEffects() {
+        applyEffects(null);
+    }
+
+    /**
+     * Applies the effect chain and renders the result into the target. Unlike
+     * {@link #applyEffects()} followed by {@link #renderToFbo}, a
+     * {@linkplain ChainVfxEffect#isSwapFree() swap-free} last effect renders
+     * straight into the target, which saves a full-screen copy.
+     * {@link #getResultBuffer()} doesn't hold the result afterwards.
+     * <p>
+     * With the {@linkplain #setChainCachingEnabled(boolean) chain caching}
+     * enabled, the cache needs the result in the chain buffers, so it is
+     * copied into the target as usual.
+     *
+     * @see VfxRenderGraph#execute(VfxRenderContext, VfxPingPongWrapper, int,
+     *      NestableFrameBuffer)
+     */
+    public void applyEffectsTo(NestableFrameBuffer target) {
+        Preconditions.checkNotNull(target, "The target cannot be null.");
+
+        if (chainCache != null) {
+            applyEffects(null);
+        } else if (applyEffects(target)) {
+            return;
+        }
+        // Nothing has been rendered into the target yet.
+        renderToFbo(target);
+    }
+
+    /**
+     * Applies the effect chain and renders the result straight to the screen.
+     *
+     * @see #applyEffectsTo(NestableFrameBuffer)
+     */
+    public void applyEffectsToScreen() {
+        applyEffectsToScreen(0, 0, HdpiUtils.toBackBufferX(width),
+                HdpiUtils.toBackBufferY(height));
+    }
+
+    /**
+     * Applies the effect chain and renders the result straight into the
+     * specified region of the screen, in backbuffer pixels.
+     *
+     * @see #applyEffectsTo(NestableFrameBuffer)
+     */
+    public void applyEffectsToScreen(int x, int y, int width, int height) {
+        if (screenBuffer == null) {
+            screenBuffer = new VfxScreenBuffer();
+        }
+        screenBuffer.setViewport(x, y, width, height);
+        applyEffectsTo(screenBuffer);
+    }
+
+    /**
+     * @return whether the result has been rendered into the target; if the
+     *         manager is disabled or no effect is active, nothing is rendered
+     */
+    private boolean applyEffects(NestableFrameBuffer target) {
         Preconditions.checkState(!capturing,
                 "You must call endCapture() before applying the effects.");
 
-        if (disabled)
-            return;
+        if (disabled) {
+            resolveTextureInput();
+            return false;
+        }
 
-        selectFrom(tmpArray, allEffects, e -> !e.isDisabled());
+        // Effects with neutral parameters don't need a pass.
+        selectFrom(tmpArray, allEffects,
+                e -> !e.isDisabled() && !e.isIdentity());
 
+        if (tmpArray.size == 0 || chainCache != null) {
+            resolveTextureInput();
+        }
         if (tmpArray.size == 0) {
-            return;
+            return false;
         }
 
         applyingEffects = true;
@@ -275,19 +743,69 @@ public final class VfxManager implements Disposable {
         Gdx.gl.glDisable(GL20.GL_CULL_FACE);
         Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
 
+        Array<ChainVfxEffect> chain = tmpArray;
+        if (fusionEnabled) {
+            // The fused effect would lose the resolution of its parts.
+            fusionStage.process(tmpArray, fusedArray,
+                    e -> renderGraph.getResolutionDivisor(e) == 1);
+            chain = fusedArray;
+        }
+        renderGraph.compile(chain);
+
         pingPongWrapper.swap(); // Swap buffers to get the input buffer in the
                                 // src buffer.
+        if (textureInputPending) {
+            // The first effect reads the texture in place of the src buffer.
+            pingPongWrapper.setInput(textureInput);
+            textureInputPending = false;
+        }
+        int firstEffect = 0;
+        if (chainCache != null) {
+            firstEffect = chainCache.begin(chain, inputGeneration,
+                    pingPongWrapper);
+        }
         pingPongWrapper.begin();
 
+        if (gpuTimer != null) {
+            gpuTimer.beginFrame();
+        }
+        if (profiler != null) {
+            profiler.beginFrame();
+        }
+
         // Render the effect chain.
-        for (int i = 0; i < tmpArray.size; i++) {
-            ChainVfxEffect effect = tmpArray.get(i);
-            effect.render(context, pingPongWrapper);
-            if (i < tmpArray.size - 1) {
-                pingPongWrapper.swap();
-            }
+        renderGraph.execute(context, pingPongWrapper, firstEffect, target);
+
+        if (profiler != null) {
+            profiler.endFrame();
         }
+
         pingPongWrapper.end();
+        if (pingPongWrapper.hasInput()) {
+            // The last swap is skipped, so a single effect leaves it set.
+            pingPongWrapper.setInput(null);
+        }
+        if (textureInput != null) {
+            textureInput.setTexture(null);
+        }
+
+        context.getBufferPool().update();
+
+        if (fusionEnabled) {
+            // New combinations are compiled outside of the chain rendering.
+            fusionStage.compilePending();
+        }
+
+        if (resolutionGovernor != null) {
+            if (gpuTimer == null || resolutionGovernor
+                    .getSource() == VfxResolutionGovernor.Source.FrameTime) {
+                resolutionGovernor
+                        .addSample(Gdx.graphics.getDeltaTime() * 1000f);
+            }
+            if (resolutionGovernor.update()) {
+                pendingRenderScale = resolutionGovernor.getScale();
+            }
+        }
 
         // Ensure default texture unit #0 is active.
         Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
@@ -297,6 +815,7 @@ public final class VfxManager implements Disposable {
         }
 
         applyingEffects = false;
+        return target != null;
     }
 
     public void renderToScreen() {
@@ -308,8 +827,8 @@ public final class VfxManager implements Disposable {
             Gdx.gl.glEnable(GL20.GL_BLEND);
         }
         context.getBufferRenderer().renderToScreen(
-                pingPongWrapper.getDstBuffer(), context.getBufferWidth(),
-                context.getBufferHeight());
+                pingPongWrapper.getDstBuffer(), HdpiUtils.toBackBufferX(width),
+                HdpiUtils.toBackBufferY(height));
         if (blendingEnabled) {
             Gdx.gl.glDisable(GL20.GL_BLEND);
         }
@@ -345,6 +864,51 @@ public final class VfxManager implements Disposable {
         }
     }
 
+    /**
+     * @return the sum of the sampling footprints of the enabled effects in
+     *         pixels, i.e. how far a change of the input spreads in the
+     *         result. Unbounded if any effect is, or renders at a reduced
+     *         resolution.
+     * @see ChainVfxEffect#getSamplingFootprint()
+     */
+    public int getChainFootprint() {
+        long footprint = 0;
+        for (int i = 0; i < allEffects.size; i++) {
+            ChainVfxEffect effect = allEffects.get(i);
+            if (effect.isDisabled() || effect.isIdentity())
+                continue;
+
+            int effectFootprint = effect.getSamplingFootprint();
+            if (effectFootprint == ChainVfxEffect.UNBOUNDED_FOOTPRINT
+                    || renderGraph.getResolutionDivisor(effect) > 1)
+                return ChainVfxEffect.UNBOUNDED_FOOTPRINT;
+            footprint += effectFootprint;
+        }
+        return (int) Math.min(footprint, ChainVfxEffect.UNBOUNDED_FOOTPRINT);
+    }
+
+    /**
+     * @return a number that changes whenever the enabled effects or their
+     *         {@linkplain VfxEffect#getRevision() revisions} change, or
+     *         {@link VfxEffect#VOLATILE} if any of them is volatile.
+     */
+    public int getChainRevision() {
+        int revision = 0;
+        for (int i = 0; i < allEffects.size; i++) {
+            ChainVfxEffect effect = allEffects.get(i);
+            if (effect.isDisabled())
+                continue;
+
+            int effectRevision = effect.getRevision();
+            if (effectRevision == VfxEffect.VOLATILE)
+                return VfxEffect.VOLATILE;
+            revision = revision * 31 + System.identityHashCode(effect);
+            revision = revision * 31 + effectRevision;
+            revision = revision * 31 + renderGraph.getResolutionDivisor(effect);
+        }
+        return revision & Integer.MAX_VALUE;
+    }
+
     public boolean hasEffects() {
         for (int i = 0; i < allEffects.size; i++) {
             if (!allEffects.get(i).isDisabled()) {
@@ -354,6 +918,62 @@ public final class VfxManager implements Disposable {
         return false;
     }
 
+    /**
+     * Measures the individual effects of the chain and lets the chain cache
+     * store its checkpoint.
+     */
+    private class EffectHooks implements VfxRenderGraph.EffectListener {
+
+        @Override
+        public void beginEffect(ChainVfxEffect effect) {
+            if (profiler != null) {
+                profiler.begin(effect);
+            }
+            if (gpuTimer != null) {
+                gpuTimer.begin(effect);
+            }
+        }
+
+        @Override
+        public void endEffect(ChainVfxEffect effect,
+                VfxPingPongWrapper buffers) {
+            if (gpuTimer != null) {
+                gpuTimer.end();
+            }
+            if (profiler != null) {
+                profiler.end();
+            }
+            if (chainCache != null) {
+                chainCache.endEffect(effect, buffers);
+            }
+        }
+    }
+
+    /**
+     * Forwards the GPU timings to the listener and feeds the resolution
+     * governor.
+     */
+    private class GpuTimes implements VfxGpuTimer.Listener {
+
+        @Override
+        public void onGpuTime(ChainVfxEffect effect, long nanoseconds) {
+            if (gpuTimingListener != null) {
+                gpuTimingListener.onGpuTime(effect, nanoseconds);
+            }
+        }
+
+        @Override
+        public void onFrameGpuTime(long nanoseconds) {
+            if (gpuTimingListener != null) {
+                gpuTimingListener.onFrameGpuTime(nanoseconds);
+            }
+            if (resolutionGovernor != null && resolutionGovernor
+                    .getSource() == VfxResolutionGovernor.Source.GpuTime) {
+                resolutionGovernor.addSample(nanoseconds / 1000000f);
+            }
+        }
+    }
+
     private static <T> Array<T> selectFrom(final Array<T> ret,
             final Iterable<T> from, final Predicate<T> predicate) {
         ret.clear();
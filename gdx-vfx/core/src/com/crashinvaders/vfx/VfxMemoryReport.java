@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx;
+
+import com.badlogic.gdx.utils.Array;
+import com.crashinvaders.vfx.framebuffer.VfxBufferFormat;
+
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Collects the estimated GPU memory held by frame buffers, grouped by their
+ * owner, format and attachment.
+ * <p>
+ * A report is filled via {@link VfxManager#reportMemory(VfxMemoryReport)},
+ * which covers the manager's own buffers, the buffer pool and all effects
+ * implementing {@link Reporter}. The numbers are estimates based on the
+ * internal formats; drivers may pad or compress the actual allocations.
+ */
+public final class VfxMemoryReport {
+
+    /** The assumed size of a depth renderbuffer pixel (16 bit). */
+    public static final int DEPTH_BYTES_PER_PIXEL = 2;
+
+    private final Array<Entry> entries = new Array<>();
+
+    /**
+     * Adds a frame buffer's color attachment and, if present, its depth
+     * attachment.
+     */
+    public void addFrameBuffer(Object owner, NestableFrameBuffer fbo,
+            VfxBufferFormat format) {
+        addFrameBuffer(owner, fbo.getWidth(), fbo.getHeight(), format,
+                fbo.hasDepth(), 1);
+    }
+
+    /**
+     * Adds a number of frame buffers of the same size and format.
+     */
+    public void addFrameBuffer(Object owner, int width, int height,
+            VfxBufferFormat format, boolean hasDepth, int count) {
+        long pixels = (long) width * height * count;
+        add(owner, format, Attachment.Color, count,
+                pixels * format.getBytesPerPixel());
+        if (hasDepth) {
+            add(owner, null, Attachment.Depth, count,
+                    pixels * DEPTH_BYTES_PER_PIXEL);
+        }
+    }
+
+    /**
+     * Adds an arbitrary allocation. Entries with the same owner, format and
+     * attachment are merged.
+     *
+     * @param format
+     *            the color format or <code>null</code> for depth attachments
+     */
+    public void add(Object owner, VfxBufferFormat format,
+            Attachment attachment, int count, long bytes) {
+        for (int i = 0; i < entries.size; i++) {
+            Entry entry = entries.get(i);
+            if (entry.owner == owner && entry.format == format
+                    && entry.attachment == attachment) {
+                entry.count += count;
+                entry.bytes += bytes;
+                return;
+            }
+        }
+        entries.add(new Entry(owner, format, attachment, count, bytes));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public Array<Entry> getEntries() {
+        return entries;
+    }
+
+    public long getTotalBytes() {
+        long bytes = 0;
+        for (int i = 0; i < entries.size; i++) {
+            bytes += entries.get(i).bytes;
+        }
+        return bytes;
+    }
+
+    public long getBytes(Object owner) {
+        long bytes = 0;
+        for (int i = 0; i < entries.size; i++) {
+            Entry entry = entries.get(i);
+            if (entry.owner == owner) {
+                bytes += entry.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    /** @return the bytes of all color attachments of the specified format. */
+    public long getBytes(VfxBufferFormat format) {
+        long bytes = 0;
+        for (int i = 0; i < entries.size; i++) {
+            Entry entry = entries.get(i);
+            if (entry.format == format) {
+                bytes += entry.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    public long getBytes(Attachment attachment) {
+        long bytes = 0;
+        for (int i = 0; i < entries.size; i++) {
+            Entry entry = entries.get(i);
+            if (entry.attachment == attachment) {
+                bytes += entry.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Total: ").append(getTotalBytes() / 1024).append(" KiB");
+        for (int i = 0; i < entries.size; i++) {
+            Entry entry = entries.get(i);
+            sb.append('\n').append(entry.owner.getClass().getName())
+                    .append(' ').append(entry.attachment);
+            if (entry.format != null) {
+                sb.append(' ').append(entry.format);
+            }
+            sb.append(" x").append(entry.count).append(": ")
+                    .append(entry.bytes / 1024).append(" KiB");
+        }
+        return sb.toString();
+    }
+
+    public enum Attachment {
+        Color, Depth
+    }
+
+    public static final class Entry {
+
+        private final Object owner;
+        private final VfxBufferFormat format;
+        private final Attachment attachment;
+        private int count;
+        private long bytes;
+
+        Entry(Object owner, VfxBufferFormat format, Attachment attachment,
+                int count, long bytes) {
+            this.owner = owner;
+            this.format = format;
+            this.attachment = attachment;
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        public Object getOwner() {
+            return owner;
+        }
+
+        /**
+         * @return the color format or <code>null</code> for depth
+         *         attachments.
+         */
+        public VfxBufferFormat getFormat() {
+            return format;
+        }
+
+        public Attachment getAttachment() {
+            return attachment;
+        }
+
+        /** @return the number of attachments. */
+        public int getCount() {
+            return count;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Implemented by objects that allocate their own render targets, so they
+     * can be accounted for. Effects implementing this interface are queried
+     * by {@link VfxManager#reportMemory(VfxMemoryReport)}.
+     */
+    public interface Reporter {
+        void reportMemory(VfxMemoryReport report);
+    }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx;
+
+import com.crashinvaders.vfx.effects.CompositeVfxEffect;
+import com.crashinvaders.vfx.effects.MultipassEffectWrapper;
+
+import de.damios.guacamole.Preconditions;
+
+/**
+ * Records CPU timings of the effects and their nested sub-passes during
+ * {@link VfxManager#applyEffects()}.
+ * <p>
+ * Every measured section is stored as a sample consisting of a tag (usually
+ * the effect), its nesting depth and two {@link System#nanoTime()} stamps. The
+ * samples are kept in primitive arrays that are reused every frame, so
+ * profiling doesn't allocate once the arrays have grown to the size of the
+ * chain. At the end of the frame, the samples are handed to the
+ * {@link Listener}.
+ * <p>
+ * When no profiler is installed, the render context returns
+ * <code>null</code> and the measuring sites skip it altogether.
+ *
+ * @see VfxManager#setProfilerListener(Listener)
+ * @see VfxRenderContext#getProfiler()
+ * @see CompositeVfxEffect
+ * @see MultipassEffectWrapper
+ */
+public final class VfxProfiler {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private final Listener listener;
+
+    private Object[] tags = new Object[INITIAL_CAPACITY];
+    private int[] depths = new int[INITIAL_CAPACITY];
+    private long[] startTimes = new long[INITIAL_CAPACITY];
+    private long[] endTimes = new long[INITIAL_CAPACITY];
+    private int count = 0;
+
+    private int[] stack = new int[8];
+    private int stackSize = 0;
+
+    private long frameStartTime;
+    private long frameEndTime;
+
+    public VfxProfiler(Listener listener) {
+        Preconditions.checkNotNull(listener, "Listener cannot be null.");
+        this.listener = listener;
+    }
+
+    /** Discards the samples of the previous frame. */
+    public void beginFrame() {
+        for (int i = 0; i < count; i++) {
+            tags[i] = null;
+        }
+        count = 0;
+        stackSize = 0;
+        frameStartTime = System.nanoTime();
+    }
+
+    /** Hands the samples of the frame over to the listener. */
+    public void endFrame() {
+        Preconditions.checkState(stackSize == 0,
+                "Not all of the sections have been ended.");
+
+        frameEndTime = System.nanoTime();
+        listener.onFrameProfiled(this);
+    }
+
+    /** Starts measuring a section. Sections may be nested. */
+    public void begin(Object tag) {
+        if (count == tags.length) {
+            grow();
+        }
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+
+        tags[count] = tag;
+        depths[count] = stackSize;
+        stack[stackSize++] = count;
+        startTimes[count++] = System.nanoTime();
+    }
+
+    /** Ends the section that has been begun last. */
+    public void end() {
+        long time = System.nanoTime();
+        Preconditions.checkState(stackSize > 0, "No section has been begun.");
+        endTimes[stack[--stackSize]] = time;
+    }
+
+    /** @return the number of samples recorded in the current frame. */
+    public int getSampleCount() {
+        return count;
+    }
+
+    /** @return the tag of the section, usually the measured effect. */
+    public Object getTag(int sample) {
+        return tags[sample];
+    }
+
+    /**
+     * @return the nesting depth of the section. The effects of the chain have
+     *         depth 0, their sub-passes 1 and so on.
+     */
+    public int getDepth(int sample) {
+        return depths[sample];
+    }
+
+    public long getStartTime(int sample) {
+        return startTimes[sample];
+    }
+
+    public long getEndTime(int sample) {
+        return endTimes[sample];
+    }
+
+    /** @return the duration of the section in nanoseconds. */
+    public long getDuration(int sample) {
+        return endTimes[sample] - startTimes[sample];
+    }
+
+    /** @return the duration of the whole frame in nanoseconds. */
+    public long getFrameDuration() {
+        return frameEndTime - frameStartTime;
+    }
+
+    private void grow() {
+        int capacity = tags.length * 2;
+
+        Object[] newTags = new Object[capacity];
+        System.arraycopy(tags, 0, newTags, 0, count);
+        tags = newTags;
+
+        int[] newDepths = new int[capacity];
+        System.arraycopy(depths, 0, newDepths, 0, count);
+        depths = newDepths;
+
+        long[] newStartTimes = new long[capacity];
+        System.arraycopy(startTimes, 0, newStartTimes, 0, count);
+        startTimes = newStartTimes;
+
+        long[] newEndTimes = new long[capacity];
+        System.arraycopy(endTimes, 0, newEndTimes, 0, count);
+        endTimes = newEndTimes;
+    }
+
+    public interface Listener {
+        /**
+         * Called at the end of every frame the effects have been applied in.
+         * The samples are only valid for the duration of the call.
+         */
+        void onFrameProfiled(VfxProfiler profiler);
+    }
+}
@@ -21,6 +21,7 @@ import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.glutils.HdpiUtils;
 import com.badlogic.gdx.utils.Disposable;
+import com.crashinvaders.vfx.framebuffer.VfxBilateralUpsampler;
 import com.crashinvaders.vfx.framebuffer.VfxFrameBufferPool;
 import com.crashinvaders.vfx.framebuffer.VfxFrameBufferRenderer;
 
@@ -28,14 +29,21 @@ public class VfxRenderContext implements Disposable {
 
     private final VfxFrameBufferPool bufferPool;
     private final VfxFrameBufferRenderer bufferRenderer;
+    private VfxBilateralUpsampler bilateralUpsampler;
 
+    private VfxProfiler profiler;
+
+    private int screenWidth;
+    private int screenHeight;
+    private float renderScale = 1f;
     private int bufferWidth;
     private int bufferHeight;
 
     public VfxRenderContext(int screenWidth, int screenHeight,
             boolean hasDepth) {
-        this.bufferWidth = HdpiUtils.toBackBufferX(screenWidth);
-        this.bufferHeight = HdpiUtils.toBackBufferY(screenHeight);
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        updateBufferSize();
         this.bufferPool = new VfxFrameBufferPool(Format.RGBA8888, bufferWidth,
                 bufferHeight, hasDepth, 4, Texture.TextureWrap.ClampToEdge,
                 Texture.TextureWrap.ClampToEdge, Texture.TextureFilter.Nearest,
@@ -47,12 +55,42 @@ public class VfxRenderContext implements Disposable {
     public void dispose() {
         bufferPool.dispose();
         bufferRenderer.dispose();
+        if (bilateralUpsampler != null) {
+            bilateralUpsampler.dispose();
+            bilateralUpsampler = null;
+        }
     }
 
     public void resize(int screenWidth, int screenHeight) {
-        this.bufferWidth = HdpiUtils.toBackBufferX(screenWidth);
-        this.bufferHeight = HdpiUtils.toBackBufferY(screenHeight);
-        this.bufferPool.resize(bufferWidth, bufferHeight);
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        updateBufferSize();
+        bufferPool.resize(bufferWidth, bufferHeight);
+    }
+
+    /**
+     * Sets the scale of the buffers relative to the back buffer. The effect
+     * chain is rendered at the scaled size and upscaled once when presented.
+     */
+    public void setRenderScale(float renderScale) {
+        if (renderScale <= 0f || renderScale > 1f) {
+            throw new IllegalArgumentException(
+                    "The render scale has to be within (0, 1].");
+        }
+        this.renderScale = renderScale;
+        updateBufferSize();
+        bufferPool.resize(bufferWidth, bufferHeight);
+    }
+
+    private void updateBufferSize() {
+        this.bufferWidth = Math.max(1,
+                Math.round(HdpiUtils.toBackBufferX(screenWidth) * renderScale));
+        this.bufferHeight = Math.max(1, Math.round(
+                HdpiUtils.toBackBufferY(screenHeight) * renderScale));
+    }
+
+    public float getRenderScale() {
+        return renderScale;
     }
 
     public VfxFrameBufferPool getBufferPool() {
@@ -63,6 +101,26 @@ public class VfxRenderContext implements Disposable {
         return bufferRenderer;
     }
 
+    /** @return the bilateral upsampler, which is created on first use. */
+    public VfxBilateralUpsampler getBilateralUpsampler() {
+        if (bilateralUpsampler == null) {
+            bilateralUpsampler = new VfxBilateralUpsampler();
+        }
+        return bilateralUpsampler;
+    }
+
+    /**
+     * @return the installed profiler or <code>null</code>, if profiling is
+     *         disabled.
+     */
+    public VfxProfiler getProfiler() {
+        return profiler;
+    }
+
+    public void setProfiler(VfxProfiler profiler) {
+        this.profiler = profiler;
+    }
+
     public Mesh getViewportMesh() {
         return bufferRenderer.getMesh();
     }
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx;
+
+import de.damios.guacamole.Preconditions;
+
+/**
+ * Steers the resolution the effect chain is rendered at to keep its cost
+ * within a time budget.
+ * <p>
+ * The governor is fed with the measured cost of every frame, either the GPU
+ * time of the effect chain or the whole frame time (see {@link Source}), and
+ * smooths it with an exponential moving average. If the average exceeds the
+ * target, the render scale is lowered by one step; if it falls below
+ * target * headroom, the scale is raised again. The gap between both
+ * thresholds and a cooldown after every change prevent oscillation.
+ *
+ * @see VfxManager#setResolutionGovernor(VfxResolutionGovernor)
+ */
+public class VfxResolutionGovernor {
+
+    public static final float DEFAULT_MIN_SCALE = 0.5f;
+    public static final float DEFAULT_MAX_SCALE = 1f;
+    public static final float DEFAULT_STEP = 0.1f;
+    public static final float DEFAULT_HEADROOM = 0.75f;
+    public static final int DEFAULT_COOLDOWN_FRAMES = 30;
+
+    private float targetMillis;
+    private Source source = Source.GpuTime;
+
+    private float minScale = DEFAULT_MIN_SCALE;
+    private float maxScale = DEFAULT_MAX_SCALE;
+    private float step = DEFAULT_STEP;
+    private float headroom = DEFAULT_HEADROOM;
+    private float smoothing = 0.1f;
+    private int cooldownFrames = DEFAULT_COOLDOWN_FRAMES;
+
+    private float scale = DEFAULT_MAX_SCALE;
+    private float average = -1f;
+    private int cooldown;
+
+    /**
+     * @param targetMillis
+     *            the budget of the effect chain in milliseconds; for
+     *            {@link Source#FrameTime} the budget of the whole frame
+     */
+    public VfxResolutionGovernor(float targetMillis) {
+        setTargetMillis(targetMillis);
+    }
+
+    /** Adds the cost of a frame in milliseconds. */
+    public void addSample(float millis) {
+        if (average < 0f) {
+            average = millis;
+        } else {
+            average += (millis - average) * smoothing;
+        }
+    }
+
+    /**
+     * Evaluates the collected samples. Should be called once per frame.
+     *
+     * @return whether the scale has changed
+     */
+    public boolean update() {
+        if (cooldown > 0) {
+            cooldown--;
+            return false;
+        }
+        if (average < 0f)
+            return false;
+
+        float newScale = scale;
+        if (average > targetMillis) {
+            newScale = Math.max(minScale, scale - step);
+        } else if (average < targetMillis * headroom) {
+            newScale = Math.min(maxScale, scale + step);
+        }
+        if (newScale == scale)
+            return false;
+
+        // The cost is roughly proportional to the number of pixels.
+        average *= (newScale * newScale) / (scale * scale);
+        scale = newScale;
+        cooldown = cooldownFrames;
+        return true;
+    }
+
+    /** Restores the maximum scale and forgets the collected samples. */
+    public void reset() {
+        scale = maxScale;
+        average = -1f;
+        cooldown = 0;
+    }
+
+    /** @return the current render scale. */
+    public float getScale() {
+        return scale;
+    }
+
+    /** @return the smoothed cost in milliseconds or -1, if not measured. */
+    public float getAverageMillis() {
+        return average;
+    }
+
+    public float getTargetMillis() {
+        return targetMillis;
+    }
+
+    public void setTargetMillis(float targetMillis) {
+        Preconditions.checkArgument(targetMillis > 0,
+                "The target has to be positive.");
+        this.targetMillis = targetMillis;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * Sets what is measured. If GPU timing isn't supported,
+     * {@link Source#FrameTime} is used regardless.
+     */
+    public void setSource(Source source) {
+        Preconditions.checkNotNull(source, "The source cannot be null.");
+        this.source = source;
+        average = -1f;
+    }
+
+    public float getMinScale() {
+        return minScale;
+    }
+
+    public float getMaxScale() {
+        return maxScale;
+    }
+
+    /** Sets the range of the render scale, within (0, 1]. */
+    public void setScaleRange(float minScale, float maxScale) {
+        Preconditions.checkArgument(
+                minScale > 0f && minScale <= maxScale && maxScale <= 1f,
+                "The scale range has to be within (0, 1].");
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+        scale = Math.min(maxScale, Math.max(minScale, scale));
+    }
+
+    public float getStep() {
+        return step;
+    }
+
+    /** Sets by how much the scale changes at once. */
+    public void setStep(float step) {
+        Preconditions.checkArgument(step > 0f, "The step has to be positive.");
+        this.step = step;
+    }
+
+    public float getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * Sets the share of the target the cost has to fall below before the
+     * scale is raised again.
+     */
+    public void setHeadroom(float headroom) {
+        Preconditions.checkArgument(headroom > 0f && headroom < 1f,
+                "The headroom has to be within (0, 1).");
+        this.headroom = headroom;
+    }
+
+    public float getSmoothing() {
+        return smoothing;
+    }
+
+    /** Sets the weight of a new sample in the moving average. */
+    public void setSmoothing(float smoothing) {
+        Preconditions.checkArgument(smoothing > 0f && smoothing <= 1f,
+                "The smoothing has to be within (0, 1].");
+        this.smoothing = smoothing;
+    }
+
+    public int getCooldownFrames() {
+        return cooldownFrames;
+    }
+
+    /** Sets for how many frames the scale is kept after a change. */
+    public void setCooldownFrames(int cooldownFrames) {
+        Preconditions.checkArgument(cooldownFrames >= 0,
+                "The cooldown cannot be negative.");
+        this.cooldownFrames = cooldownFrames;
+    }
+
+    public enum Source {
+        /**
+         * The GPU time of the effect chain, measured with timer queries. The
+         * samples arrive a few frames late.
+         */
+        GpuTime,
+        /** The duration of the whole frame, as reported by libGDX. */
+        FrameTime
+    }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.Queue;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.crashinvaders.vfx.effects.CompositeVfxEffect;
+import com.crashinvaders.vfx.effects.ShaderVfxEffect;
+import com.crashinvaders.vfx.effects.VfxEffect;
+import com.crashinvaders.vfx.framebuffer.VfxBufferFormat;
+import com.crashinvaders.vfx.gl.VfxShaderRegistry;
+
+import de.damios.guacamole.Preconditions;
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Spreads the construction of effects and the compilation of shader programs
+ * over several frames, to avoid hitches once they are needed.
+ * <p>
+ * Tasks are queued via {@link #addEffect(Supplier, Consumer)},
+ * {@link #addProgram(FileHandle, FileHandle, String)} or
+ * {@link #addTask(Runnable)} and executed by {@link #update()}, which should
+ * be called once per frame. Each update runs tasks until the
+ * {@linkplain #setBudget(float) time budget} is spent, but at least one.
+ * Every program that shows up in the {@link VfxShaderRegistry} (or belongs to
+ * a constructed {@link ShaderVfxEffect}, also within a
+ * {@link CompositeVfxEffect}) is used for a single dummy draw into
+ * a 1x1 buffer, as many drivers finish the program only on its first use.
+ * <p>
+ * Programs obtained by {@link #addProgram(FileHandle, FileHandle, String)}
+ * are held until the warm-up is disposed, so they stay compiled until the
+ * effects that use them are created.
+ * <p>
+ * The compilation itself happens synchronously on the render thread, as
+ * libGDX compiles and links a {@link ShaderProgram} within its constructor.
+ */
+public final class VfxWarmUp implements Disposable {
+
+    /** The default time budget per frame in milliseconds. */
+    public static final float DEFAULT_BUDGET = 4f;
+
+    private final VfxRenderContext context;
+
+    private final Queue<Runnable> tasks = new Queue<>();
+    private final Array<ShaderProgram> heldPrograms = new Array<>();
+    private final ObjectSet<ShaderProgram> warmedPrograms = new ObjectSet<>();
+    private final Array<ShaderProgram> tmpPrograms = new Array<>();
+
+    private NestableFrameBuffer dummyBuffer;
+    private Listener listener;
+
+    private long budgetNanos;
+    private int completedCount;
+    private int totalCount;
+
+    public VfxWarmUp(VfxRenderContext context) {
+        this.context = context;
+        setBudget(DEFAULT_BUDGET);
+    }
+
+    /**
+     * Queues the construction of an effect. The callback receives the effect
+     * once it has been created and its programs have been warmed up, e.g. to
+     * add it to a {@link VfxManager}.
+     */
+    public <T extends VfxEffect> void addEffect(Supplier<T> factory,
+            Consumer<T> callback) {
+        Preconditions.checkNotNull(factory, "The factory cannot be null.");
+        addTask(() -> {
+            T effect = factory.get();
+            warmUpEffect(effect);
+            if (callback != null) {
+                callback.accept(effect);
+            }
+        });
+    }
+
+    /**
+     * Queues the compilation of a shared program; see
+     * {@link VfxShaderRegistry#obtain(FileHandle, FileHandle, String)}.
+     */
+    public void addProgram(FileHandle vertexFile, FileHandle fragmentFile,
+            String defines) {
+        addTask(() -> heldPrograms.add(
+                VfxShaderRegistry.obtain(vertexFile, fragmentFile, defines)));
+    }
+
+    /**
+     * Queues an arbitrary task, e.g. a setter that makes an effect compile
+     * its shaders lazily, such as switching the type of a blur effect.
+     */
+    public void addTask(Runnable task) {
+        Preconditions.checkNotNull(task, "The task cannot be null.");
+        tasks.addLast(task);
+        totalCount++;
+    }
+
+    /**
+     * Executes the queued tasks within the time budget.
+     *
+     * @return whether all tasks have been completed
+     */
+    public boolean update() {
+        if (tasks.size == 0)
+            return true;
+
+        long start = TimeUtils.nanoTime();
+        do {
+            tasks.removeFirst().run();
+            warmUpRegisteredPrograms();
+            completedCount++;
+            if (listener != null) {
+                listener.onWarmUpProgress(completedCount, totalCount);
+            }
+        } while (tasks.size > 0
+                && TimeUtils.nanoTime() - start < budgetNanos);
+
+        if (tasks.size == 0 && dummyBuffer != null) {
+            dummyBuffer.dispose();
+            dummyBuffer = null;
+        }
+        return tasks.size == 0;
+    }
+
+    /** Executes all queued tasks at once, regardless of the time budget. */
+    public void finish() {
+        long budget = budgetNanos;
+        budgetNanos = Long.MAX_VALUE;
+        update();
+        budgetNanos = budget;
+    }
+
+    public boolean isFinished() {
+        return tasks.size == 0;
+    }
+
+    /** @return the share of completed tasks, from 0 to 1. */
+    public float getProgress() {
+        return totalCount == 0 ? 1f : completedCount / (float) totalCount;
+    }
+
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /** @return the time budget per frame in milliseconds. */
+    public float getBudget() {
+        return budgetNanos / 1000000f;
+    }
+
+    /** Sets the time budget per frame in milliseconds. */
+    public void setBudget(float millis) {
+        Preconditions.checkArgument(millis >= 0,
+                "The budget cannot be negative.");
+        this.budgetNanos = (long) (millis * 1000000L);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Releases the held programs and drops the pending tasks. Effects that
+     * have already been created are not affected.
+     */
+    @Override
+    public void dispose() {
+        tasks.clear();
+        for (int i = 0; i < heldPrograms.size; i++) {
+            VfxShaderRegistry.release(heldPrograms.get(i));
+        }
+        heldPrograms.clear();
+        warmedPrograms.clear();
+        if (dummyBuffer != null) {
+            dummyBuffer.dispose();
+            dummyBuffer = null;
+        }
+    }
+
+    private void warmUpRegisteredPrograms() {
+        VfxShaderRegistry.getPrograms(tmpPrograms);
+        for (int i = 0; i < tmpPrograms.size; i++) {
+            warmUp(tmpPrograms.get(i));
+        }
+        tmpPrograms.clear();
+    }
+
+    /**
+     * Warms up the program of the effect and those of the internal effects of
+     * a composite, including the ones that aren't shared.
+     */
+    private void warmUpEffect(VfxEffect effect) {
+        if (effect instanceof ShaderVfxEffect) {
+            warmUp(((ShaderVfxEffect) effect).getProgram());
+        } else if (effect instanceof CompositeVfxEffect) {
+            Array<VfxEffect> effects = ((CompositeVfxEffect) effect)
+                    .getManagedEffects();
+            for (int i = 0; i < effects.size; i++) {
+                warmUpEffect(effects.get(i));
+            }
+        }
+    }
+
+    /** Issues a dummy draw with the program, if it hasn't been used yet. */
+    private void warmUp(ShaderProgram program) {
+        if (!program.isCompiled() || !warmedPrograms.add(program))
+            return;
+
+        if (dummyBuffer == null) {
+            dummyBuffer = VfxBufferFormat.RGBA8888.createFrameBuffer(1, 1,
+                    false);
+        }
+        dummyBuffer.begin();
+        program.bind();
+        context.getViewportMesh().render(program, GL20.GL_TRIANGLE_STRIP);
+        dummyBuffer.end();
+    }
+
+    public interface Listener {
+        void onWarmUpProgress(int completed, int total);
+    }
+}
@@ -16,9 +16,17 @@
 
 package com.crashinvaders.vfx.effects;
 
+/**
+ * Base class of the effects. Tracks the {@linkplain #getRevision() revision}
+ * of the effect: subclasses have to call {@link #markChanged()} whenever a
+ * change of their state alters the output, unless the state is kept in
+ * uniforms of a {@link ShaderVfxEffect}. Subclasses whose output depends on
+ * earlier frames have to return {@link #VOLATILE} instead.
+ */
 public abstract class AbstractVfxEffect implements VfxEffect {
 
     private boolean disabled;
+    private int revision;
 
     @Override
     public boolean isDisabled() {
@@ -29,4 +37,24 @@ public abstract class AbstractVfxEffect implements VfxEffect {
     public void setDisabled(boolean disabled) {
         this.disabled = disabled;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getRevision() {
+        return revision;
+    }
+
+    /** Changes the revision, as the output of the effect has changed. */
+    protected void markChanged() {
+        revision = (revision + 1) & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Combines two revisions into one that changes whenever either of them
+     * does. The result is {@link #VOLATILE} if either of them is.
+     */
+    protected static int combineRevisions(int revision, int other) {
+        if (revision == VOLATILE || other == VOLATILE)
+            return VOLATILE;
+        return (revision * 31 + other) & Integer.MAX_VALUE;
+    }
+}
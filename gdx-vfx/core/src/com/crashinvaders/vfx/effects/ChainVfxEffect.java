@@ -19,6 +19,7 @@ package com.crashinvaders.vfx.effects;
 import com.crashinvaders.vfx.VfxManager;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
+import com.crashinvaders.vfx.graph.VfxRenderGraph;
 
 /**
  * Any effect that is compatible with {@link VfxManager}'s render chain, should
@@ -26,6 +27,81 @@ import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
  */
 public interface ChainVfxEffect extends VfxEffect {
 
+    /**
+     * The footprint of an effect whose output at a pixel may depend on any
+     * input pixel.
+     */
+    int UNBOUNDED_FOOTPRINT = Integer.MAX_VALUE;
+
     void render(VfxRenderContext context, VfxPingPongWrapper buffers);
 
+    /**
+     * Declares the render passes of the effect for the {@link VfxManager}'s
+     * {@link VfxRenderGraph}. The method is called whenever the graph is
+     * rebuilt.
+     * <p>
+     * By default the effect is rendered as a single pass that reads the
+     * chain's source buffer and writes into its destination buffer. Effects
+     * that need intermediate buffers should override this method and declare
+     * transient buffers instead of obtaining them from the pool directly.
+     */
+    default void setupRenderPasses(VfxRenderGraph.Builder builder) {
+        builder.addPass((context, resources) -> render(context,
+                resources.getChainBuffers()))
+                .reads(VfxRenderGraph.CHAIN_SRC)
+                .writes(VfxRenderGraph.CHAIN_DST);
+    }
+
+    /**
+     * Returns a number that changes whenever the passes declared by
+     * {@link #setupRenderPasses(VfxRenderGraph.Builder)} would change, e.g.
+     * their buffer formats. The {@link VfxRenderGraph} is rebuilt once it
+     * differs from the value at the last build.
+     * <p>
+     * Effects whose passes are always the same return <code>0</code>, which
+     * is the default.
+     */
+    default int getRenderPassesRevision() {
+        return 0;
+    }
+
+    /**
+     * Returns the distance in pixels up to which the output at a pixel
+     * depends on the input around it, e.g. the radius of a blur. It is used
+     * to limit the processing to the surroundings of changed input pixels.
+     * <p>
+     * Effects that distort the image, depend on the position of far away
+     * pixels or render into buffers of another size than the chain's
+     * (scissoring wouldn't match there) return {@link #UNBOUNDED_FOOTPRINT},
+     * which is the default.
+     */
+    default int getSamplingFootprint() {
+        return UNBOUNDED_FOOTPRINT;
+    }
+
+    /**
+     * Returns whether {@link #render(VfxRenderContext, VfxPingPongWrapper)}
+     * writes the output into the destination buffer without ever swapping
+     * the buffers, e.g. because the effect is a single shader pass. As the
+     * last effect of the chain, such an effect renders straight into the
+     * target of {@link VfxManager#applyEffectsTo}, which saves a copy.
+     * <p>
+     * Returns <code>false</code> by default, which is always safe.
+     */
+    default boolean isSwapFree() {
+        return false;
+    }
+
+    /**
+     * Returns whether the effect leaves the image untouched with its current
+     * parameters, e.g. a zoom of <code>1</code>. {@link VfxManager} skips such
+     * effects altogether, without a copy or a buffer swap.
+     * <p>
+     * The result must be exact; effects that only get close to a no-op
+     * shouldn't report it.
+     */
+    default boolean isIdentity() {
+        return false;
+    }
+
 }
\ No newline at end of file
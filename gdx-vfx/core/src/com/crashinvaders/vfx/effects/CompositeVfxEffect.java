@@ -17,6 +17,9 @@
 package com.crashinvaders.vfx.effects;
 
 import com.badlogic.gdx.utils.Array;
+import com.crashinvaders.vfx.VfxMemoryReport;
+import com.crashinvaders.vfx.VfxProfiler;
+import com.crashinvaders.vfx.VfxRenderContext;
 
 /**
  * Base class for an effect that is a composition of some other
@@ -25,9 +28,19 @@ import com.badlogic.gdx.utils.Array;
  * {@link VfxEffect#rebind()}, {@link VfxEffect#update(float)},
  * {@link VfxEffect#dispose()}).
  * <p/>
- * To register an internal effect, call {@link #register(VfxEffect)}.
+ * To register an internal effect, call {@link #register(VfxEffect)}. Rendering
+ * of the internal effects may be wrapped in
+ * {@link #beginSubPass(VfxRenderContext, VfxEffect)} and
+ * {@link #endSubPass(VfxRenderContext)} to make them show up in the
+ * {@link VfxProfiler}.
+ * <p/>
+ * Memory reports and render scales are forwarded to the internal effects as
+ * well, and their revisions are part of the composite's revision; subclasses
+ * that own render targets should override
+ * {@link #reportMemory(VfxMemoryReport)} and call the super method.
  */
-public abstract class CompositeVfxEffect extends AbstractVfxEffect {
+public abstract class CompositeVfxEffect extends AbstractVfxEffect
+        implements VfxMemoryReport.Reporter, ScalableVfxEffect {
 
     protected final Array<VfxEffect> managedEffects = new Array<>();
 
@@ -59,6 +72,41 @@ public abstract class CompositeVfxEffect extends AbstractVfxEffect {
         }
     }
 
+    @Override
+    public void reportMemory(VfxMemoryReport report) {
+        for (int i = 0; i < managedEffects.size; i++) {
+            VfxEffect effect = managedEffects.get(i);
+            if (effect instanceof VfxMemoryReport.Reporter) {
+                ((VfxMemoryReport.Reporter) effect).reportMemory(report);
+            }
+        }
+    }
+
+    @Override
+    public int getRevision() {
+        int revision = super.getRevision();
+        for (int i = 0; i < managedEffects.size; i++) {
+            revision = combineRevisions(revision,
+                    managedEffects.get(i).getRevision());
+        }
+        return revision;
+    }
+
+    @Override
+    public void setRenderScale(float scale) {
+        for (int i = 0; i < managedEffects.size; i++) {
+            VfxEffect effect = managedEffects.get(i);
+            if (effect instanceof ScalableVfxEffect) {
+                ((ScalableVfxEffect) effect).setRenderScale(scale);
+            }
+        }
+    }
+
+    /** @return the internal effects. Must not be modified. */
+    public Array<VfxEffect> getManagedEffects() {
+        return managedEffects;
+    }
+
     protected <T extends VfxEffect> T register(T effect) {
         managedEffects.add(effect);
         return effect;
@@ -68,4 +116,21 @@ public abstract class CompositeVfxEffect extends AbstractVfxEffect {
         managedEffects.removeValue(effect, true);
         return effect;
     }
+
+    /** Starts profiling a nested pass, if profiling is enabled. */
+    protected static void beginSubPass(VfxRenderContext context,
+            VfxEffect effect) {
+        VfxProfiler profiler = context.getProfiler();
+        if (profiler != null) {
+            profiler.begin(effect);
+        }
+    }
+
+    /** Ends profiling the nested pass that has been begun last. */
+    protected static void endSubPass(VfxRenderContext context) {
+        VfxProfiler profiler = context.getProfiler();
+        if (profiler != null) {
+            profiler.end();
+        }
+    }
 }
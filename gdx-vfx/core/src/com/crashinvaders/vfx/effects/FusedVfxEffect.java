@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.crashinvaders.vfx.effects;
+
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.crashinvaders.vfx.VfxRenderContext;
+import com.crashinvaders.vfx.framebuffer.VfxFrameBufferRenderer;
+import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
+import com.crashinvaders.vfx.gl.VfxShaderFusion;
+
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+import de.damios.guacamole.gdx.graphics.ShaderCompatibilityHelper;
+import de.damios.guacamole.gdx.log.Logger;
+import de.damios.guacamole.gdx.log.LoggerService;
+
+/**
+ * Renders a run of {@link FusibleVfxEffect}s in a single pass, using a
+ * generated shader program. The fused effects still own their parameters; the
+ * values are uploaded to the generated program on every render.
+ * <p>
+ * Instances are created and managed by the
+ * {@link com.crashinvaders.vfx.VfxManager}.
+ */
+public class FusedVfxEffect extends ShaderVfxEffect implements ChainVfxEffect {
+
+    private static final Logger LOG = LoggerService
+            .getLogger(FusedVfxEffect.class);
+
+    private static final String U_TEXTURE0 = "u_texture0";
+
+    private final Array<FusibleVfxEffect> effects;
+    private final MemberUniforms[] uniforms;
+
+    private FusedVfxEffect(ShaderProgram program,
+            Array<FusibleVfxEffect> effects, VfxShaderFusion.Result fusion) {
+        super(program);
+        this.effects = effects;
+        this.uniforms = new MemberUniforms[effects.size];
+        for (int i = 0; i < effects.size; i++) {
+            uniforms[i] = new MemberUniforms(program,
+                    fusion.uniformNames.get(i));
+        }
+        rebind();
+    }
+
+    /**
+     * Generates and compiles a fused shader program for the specified
+     * effects.
+     *
+     * @return the fused effect or <code>null</code> if the effects cannot be
+     *         fused.
+     */
+    public static FusedVfxEffect fuse(Array<FusibleVfxEffect> effects) {
+        Array<String> sources = new Array<>(effects.size);
+        for (int i = 0; i < effects.size; i++) {
+            sources.add(effects.get(i).getFragmentSource());
+        }
+
+        VfxShaderFusion.Result fusion = VfxShaderFusion.fuse(sources);
+        if (fusion == null)
+            return null;
+
+        LOG.debug("Compiling a fused shader for " + effects.size
+                + " effects...");
+        ShaderProgram program = ShaderCompatibilityHelper.fromString(
+                VfxFrameBufferRenderer.VERT_SHADER, fusion.fragmentSource);
+        if (!program.isCompiled()) {
+            LOG.error("Fused shader compilation failed:\n" + program.getLog());
+            program.dispose();
+            return null;
+        }
+
+        return new FusedVfxEffect(program, new Array<>(effects), fusion);
+    }
+
+    /**
+     * Also resolves the uniform locations of the fused effects, which may
+     * have changed if the program has been relinked.
+     */
+    @Override
+    public void rebind() {
+        super.rebind();
+        setUniform(U_TEXTURE0, TEXTURE_HANDLE0);
+
+        program.bind();
+        for (int i = 0; i < effects.size; i++) {
+            uniforms[i].clear();
+            uniforms[i].begin();
+            effects.get(i).applyFusedUniforms(uniforms[i]);
+        }
+    }
+
+    @Override
+    public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
+        render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
+    }
+
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
+    public void render(VfxRenderContext context, NestableFrameBuffer src,
+            NestableFrameBuffer dst) {
+        // Bind src buffer's texture as a primary one.
+        src.getColorBufferTexture().bind(TEXTURE_HANDLE0);
+
+        program.bind();
+        for (int i = 0; i < effects.size; i++) {
+            uniforms[i].begin();
+            effects.get(i).applyFusedUniforms(uniforms[i]);
+        }
+
+        // Apply shader effect and render result to dst buffer.
+        renderShader(context, dst);
+    }
+
+    /** Includes the revisions of the fused effects. */
+    @Override
+    public int getRevision() {
+        int revision = super.getRevision();
+        for (int i = 0; i < effects.size; i++) {
+            revision = combineRevisions(revision,
+                    effects.get(i).getRevision());
+        }
+        return revision;
+    }
+
+    /** The footprints of the fused effects add up. */
+    @Override
+    public int getSamplingFootprint() {
+        long footprint = 0;
+        for (int i = 0; i < effects.size; i++) {
+            int effectFootprint = effects.get(i).getSamplingFootprint();
+            if (effectFootprint == UNBOUNDED_FOOTPRINT)
+                return UNBOUNDED_FOOTPRINT;
+            footprint += effectFootprint;
+        }
+        return (int) Math.min(footprint, UNBOUNDED_FOOTPRINT);
+    }
+
+    @Override
+    public boolean isIdentity() {
+        for (int i = 0; i < effects.size; i++) {
+            if (!effects.get(i).isIdentity())
+                return false;
+        }
+        return true;
+    }
+
+    /** @return the fused effects, in order. */
+    public Array<FusibleVfxEffect> getEffects() {
+        return effects;
+    }
+
+    /**
+     * Maps the uniforms of a fused effect to the renamed ones of the fused
+     * program. Effects set their uniforms in the same order on every render,
+     * so the locations are resolved once, in that order, when the program is
+     * built (see {@link FusedVfxEffect#rebind()}) and looked up by position
+     * afterwards.
+     */
+    private static class MemberUniforms
+            implements FusibleVfxEffect.FusedUniforms {
+
+        private final ShaderProgram program;
+        private final ObjectMap<String, String> names;
+        private final Array<String> order = new Array<>();
+        private final IntArray locations = new IntArray();
+        private int position;
+
+        MemberUniforms(ShaderProgram program, ObjectMap<String, String> names) {
+            this.program = program;
+            this.names = names;
+        }
+
+        /** Drops the resolved locations. */
+        void clear() {
+            order.clear();
+            locations.clear();
+        }
+
+        /** Has to be called before the effect sets its uniforms. */
+        void begin() {
+            position = 0;
+        }
+
+        private int location(String uniformName) {
+            int i = position++;
+            if (i < order.size) {
+                String expected = order.get(i);
+                if (expected == uniformName || expected.equals(uniformName))
+                    return locations.get(i);
+            }
+            return resolve(i, uniformName);
+        }
+
+        /**
+         * Resolves a uniform the effect hasn't set at this position before.
+         * The positions after it are resolved again as well.
+         */
+        private int resolve(int i, String uniformName) {
+            String name = names.get(uniformName);
+            int location = name == null ? -1
+                    : program.fetchUniformLocation(name, false);
+
+            order.truncate(i);
+            locations.setSize(i);
+            order.add(uniformName);
+            locations.add(location);
+            return location;
+        }
+
+        @Override
+        public void setUniformi(String uniformName, int value) {
+            int location = location(uniformName);
+            if (location != -1)
+                program.setUniformi(location, value);
+        }
+
+        @Override
+        public void setUniformf(String uniformName, float value) {
+            int location = location(uniformName);
+            if (location != -1)
+                program.setUniformf(location, value);
+        }
+
+        @Override
+        public void setUniformf(String uniformName, Vector2 value) {
+            int location = location(uniformName);
+            if (location != -1)
+                program.setUniformf(location, value.x, value.y);
+        }
+
+        @Override
+        public void setUniformf(String uniformName, Vector3 value) {
+            int location = location(uniformName);
+            if (location != -1)
+                program.setUniformf(location, value.x, value.y, value.z);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.crashinvaders.vfx.effects;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.crashinvaders.vfx.VfxManager;
+import com.crashinvaders.vfx.gl.VfxShaderFusion;
+
+/**
+ * A {@link ChainVfxEffect} that works on a per-pixel basis, i.e. its fragment
+ * shader only samples <code>u_texture0</code> at <code>v_texCoords</code>.
+ * Consecutive effects of this kind may be merged into a single shader pass by
+ * the {@link VfxManager}.
+ *
+ * @see VfxManager#setFusionEnabled(boolean)
+ * @see VfxShaderFusion
+ */
+public interface FusibleVfxEffect extends ChainVfxEffect {
+
+    /**
+     * @return the source of the effect's fragment shader, including the
+     *         defines it has been compiled with.
+     */
+    String getFragmentSource();
+
+    /**
+     * Uploads the current values of the effect's uniforms (except for
+     * <code>u_texture0</code>) to a fused shader program. The program is
+     * already bound when this method is called.
+     */
+    void applyFusedUniforms(FusedUniforms uniforms);
+
+    /** A per-pixel effect is a single pass. */
+    @Override
+    default boolean isSwapFree() {
+        return true;
+    }
+
+    /**
+     * Maps the uniform names of an effect to the ones of the fused shader
+     * program. Uniforms that are not present in the fused program are
+     * silently ignored.
+     */
+    interface FusedUniforms {
+
+        void setUniformi(String uniformName, int value);
+
+        void setUniformf(String uniformName, float value);
+
+        void setUniformf(String uniformName, Vector2 value);
+
+        void setUniformf(String uniformName, Vector3 value);
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.crashinvaders.vfx.effects;
 
+import com.crashinvaders.vfx.VfxProfiler;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
 
@@ -51,6 +52,26 @@ public class MultipassEffectWrapper extends AbstractVfxEffect
         effect.dispose();
     }
 
+    @Override
+    public int getRevision() {
+        return combineRevisions(super.getRevision(), effect.getRevision());
+    }
+
+    @Override
+    public int getSamplingFootprint() {
+        int footprint = effect.getSamplingFootprint();
+        if (passes == 0)
+            return 0;
+        if (footprint == UNBOUNDED_FOOTPRINT)
+            return UNBOUNDED_FOOTPRINT;
+        return (int) Math.min((long) footprint * passes, UNBOUNDED_FOOTPRINT);
+    }
+
+    @Override
+    public boolean isIdentity() {
+        return passes == 0 || effect.isIdentity();
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
         // Simply swap buffers to simulate render skip.
@@ -59,9 +80,16 @@ public class MultipassEffectWrapper extends AbstractVfxEffect
             return;
         }
 
+        final VfxProfiler profiler = context.getProfiler();
         final int finalPasses = this.passes;
         for (int i = 0; i < finalPasses; i++) {
+            if (profiler != null) {
+                profiler.begin(effect);
+            }
             effect.render(context, buffers);
+            if (profiler != null) {
+                profiler.end();
+            }
             if (i < finalPasses - 1) {
                 buffers.swap();
             }
@@ -76,5 +104,6 @@ public class MultipassEffectWrapper extends AbstractVfxEffect
         Preconditions.checkArgument(passes >= 0, "Passes cannot be < 0.");
 
         this.passes = passes;
+        markChanged();
     }
 }
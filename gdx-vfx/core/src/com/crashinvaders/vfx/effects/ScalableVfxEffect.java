@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.effects;
+
+import com.crashinvaders.vfx.VfxManager;
+
+/**
+ * An effect with parameters in pixels (e.g. a blur radius) that can keep its
+ * look when the effect chain is rendered at a reduced resolution.
+ *
+ * @see VfxManager#setResolutionGovernor(com.crashinvaders.vfx.VfxResolutionGovernor)
+ */
+public interface ScalableVfxEffect extends VfxEffect {
+
+    /**
+     * Called whenever the resolution the effect is rendered at changes
+     * relative to the back buffer, right after
+     * {@link #resize(int, int)}. Pixel-sized parameters should be multiplied
+     * by the scale to appear the same on screen.
+     *
+     * @param scale
+     *            the render scale, where <code>1</code> is the full
+     *            resolution
+     */
+    void setRenderScale(float scale);
+}
@@ -23,11 +23,28 @@ import com.badlogic.gdx.math.Matrix3;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
 import com.crashinvaders.vfx.VfxRenderContext;
+import com.crashinvaders.vfx.framebuffer.VfxMultiTargetBuffer;
+import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderRegistry;
+import com.crashinvaders.vfx.gl.VfxUniform;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
-/** Base class for any shader based single-pass filter. */
+/**
+ * Base class for any shader based single-pass filter.
+ * <p>
+ * Uniforms that change often (e.g. every frame) should be declared as
+ * {@link VfxUniform} handles through {@link #registerUniform(VfxUniform)}.
+ * Changed handles are uploaded once, right before the shader is rendered.
+ * <p>
+ * The program may be obtained from the {@link VfxShaderRegistry}. Since other
+ * instances then draw with the same program, all handles are uploaded again
+ * whenever another user has drawn with it in between. Such effects shouldn't
+ * set uniforms directly on the program, unless they are the same for all
+ * users.
+ */
 @SuppressWarnings("unchecked")
 public abstract class ShaderVfxEffect extends AbstractVfxEffect {
 
@@ -42,13 +59,19 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
 
     protected final ShaderProgram program;
 
+    private final Array<VfxUniform> uniforms = new Array<>();
+
     public ShaderVfxEffect(ShaderProgram program) {
         this.program = program;
     }
 
+    /**
+     * Disposes the program, or releases it if it is shared via the
+     * {@link VfxShaderRegistry}.
+     */
     @Override
     public void dispose() {
-        program.dispose();
+        VfxShaderRegistry.release(program);
     }
 
     @Override
@@ -56,9 +79,32 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
         // Do nothing by default.
     }
 
+    /**
+     * Invalidates the registered uniform handles, so they will be resolved
+     * and uploaded again on the next render.
+     */
     @Override
     public void rebind() {
-        // Do nothing by default.
+        for (int i = 0; i < uniforms.size; i++) {
+            uniforms.get(i).invalidate();
+        }
+        markChanged();
+    }
+
+    /**
+     * Includes the changes of the registered uniform handles and of the
+     * uniforms set via the <code>setUniform</code> methods. Subclasses that
+     * set uniforms on the program directly have to call
+     * {@link #markChanged()}.
+     */
+    @Override
+    public int getRevision() {
+        int revision = super.getRevision();
+        for (int i = 0; i < uniforms.size; i++) {
+            revision = combineRevisions(revision,
+                    uniforms.get(i).getChangeCount());
+        }
+        return revision;
     }
 
     @Override
@@ -70,6 +116,12 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
         return program;
     }
 
+    /**
+     * Draws the program over the destination buffer. If the buffer is a
+     * {@link VfxMultiTargetBuffer}, all of its attachments are written in this
+     * single pass; the program has to be compiled via
+     * {@link VfxGLUtils#compileMultiTargetShader} then.
+     */
     protected void renderShader(VfxRenderContext context,
             NestableFrameBuffer dst) {
         boolean manualBufferBind = !dst.isBound();
@@ -78,6 +130,14 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
         }
 
         program.bind();
+        if (VfxShaderRegistry.claim(program, this)) {
+            // Another user has overwritten the uniforms of the shared
+            // program.
+            for (int i = 0; i < uniforms.size; i++) {
+                uniforms.get(i).markDirty();
+            }
+        }
+        flushUniforms();
         context.getViewportMesh().render(program, GL20.GL_TRIANGLE_STRIP);
 
         if (manualBufferBind) {
@@ -85,6 +145,34 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
         }
     }
 
+    /**
+     * Registers a uniform handle, whose value will be uploaded to the program
+     * whenever it has changed.
+     */
+    protected <T extends VfxUniform> T registerUniform(T uniform) {
+        uniforms.add(uniform);
+        return uniform;
+    }
+
+    /**
+     * Uploads the values of all dirty uniform handles. The program has to be
+     * bound.
+     */
+    protected void flushUniforms() {
+        for (int i = 0; i < uniforms.size; i++) {
+            uniforms.get(i).flush(program);
+        }
+    }
+
+    /**
+     * Uploads the values of all uniform handles into a fused shader program.
+     */
+    protected void applyUniforms(FusibleVfxEffect.FusedUniforms target) {
+        for (int i = 0; i < uniforms.size; i++) {
+            uniforms.get(i).applyTo(target);
+        }
+    }
+
     /**
      * Updates shader's uniform of float type.
      * <p/>
@@ -94,6 +182,7 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
      * {@link ShaderProgram}.
      */
     protected void setUniform(String uniformName, float value) {
+        markChanged();
         program.bind();
         program.setUniformf(uniformName, value);
     }
@@ -107,6 +196,7 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
      * {@link ShaderProgram}.
      */
     protected void setUniform(String uniformName, int value) {
+        markChanged();
         program.bind();
         program.setUniformi(uniformName, value);
     }
@@ -120,6 +210,7 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
      * {@link ShaderProgram}.
      */
     protected void setUniform(String uniformName, Vector2 value) {
+        markChanged();
         program.bind();
         program.setUniformf(uniformName, value);
     }
@@ -133,6 +224,7 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
      * {@link ShaderProgram}.
      */
     protected void setUniform(String uniformName, Vector3 value) {
+        markChanged();
         program.bind();
         program.setUniformf(uniformName, value);
     }
@@ -146,6 +238,7 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
      * {@link ShaderProgram}.
      */
     protected void setUniform(String uniformName, Color value) {
+        markChanged();
         program.bind();
         program.setUniformf(uniformName, value);
     }
@@ -159,6 +252,7 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
      * {@link ShaderProgram}.
      */
     protected void setUniform(String uniformName, Matrix3 value) {
+        markChanged();
         program.bind();
         program.setUniformMatrix(uniformName, value);
     }
@@ -172,6 +266,7 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
      * {@link ShaderProgram}.
      */
     protected void setUniform(String uniformName, Matrix4 value) {
+        markChanged();
         program.bind();
         program.setUniformMatrix(uniformName, value);
     }
@@ -191,6 +286,7 @@ public abstract class ShaderVfxEffect extends AbstractVfxEffect {
      */
     protected void setUniform(String uniformName, int elementSize,
             float[] values, int offset, int length) {
+        markChanged();
         program.bind();
         switch (elementSize) {
         case 1:
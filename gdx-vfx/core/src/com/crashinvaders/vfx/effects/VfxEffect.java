@@ -21,6 +21,12 @@ import com.crashinvaders.vfx.VfxManager;
 
 public interface VfxEffect extends Disposable {
 
+    /**
+     * The revision of an effect whose output may change at any time, even if
+     * its input and parameters stay the same.
+     */
+    int VOLATILE = -1;
+
     /**
      * Whether or not this effect is disabled and thus shouldn't be processed
      */
@@ -50,4 +56,18 @@ public interface VfxEffect extends Disposable {
      * be reuploaded/rebound.
      */
     void rebind();
+
+    /**
+     * Returns a number that changes whenever the output of the effect changes
+     * for the same input, e.g. because a parameter has been changed or time
+     * has passed in {@link #update(float)}. The {@link VfxManager} uses it to
+     * reuse the output of effects that haven't changed.
+     * <p>
+     * Effects that cannot tell (by default) or whose output depends on
+     * anything else than their input and parameters (e.g. earlier frames)
+     * return {@link #VOLATILE}.
+     */
+    default int getRevision() {
+        return VOLATILE;
+    }
 }
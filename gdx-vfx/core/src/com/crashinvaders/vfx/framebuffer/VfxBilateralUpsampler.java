@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.framebuffer;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Disposable;
+
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+import de.damios.guacamole.gdx.graphics.ShaderCompatibilityHelper;
+
+/**
+ * Upsamples a low resolution result guided by the full resolution input it
+ * has been computed from (joint bilateral upsampling).
+ * <p>
+ * Every output pixel blends the four nearest low resolution texels with
+ * bilinear weights, which are additionally attenuated by how much the luma of
+ * the low resolution input at that texel differs from the luma of the full
+ * resolution input at the pixel. That way edges of the input stay sharp
+ * instead of being smeared by the upscale.
+ */
+public class VfxBilateralUpsampler implements Disposable {
+
+    public static final float DEFAULT_SHARPNESS = 16f;
+
+    // @formatter:off
+    private static final String FRAG_SHADER = 
+                    "#ifdef GL_ES\n" 
+                    + "    #define PRECISION mediump\n"
+                    + "    precision PRECISION float;\n" 
+                    + "#else\n"
+                    + "    #define PRECISION\n" 
+                    + "#endif\n"
+                    + "varying vec2 v_texCoords;\n"
+                    + "uniform sampler2D u_texture0; // Low resolution result\n"
+                    + "uniform sampler2D u_texture1; // Low resolution input\n"
+                    + "uniform sampler2D u_texture2; // Full resolution input\n"
+                    + "uniform vec2 u_lowSize;\n"
+                    + "uniform float u_sharpness;\n"
+                    + "float luma(vec3 color) {\n"
+                    + "    return dot(color, vec3(0.299, 0.587, 0.114));\n"
+                    + "}\n"
+                    + "float weight(vec2 uv, float bilinear, float guide) {\n"
+                    + "    float delta = abs(luma(texture2D(u_texture1, uv).rgb) - guide);\n"
+                    + "    return bilinear * exp(-u_sharpness * delta) + 0.00001;\n"
+                    + "}\n"
+                    + "void main() {\n"
+                    + "    vec2 pos = v_texCoords * u_lowSize - 0.5;\n"
+                    + "    vec2 base = floor(pos);\n"
+                    + "    vec2 f = pos - base;\n"
+                    + "    vec2 uv00 = (base + 0.5) / u_lowSize;\n"
+                    + "    vec2 uv11 = (base + 1.5) / u_lowSize;\n"
+                    + "    vec2 uv10 = vec2(uv11.x, uv00.y);\n"
+                    + "    vec2 uv01 = vec2(uv00.x, uv11.y);\n"
+                    + "    float guide = luma(texture2D(u_texture2, v_texCoords).rgb);\n"
+                    + "    float w00 = weight(uv00, (1.0 - f.x) * (1.0 - f.y), guide);\n"
+                    + "    float w10 = weight(uv10, f.x * (1.0 - f.y), guide);\n"
+                    + "    float w01 = weight(uv01, (1.0 - f.x) * f.y, guide);\n"
+                    + "    float w11 = weight(uv11, f.x * f.y, guide);\n"
+                    + "    gl_FragColor = (texture2D(u_texture0, uv00) * w00\n"
+                    + "            + texture2D(u_texture0, uv10) * w10\n"
+                    + "            + texture2D(u_texture0, uv01) * w01\n"
+                    + "            + texture2D(u_texture0, uv11) * w11)\n"
+                    + "            / (w00 + w10 + w01 + w11);\n"
+                    + "}";
+    // @formatter:on
+
+    private final ShaderProgram shader;
+    private float sharpness = DEFAULT_SHARPNESS;
+
+    public VfxBilateralUpsampler() {
+        shader = ShaderCompatibilityHelper.fromString(
+                VfxFrameBufferRenderer.VERT_SHADER, FRAG_SHADER);
+
+        shader.bind();
+        shader.setUniformi("u_texture0", 0);
+        shader.setUniformi("u_texture1", 1);
+        shader.setUniformi("u_texture2", 2);
+    }
+
+    @Override
+    public void dispose() {
+        shader.dispose();
+    }
+
+    /**
+     * Renders the upsampled result into <code>dst</code>.
+     *
+     * @param mesh
+     *            the screen-space quad to draw
+     * @param lowResult
+     *            the low resolution result to upsample
+     * @param lowInput
+     *            the input of the result, at the same resolution
+     * @param highInput
+     *            the input of the result, at the resolution of
+     *            <code>dst</code>
+     */
+    public void upsample(Mesh mesh, NestableFrameBuffer lowResult,
+            NestableFrameBuffer lowInput, NestableFrameBuffer highInput,
+            NestableFrameBuffer dst) {
+        highInput.getColorBufferTexture().bind(2);
+        lowInput.getColorBufferTexture().bind(1);
+        lowResult.getColorBufferTexture().bind(0);
+
+        dst.begin();
+        shader.bind();
+        shader.setUniformf("u_lowSize", lowResult.getWidth(),
+                lowResult.getHeight());
+        shader.setUniformf("u_sharpness", sharpness);
+        mesh.render(shader, GL20.GL_TRIANGLE_STRIP);
+        dst.end();
+    }
+
+    public float getSharpness() {
+        return sharpness;
+    }
+
+    /**
+     * Sets how strongly luma differences suppress the blending across edges.
+     * <code>0</code> results in plain bilinear upsampling.
+     */
+    public void setSharpness(float sharpness) {
+        if (sharpness < 0f) {
+            throw new IllegalArgumentException(
+                    "Sharpness cannot be negative.");
+        }
+        this.sharpness = sharpness;
+    }
+}
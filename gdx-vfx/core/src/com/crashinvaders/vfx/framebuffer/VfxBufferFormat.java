@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.framebuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.glutils.GLFrameBuffer;
+import com.badlogic.gdx.graphics.glutils.GLVersion;
+
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * The color formats of the frame buffers used by the effects. Passes that
+ * don't need four 8-bit channels can request a cheaper (or a more precise)
+ * format; if the format is not supported by the current OpenGL context, the
+ * next format of its fallback chain is used instead (see
+ * {@link #negotiate()}).
+ */
+public enum VfxBufferFormat {
+
+    /** The default format. Supported everywhere. */
+    RGBA8888(GL20.GL_RGBA, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, 4, null),
+    /** For opaque buffers on low-end devices. Supported everywhere. */
+    RGB565(GL20.GL_RGB, GL20.GL_RGB, GL20.GL_UNSIGNED_SHORT_5_6_5, 2,
+            RGBA8888),
+    /** Half float, for HDR content that needs an alpha channel. */
+    RGBA16F(GL30.GL_RGBA16F, GL20.GL_RGBA, GL20.GL_FLOAT, 8, RGBA8888),
+    /** Packed float without alpha, for HDR content such as bloom. */
+    R11G11B10F(GL30.GL_R11F_G11F_B10F, GL20.GL_RGB, GL20.GL_FLOAT, 4,
+            RGBA16F);
+
+    private final int internalFormat;
+    private final int format;
+    private final int type;
+    private final int bytesPerPixel;
+    private final VfxBufferFormat fallback;
+
+    /** 0: not checked yet, 1: supported, -1: not supported. */
+    private int support = 0;
+
+    VfxBufferFormat(int internalFormat, int format, int type,
+            int bytesPerPixel, VfxBufferFormat fallback) {
+        this.internalFormat = internalFormat;
+        this.format = format;
+        this.type = type;
+        this.bytesPerPixel = bytesPerPixel;
+        this.fallback = fallback;
+    }
+
+    public int getInternalFormat() {
+        return internalFormat;
+    }
+
+    /** @return the pixel format of the color attachment's data. */
+    public int getFormat() {
+        return format;
+    }
+
+    /** @return the data type of the color attachment's data. */
+    public int getType() {
+        return type;
+    }
+
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    /** @return whether the format is color-renderable in this context. */
+    public boolean isSupported() {
+        if (support == 0) {
+            support = checkSupport() ? 1 : -1;
+        }
+        return support == 1;
+    }
+
+    /**
+     * @return this format if it's supported, otherwise the first supported
+     *         format of the fallback chain.
+     */
+    public VfxBufferFormat negotiate() {
+        VfxBufferFormat format = this;
+        while (!format.isSupported()) {
+            format = format.fallback;
+        }
+        return format;
+    }
+
+    /**
+     * Creates a frame buffer of this format. The format has to be
+     * {@link #isSupported() supported}.
+     */
+    public NestableFrameBuffer createFrameBuffer(int width, int height,
+            boolean hasDepth) {
+        switch (this) {
+        case RGBA8888:
+            return new NestableFrameBuffer(Format.RGBA8888, width, height,
+                    hasDepth);
+        case RGB565:
+            return new NestableFrameBuffer(Format.RGB565, width, height,
+                    hasDepth);
+        default:
+            GLFrameBuffer.FrameBufferBuilder builder = new GLFrameBuffer.FrameBufferBuilder(
+                    width, height);
+            builder.addColorTextureAttachment(internalFormat, format, type);
+            if (hasDepth) {
+                builder.addBasicDepthRenderBuffer();
+            }
+            return new FormattedFrameBuffer(builder);
+        }
+    }
+
+    private boolean checkSupport() {
+        switch (this) {
+        case RGBA8888:
+        case RGB565:
+            return true;
+        default:
+            if (Gdx.gl30 == null)
+                return false;
+            if (Gdx.graphics.getGLVersion()
+                    .getType() == GLVersion.Type.OpenGL)
+                return true;
+            // Float formats aren't color-renderable in core GLES 3.0
+            return Gdx.graphics.supportsExtension("GL_EXT_color_buffer_float")
+                    || (this == RGBA16F && Gdx.graphics.supportsExtension(
+                            "GL_EXT_color_buffer_half_float"));
+        }
+    }
+
+    /** Exposes the builder constructor of {@link NestableFrameBuffer}. */
+    private static class FormattedFrameBuffer extends NestableFrameBuffer {
+        FormattedFrameBuffer(GLFrameBuffer.FrameBufferBuilder builder) {
+            super(builder);
+        }
+    }
+}
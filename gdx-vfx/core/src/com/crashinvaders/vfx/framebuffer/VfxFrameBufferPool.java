@@ -24,18 +24,49 @@ import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
-import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.crashinvaders.vfx.VfxMemoryReport;
 
+import de.damios.guacamole.Preconditions;
 import de.damios.guacamole.gdx.graphics.GLUtils;
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
-public class VfxFrameBufferPool extends Pool<NestableFrameBuffer>
-        implements Disposable {
+/**
+ * A pool of frame buffers, bucketed by their size, format, texture filter and
+ * depth attachment.
+ * <p>
+ * {@link #obtain()} returns a buffer of the pool's default configuration,
+ * while {@link #obtain(int, int, VfxBufferFormat, TextureFilter, boolean)}
+ * allows any other size or format. Freed buffers are kept for reuse and get
+ * disposed once they haven't been used for a number of frames (see
+ * {@link #setMaxIdleFrames(int)}) or if the pool would exceed its memory
+ * budget otherwise (see {@link #setBudget(long)}). {@link #update()} has to be
+ * called once per frame to advance the pool's clock.
+ * <p>
+ * Buffers with several color attachments are pooled the same way, see
+ * {@link #obtainMultiTarget(int, int, VfxBufferFormat...)}.
+ */
+public class VfxFrameBufferPool
+        implements VfxMemoryReport.Reporter, Disposable {
+
+    /** The default number of frames after which idle buffers are disposed. */
+    public static final int DEFAULT_MAX_IDLE_FRAMES = 300;
+
+    /**
+     * The buckets with at least one buffer. Buckets are added with their
+     * first buffer and dropped with their last one, so sizes that are no
+     * longer used don't slow down the lookups.
+     */
+    private final Array<Bucket> buckets = new Array<>();
+    /** The obtained buffers and the buckets they belong to. */
+    private final ObjectMap<NestableFrameBuffer, Bucket> obtained = new ObjectMap<>();
 
     private int width;
     private int height;
-    private Format format;
+    private VfxBufferFormat format;
     private boolean hasDepth;
 
     private @Nullable TextureWrap textureWrapU;
@@ -43,6 +74,16 @@ public class VfxFrameBufferPool extends Pool<NestableFrameBuffer>
     private @Nullable TextureFilter textureFilterMin;
     private @Nullable TextureFilter textureFilterMag;
 
+    private long budget = -1;
+    private int maxIdleFrames = DEFAULT_MAX_IDLE_FRAMES;
+    private long frame;
+
+    private long allocatedBytes;
+    private long peakAllocatedBytes;
+    private int allocatedCount;
+    private int obtainedCount;
+    private int peakObtainedCount;
+
     public VfxFrameBufferPool(int bufferWidth, int bufferHeight) {
         this(Format.RGBA8888, bufferWidth, bufferHeight, false, 8);
     }
@@ -57,10 +98,26 @@ public class VfxFrameBufferPool extends Pool<NestableFrameBuffer>
             boolean hasDepth, int initialCapacity, TextureWrap textureWrapU,
             TextureWrap textureWrapV, TextureFilter textureFilterMin,
             TextureFilter textureFilterMag) {
-        super(initialCapacity);
+        this(toBufferFormat(format), bufferWidth, bufferHeight, hasDepth,
+                initialCapacity, textureWrapU, textureWrapV, textureFilterMin,
+                textureFilterMag);
+    }
+
+    /**
+     * @param format
+     *            the default format; if it isn't supported, a fallback format
+     *            is used instead
+     * @param initialCapacity
+     *            unused; the buckets grow as needed
+     * @see VfxBufferFormat#negotiate()
+     */
+    public VfxFrameBufferPool(VfxBufferFormat format, int bufferWidth,
+            int bufferHeight, boolean hasDepth, int initialCapacity,
+            TextureWrap textureWrapU, TextureWrap textureWrapV,
+            TextureFilter textureFilterMin, TextureFilter textureFilterMag) {
         this.width = bufferWidth;
         this.height = bufferHeight;
-        this.format = format;
+        this.format = format.negotiate();
         this.hasDepth = hasDepth;
         this.textureWrapU = textureWrapU;
         this.textureWrapV = textureWrapV;
@@ -68,45 +125,525 @@ public class VfxFrameBufferPool extends Pool<NestableFrameBuffer>
         this.textureFilterMag = textureFilterMag;
     }
 
-    @Override
-    protected NestableFrameBuffer newObject() {
-        NestableFrameBuffer fbo = new NestableFrameBuffer(format, width, height,
-                hasDepth);
+    /** @return a buffer of the pool's default configuration. */
+    public NestableFrameBuffer obtain() {
+        return obtain(getBucket(width, height, format, textureFilterMin,
+                textureFilterMag, hasDepth));
+    }
 
-        boolean setWrap = textureWrapU != null && textureWrapV != null;
-        boolean setFilter = textureFilterMin != null
-                && textureFilterMag != null;
+    /**
+     * @return a buffer of the pool's default size, but with the specified
+     *         format.
+     */
+    public NestableFrameBuffer obtain(VfxBufferFormat format) {
+        return obtain(getBucket(width, height, format.negotiate(),
+                textureFilterMin, textureFilterMag, hasDepth));
+    }
 
-        if (setWrap || setFilter) {
-            int boundHandle = GLUtils.getBoundFboHandle();
-            Texture texture = fbo.getColorBufferTexture();
-            if (setWrap)
-                texture.setWrap(textureWrapU, textureWrapV);
-            if (setFilter)
-                texture.setFilter(textureFilterMin, textureFilterMag);
-
-            fbo.getColorBufferTexture().setFilter(Texture.TextureFilter.Nearest,
-                    Texture.TextureFilter.Nearest);
-            Gdx.gl20.glBindFramebuffer(GL20.GL_FRAMEBUFFER, boundHandle);
+    /**
+     * @return a buffer of the specified size and format, with the pool's
+     *         default texture filter and depth setting.
+     */
+    public NestableFrameBuffer obtain(int width, int height,
+            VfxBufferFormat format) {
+        return obtain(getBucket(width, height, format.negotiate(),
+                textureFilterMin, textureFilterMag, hasDepth));
+    }
+
+    /**
+     * Returns a buffer with the specified configuration. It has to be returned
+     * via {@link #free(NestableFrameBuffer)} once it is no longer used.
+     *
+     * @param format
+     *            the requested format; if it isn't supported, a fallback
+     *            format is used instead
+     * @param filter
+     *            the min and mag filter of the color texture or
+     *            <code>null</code> to keep the texture's default
+     */
+    public NestableFrameBuffer obtain(int width, int height,
+            VfxBufferFormat format, @Nullable TextureFilter filter,
+            boolean hasDepth) {
+        return obtain(getBucket(width, height, format.negotiate(), filter,
+                filter, hasDepth));
+    }
+
+    /**
+     * Returns a buffer with a color attachment for each of the specified
+     * formats, with the pool's default texture filter and depth setting. It
+     * has to be returned via {@link #free(NestableFrameBuffer)} once it is no
+     * longer used. Requires {@link VfxMultiTargetBuffer#isSupported()
+     * multiple render target support}.
+     *
+     * @param formats
+     *            the requested formats; if one isn't supported, a fallback
+     *            format is used instead
+     */
+    public VfxMultiTargetBuffer obtainMultiTarget(int width, int height,
+            VfxBufferFormat... formats) {
+        return (VfxMultiTargetBuffer) obtain(getMultiTargetBucket(width,
+                height, formats, textureFilterMin, textureFilterMag,
+                hasDepth));
+    }
+
+    private NestableFrameBuffer obtain(Bucket bucket) {
+        NestableFrameBuffer fbo;
+        if (bucket.idle.size > 0) {
+            fbo = bucket.idle.pop();
+            bucket.idleSince.pop();
+        } else {
+            fbo = allocate(bucket);
         }
 
+        obtained.put(fbo, bucket);
+        obtainedCount++;
+        peakObtainedCount = Math.max(peakObtainedCount, obtainedCount);
         return fbo;
     }
 
+    /** Returns a buffer obtained from this pool for reuse. */
+    public void free(NestableFrameBuffer fbo) {
+        Bucket bucket = obtained.remove(fbo);
+        Preconditions.checkArgument(bucket != null,
+                "The buffer wasn't obtained from this pool.");
+
+        bucket.idle.add(fbo);
+        bucket.idleSince.add(frame);
+        obtainedCount--;
+    }
+
+    /**
+     * Creates a buffer of the pool's default configuration, which is
+     * <i>not</i> tracked by the pool. This is meant for long-living buffers
+     * that are disposed by their owner.
+     */
+    public NestableFrameBuffer newFrameBuffer() {
+        return createFrameBuffer(width, height, format, textureFilterMin,
+                textureFilterMag, hasDepth);
+    }
+
+    /**
+     * Makes sure that at least the specified number of idle buffers of the
+     * pool's default configuration are available.
+     */
+    public void prewarm(int count) {
+        prewarm(getBucket(width, height, format, textureFilterMin,
+                textureFilterMag, hasDepth), count);
+    }
+
+    /**
+     * Makes sure that at least the specified number of idle buffers of the
+     * specified configuration are available. This avoids allocations during
+     * the first frames an effect is active.
+     */
+    public void prewarm(int width, int height, VfxBufferFormat format,
+            @Nullable TextureFilter filter, boolean hasDepth, int count) {
+        prewarm(getBucket(width, height, format.negotiate(), filter, filter,
+                hasDepth), count);
+    }
+
+    private void prewarm(Bucket bucket, int count) {
+        while (bucket.idle.size < count) {
+            bucket.idle.add(allocate(bucket));
+            bucket.idleSince.add(frame);
+        }
+    }
+
+    /**
+     * Advances the pool's frame counter and disposes of all buffers that have
+     * been idle for longer than the {@linkplain #setMaxIdleFrames(int) maximum
+     * idle frames}. Should be called once per frame.
+     */
+    public void update() {
+        frame++;
+        if (maxIdleFrames <= 0)
+            return;
+
+        for (int i = buckets.size - 1; i >= 0; i--) {
+            Bucket bucket = buckets.get(i);
+            int expired = countExpired(bucket, frame, maxIdleFrames);
+            for (int j = 0; j < expired; j++) {
+                discard(bucket, 0);
+            }
+        }
+    }
+
+    /**
+     * Changes the default buffer size. The idle buffers of the previous
+     * default size are disposed.
+     */
     public void resize(int bufferWidth, int bufferHeight) {
-        if (this.width != bufferWidth || this.height != bufferHeight) {
-            clear();
+        if (this.width == bufferWidth && this.height == bufferHeight)
+            return;
+
+        for (int i = buckets.size - 1; i >= 0; i--) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.width == width && bucket.height == height) {
+                while (bucket.idle.size > 0) {
+                    discard(bucket, bucket.idle.size - 1);
+                }
+            }
+        }
+
+        this.width = bufferWidth;
+        this.height = bufferHeight;
+    }
+
+    /**
+     * Disposes of all idle buffers. Obtained buffers are not affected.
+     */
+    public void clear() {
+        for (int i = buckets.size - 1; i >= 0; i--) {
+            Bucket bucket = buckets.get(i);
+            while (bucket.idle.size > 0) {
+                discard(bucket, bucket.idle.size - 1);
+            }
         }
     }
 
     @Override
-    protected void discard(NestableFrameBuffer obj) {
-        obj.dispose();
+    public void dispose() {
+        clear();
     }
 
+    /** Adds all pooled buffers, both idle and obtained, to the report. */
     @Override
-    public void dispose() {
-        this.clear();
+    public void reportMemory(VfxMemoryReport report) {
+        for (int i = 0; i < buckets.size; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.count == 0)
+                continue;
+
+            if (bucket.targetFormats == null) {
+                report.addFrameBuffer(this, bucket.width, bucket.height,
+                        bucket.format, bucket.hasDepth, bucket.count);
+            } else {
+                // One entry per attachment; the depth is reported once
+                for (int j = 0; j < bucket.targetFormats.length; j++) {
+                    report.addFrameBuffer(this, bucket.width, bucket.height,
+                            bucket.targetFormats[j],
+                            j == 0 && bucket.hasDepth, bucket.count);
+                }
+            }
+        }
+    }
+
+    /** @return the default format of the pooled buffers. */
+    public VfxBufferFormat getFormat() {
+        return format;
+    }
+
+    public int getBufferWidth() {
+        return width;
+    }
+
+    public int getBufferHeight() {
+        return height;
+    }
+
+    /**
+     * @return the memory budget in bytes or <code>-1</code>, if the pool isn't
+     *         limited.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the memory budget in bytes. If a new buffer would exceed the
+     * budget, the least recently used idle buffers are disposed first. The
+     * budget is a soft limit: if all buffers are in use, a new one is
+     * allocated regardless.
+     *
+     * @param budget
+     *            the budget or <code>-1</code> for no limit
+     */
+    public void setBudget(long budget) {
+        Preconditions.checkArgument(budget >= -1,
+                "The budget has to be -1 or positive.");
+        this.budget = budget;
+        trimToBudget(0);
+    }
+
+    public int getMaxIdleFrames() {
+        return maxIdleFrames;
+    }
+
+    /**
+     * Sets after how many frames without usage an idle buffer is disposed.
+     *
+     * @param maxIdleFrames
+     *            the number of frames or <code>0</code> to keep idle buffers
+     *            indefinitely
+     */
+    public void setMaxIdleFrames(int maxIdleFrames) {
+        Preconditions.checkArgument(maxIdleFrames >= 0,
+                "The number of frames cannot be negative.");
+        this.maxIdleFrames = maxIdleFrames;
+    }
+
+    /** @return the estimated memory of all pooled buffers in bytes. */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /** @return the high-water mark of {@link #getAllocatedBytes()}. */
+    public long getPeakAllocatedBytes() {
+        return peakAllocatedBytes;
+    }
+
+    /** @return the number of pooled buffers, both idle and obtained. */
+    public int getAllocatedCount() {
+        return allocatedCount;
+    }
+
+    /** @return the number of currently obtained buffers. */
+    public int getObtainedCount() {
+        return obtainedCount;
+    }
+
+    /** @return the high-water mark of {@link #getObtainedCount()}. */
+    public int getPeakObtainedCount() {
+        return peakObtainedCount;
+    }
+
+    /** Resets the high-water marks to the current values. */
+    public void resetPeaks() {
+        peakAllocatedBytes = allocatedBytes;
+        peakObtainedCount = obtainedCount;
+    }
+
+    /**
+     * @return the estimated memory of a buffer in bytes.
+     * @see VfxMemoryReport#DEPTH_BYTES_PER_PIXEL
+     */
+    public static long estimateBytes(int width, int height,
+            VfxBufferFormat format, boolean hasDepth) {
+        return (long) width * height
+                * (format.getBytesPerPixel()
+                        + (hasDepth ? VfxMemoryReport.DEPTH_BYTES_PER_PIXEL
+                                : 0));
+    }
+
+    private Bucket getBucket(int width, int height, VfxBufferFormat format,
+            @Nullable TextureFilter filterMin,
+            @Nullable TextureFilter filterMag, boolean hasDepth) {
+        for (int i = 0; i < buckets.size; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.targetFormats == null && bucket.width == width
+                    && bucket.height == height && bucket.format == format
+                    && bucket.filterMin == filterMin
+                    && bucket.filterMag == filterMag
+                    && bucket.hasDepth == hasDepth) {
+                return bucket;
+            }
+        }
+        Bucket bucket = new Bucket(width, height, format, null, filterMin,
+                filterMag, hasDepth);
+        return bucket;
+    }
+
+    private Bucket getMultiTargetBucket(int width, int height,
+            VfxBufferFormat[] formats, @Nullable TextureFilter filterMin,
+            @Nullable TextureFilter filterMag, boolean hasDepth) {
+        for (int i = 0; i < buckets.size; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.targetFormats != null && bucket.width == width
+                    && bucket.height == height
+                    && matchesTargetFormats(bucket.targetFormats, formats)
+                    && bucket.filterMin == filterMin
+                    && bucket.filterMag == filterMag
+                    && bucket.hasDepth == hasDepth) {
+                return bucket;
+            }
+        }
+        VfxBufferFormat[] targetFormats = new VfxBufferFormat[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            targetFormats[i] = formats[i].negotiate();
+        }
+        Bucket bucket = new Bucket(width, height, targetFormats[0],
+                targetFormats, filterMin, filterMag, hasDepth);
+        return bucket;
+    }
+
+    /**
+     * @return whether the negotiated formats of a bucket match the requested
+     *         ones. Doesn't allocate, unlike negotiating them into a new
+     *         array.
+     */
+    private static boolean matchesTargetFormats(
+            VfxBufferFormat[] targetFormats, VfxBufferFormat[] formats) {
+        if (targetFormats.length != formats.length)
+            return false;
+        for (int i = 0; i < formats.length; i++) {
+            if (targetFormats[i] != formats[i].negotiate())
+                return false;
+        }
+        return true;
+    }
+
+    private NestableFrameBuffer allocate(Bucket bucket) {
+        trimToBudget(bucket.bytes);
+
+        NestableFrameBuffer fbo;
+        if (bucket.targetFormats == null) {
+            fbo = createFrameBuffer(bucket.width, bucket.height,
+                    bucket.format, bucket.filterMin, bucket.filterMag,
+                    bucket.hasDepth);
+        } else {
+            fbo = new VfxMultiTargetBuffer(bucket.width, bucket.height,
+                    bucket.hasDepth, bucket.targetFormats);
+            setTextureParameters(fbo, bucket.filterMin, bucket.filterMag);
+        }
+        allocatedBytes += bucket.bytes;
+        allocatedCount++;
+        if (bucket.count++ == 0) {
+            buckets.add(bucket);
+        }
+        peakAllocatedBytes = Math.max(peakAllocatedBytes, allocatedBytes);
+        return fbo;
+    }
+
+    /**
+     * Disposes of the least recently used idle buffers until the specified
+     * number of additional bytes fit into the budget.
+     */
+    private void trimToBudget(long additionalBytes) {
+        if (budget < 0)
+            return;
+
+        while (allocatedBytes + additionalBytes > budget) {
+            Bucket oldest = findLeastRecentlyUsed(buckets);
+            if (oldest == null)
+                return; // Everything is in use
+            discard(oldest, 0);
+        }
+    }
+
+    /**
+     * @return the number of leading idle buffers of the bucket that have been
+     *         idle for longer than the specified number of frames.
+     */
+    static int countExpired(Bucket bucket, long frame, int maxIdleFrames) {
+        // The idle buffers are ordered by the time they were freed.
+        int count = 0;
+        while (count < bucket.idleSince.size
+                && frame - bucket.idleSince.get(count) > maxIdleFrames) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the bucket holding the least recently used idle buffer or
+     *         <code>null</code>, if no buffer is idle.
+     */
+    static @Nullable Bucket findLeastRecentlyUsed(Array<Bucket> buckets) {
+        Bucket oldest = null;
+        for (int i = 0; i < buckets.size; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.idleSince.size > 0 && (oldest == null || bucket.idleSince
+                    .get(0) < oldest.idleSince.get(0))) {
+                oldest = bucket;
+            }
+        }
+        return oldest;
     }
 
+    private void discard(Bucket bucket, int idleIndex) {
+        bucket.idle.removeIndex(idleIndex).dispose();
+        bucket.idleSince.removeIndex(idleIndex);
+        allocatedBytes -= bucket.bytes;
+        allocatedCount--;
+        if (--bucket.count == 0) {
+            buckets.removeValue(bucket, true);
+        }
+    }
+
+    private NestableFrameBuffer createFrameBuffer(int width, int height,
+            VfxBufferFormat format, @Nullable TextureFilter filterMin,
+            @Nullable TextureFilter filterMag, boolean hasDepth) {
+        NestableFrameBuffer fbo = format.createFrameBuffer(width, height,
+                hasDepth);
+        setTextureParameters(fbo, filterMin, filterMag);
+        return fbo;
+    }
+
+    /**
+     * Applies the pool's texture wrap and the specified filter to all color
+     * attachments of the buffer.
+     */
+    private void setTextureParameters(NestableFrameBuffer fbo,
+            @Nullable TextureFilter filterMin,
+            @Nullable TextureFilter filterMag) {
+        boolean setWrap = textureWrapU != null && textureWrapV != null;
+        boolean setFilter = filterMin != null && filterMag != null;
+
+        if (setWrap || setFilter) {
+            int boundHandle = GLUtils.getBoundFboHandle();
+            Array<Texture> textures = fbo.getTextureAttachments();
+            for (int i = 0; i < textures.size; i++) {
+                Texture texture = textures.get(i);
+                if (setWrap)
+                    texture.setWrap(textureWrapU, textureWrapV);
+                if (setFilter)
+                    texture.setFilter(filterMin, filterMag);
+            }
+            Gdx.gl20.glBindFramebuffer(GL20.GL_FRAMEBUFFER, boundHandle);
+        }
+    }
+
+    private static VfxBufferFormat toBufferFormat(Format format) {
+        switch (format) {
+        case RGBA8888:
+            return VfxBufferFormat.RGBA8888;
+        case RGB565:
+            return VfxBufferFormat.RGB565;
+        default:
+            throw new IllegalArgumentException(
+                    "Unsupported frame buffer format: " + format);
+        }
+    }
+
+    static class Bucket {
+        final int width;
+        final int height;
+        /** The format of the first color attachment. */
+        final VfxBufferFormat format;
+        /** The formats of a multi-target buffer's attachments, if any. */
+        final @Nullable VfxBufferFormat[] targetFormats;
+        final @Nullable TextureFilter filterMin;
+        final @Nullable TextureFilter filterMag;
+        final boolean hasDepth;
+        final long bytes;
+        /** The number of allocated buffers, both idle and obtained. */
+        int count;
+
+        /** The idle buffers, from the least to the most recently used. */
+        final Array<NestableFrameBuffer> idle = new Array<>(true, 4);
+        /** The frames in which the idle buffers were freed. */
+        final LongArray idleSince = new LongArray(true, 4);
+
+        Bucket(int width, int height, VfxBufferFormat format,
+                @Nullable VfxBufferFormat[] targetFormats,
+                @Nullable TextureFilter filterMin,
+                @Nullable TextureFilter filterMag, boolean hasDepth) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.targetFormats = targetFormats;
+            this.filterMin = filterMin;
+            this.filterMag = filterMag;
+            this.hasDepth = hasDepth;
+
+            long bytes = estimateBytes(width, height, format, hasDepth);
+            if (targetFormats != null) {
+                for (int i = 1; i < targetFormats.length; i++) {
+                    bytes += estimateBytes(width, height, targetFormats[i],
+                            false);
+                }
+            }
+            this.bytes = bytes;
+        }
+    }
 }
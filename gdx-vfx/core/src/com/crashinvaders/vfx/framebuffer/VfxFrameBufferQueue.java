@@ -16,12 +16,12 @@
 
 package com.crashinvaders.vfx.framebuffer;
 
-import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.Texture.TextureWrap;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
+import com.crashinvaders.vfx.VfxMemoryReport;
 
 import de.damios.guacamole.Preconditions;
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
@@ -33,6 +33,7 @@ public class VfxFrameBufferQueue implements Disposable {
     private final Array<NestableFrameBuffer> buffers;
     private int currentIdx = 0;
 
+    private final VfxBufferFormat format;
     private boolean depth;
     private TextureWrap wrapU = TextureWrap.ClampToEdge;
     private TextureWrap wrapV = Texture.TextureWrap.ClampToEdge;
@@ -41,15 +42,20 @@ public class VfxFrameBufferQueue implements Disposable {
 
     public VfxFrameBufferQueue(int width, int height, boolean depth,
             int fboCount) {
+        this(VfxBufferFormat.RGBA8888, width, height, depth, fboCount);
+    }
+
+    public VfxFrameBufferQueue(VfxBufferFormat format, int width, int height,
+            boolean depth, int fboCount) {
         Preconditions.checkArgument(fboCount >= 1,
                 "The number of fbos needs to be at least 1");
 
+        this.format = format.negotiate();
         this.depth = depth;
 
         buffers = new Array<>(true, fboCount);
         for (int i = 0; i < fboCount; i++) {
-            buffers.add(new NestableFrameBuffer(Format.RGBA8888, width, height,
-                    depth));
+            buffers.add(this.format.createFrameBuffer(width, height, depth));
         }
     }
 
@@ -70,8 +76,7 @@ public class VfxFrameBufferQueue implements Disposable {
         buffers.clear();
 
         for (int i = 0; i < amount; i++) {
-            buffers.add(new NestableFrameBuffer(Format.RGBA8888, width, height,
-                    depth));
+            buffers.add(format.createFrameBuffer(width, height, depth));
         }
     }
 
@@ -89,6 +94,13 @@ public class VfxFrameBufferQueue implements Disposable {
         }
     }
 
+    /** Adds the buffers of the queue to the report. */
+    public void reportMemory(VfxMemoryReport report, Object owner) {
+        for (int i = 0; i < buffers.size; i++) {
+            report.addFrameBuffer(owner, buffers.get(i), format);
+        }
+    }
+
     public NestableFrameBuffer getCurrent() {
         return buffers.get(currentIdx);
     }
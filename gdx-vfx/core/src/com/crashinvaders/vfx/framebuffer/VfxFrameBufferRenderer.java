@@ -18,10 +18,14 @@ package com.crashinvaders.vfx.framebuffer;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GL30;
 import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Disposable;
+import com.crashinvaders.vfx.gl.VfxGLUtils;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 import de.damios.guacamole.gdx.graphics.QuadMeshGenerator;
@@ -33,11 +37,20 @@ import de.damios.guacamole.gdx.graphics.ShaderCompatibilityHelper;
  * <p>
  * This is a lightweight {@link com.badlogic.gdx.graphics.g2d.SpriteBatch}
  * replacement for the library's needs.
+ * <p>
+ * On GL 3.0 and GLES 3.0 contexts, copies between buffers are done with
+ * <code>glBlitFramebuffer</code>, which skips the program bind, the vertex
+ * setup and the fragment work of a quad draw, as long as that gives the same
+ * result as the draw (see {@link #canBlitCopy(NestableFrameBuffer)}).
  */
 public class VfxFrameBufferRenderer implements Disposable {
 
+    /**
+     * A pass-through vertex shader for screen-space quads. Exposes the texture
+     * coordinates as <code>v_texCoords</code>.
+     */
     // @formatter:off
-    private static final String VERT_SHADER = 
+    public static final String VERT_SHADER = 
                       "#ifdef GL_ES\n" 
                     + "    #define PRECISION mediump\n"
                     + "    precision PRECISION float;\n" 
@@ -68,6 +81,9 @@ public class VfxFrameBufferRenderer implements Disposable {
     private final Mesh mesh;
     private final ShaderProgram shader;
 
+    private boolean blitEnabled = true;
+    private boolean blendingEnabled = false;
+
     public VfxFrameBufferRenderer() {
         mesh = QuadMeshGenerator.createQuad(-1, -1, 2, 2, true);
 
@@ -99,8 +115,25 @@ public class VfxFrameBufferRenderer implements Disposable {
         mesh.render(shader, GL20.GL_TRIANGLE_STRIP);
     }
 
+    /**
+     * Copies the source into the destination buffer, stretching it if the
+     * sizes differ. The buffer is {@linkplain #blit blitted} where that
+     * gives the same result as {@link #drawToFbo}.
+     */
     public void renderToFbo(NestableFrameBuffer srcBuf,
             NestableFrameBuffer dstBuf) {
+        if (canBlitCopy(dstBuf) && blit(srcBuf, dstBuf))
+            return;
+
+        drawToFbo(srcBuf, dstBuf);
+    }
+
+    /**
+     * Draws the source into the destination buffer as a textured quad, which
+     * respects the blending state.
+     */
+    public void drawToFbo(NestableFrameBuffer srcBuf,
+            NestableFrameBuffer dstBuf) {
         srcBuf.getColorBufferTexture().bind(0);
 
         dstBuf.begin();
@@ -109,6 +142,100 @@ public class VfxFrameBufferRenderer implements Disposable {
         dstBuf.end();
     }
 
+    /**
+     * Copies the color of the source into the destination buffer with
+     * <code>glBlitFramebuffer</code>. A stretched copy is filtered linearly
+     * if the source texture is. Only the scissor test applies, the blending
+     * state and the viewport are ignored, and every draw buffer of the
+     * destination is written.
+     *
+     * @return <code>false</code> if blitting is not available, i.e. on GL2 and
+     *         WebGL1, or not possible for the buffers, in which case nothing
+     *         has been copied
+     */
+    public boolean blit(NestableFrameBuffer srcBuf,
+            NestableFrameBuffer dstBuf) {
+        // Texture inputs have no framebuffer to read from, and the default
+        // framebuffer may be multisampled.
+        if (!blitEnabled || Gdx.gl30 == null
+                || srcBuf instanceof VfxTextureBuffer
+                || dstBuf instanceof VfxScreenBuffer)
+            return false;
+
+        final int srcWidth = srcBuf.getWidth();
+        final int srcHeight = srcBuf.getHeight();
+        final int dstWidth = dstBuf.getWidth();
+        final int dstHeight = dstBuf.getHeight();
+
+        int filter = GL20.GL_NEAREST;
+        if (srcWidth != dstWidth || srcHeight != dstHeight) {
+            Texture texture = srcBuf.getColorBufferTexture();
+            boolean minifies = dstWidth < srcWidth || dstHeight < srcHeight;
+            TextureFilter textureFilter = minifies ? texture.getMinFilter()
+                    : texture.getMagFilter();
+            if (textureFilter == TextureFilter.Linear) {
+                filter = GL20.GL_LINEAR;
+            }
+        }
+
+        boolean manualBufferBind = !dstBuf.isBound();
+        if (manualBufferBind) {
+            dstBuf.begin();
+        }
+
+        Gdx.gl30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER,
+                srcBuf.getFramebufferHandle());
+        Gdx.gl30.glBlitFramebuffer(0, 0, srcWidth, srcHeight, 0, 0, dstWidth,
+                dstHeight, GL20.GL_COLOR_BUFFER_BIT, filter);
+
+        if (manualBufferBind) {
+            // Restores both bindings.
+            dstBuf.end();
+        } else {
+            Gdx.gl30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER,
+                    dstBuf.getFramebufferHandle());
+        }
+        return true;
+    }
+
+    /**
+     * Whether a {@linkplain #blit blit} into the buffer gives the same result
+     * as {@linkplain #drawToFbo drawing} into it. This requires blending to be
+     * disabled and the buffer to have a single color attachment.
+     */
+    public boolean canBlitCopy(NestableFrameBuffer dstBuf) {
+        if (blendingEnabled || dstBuf instanceof VfxMultiTargetBuffer)
+            return false;
+        // Only checked if GL state queries are enabled.
+        return !VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
+    }
+
+    public boolean isBlitEnabled() {
+        return blitEnabled;
+    }
+
+    /**
+     * Enables the {@linkplain #blit blitting} of buffer copies where it is
+     * available. Enabled by default.
+     */
+    public void setBlitEnabled(boolean blitEnabled) {
+        this.blitEnabled = blitEnabled;
+    }
+
+    public boolean isBlendingEnabled() {
+        return blendingEnabled;
+    }
+
+    /**
+     * Tells the renderer that blending may be enabled while it copies
+     * buffers, so copies are drawn instead of blitted.
+     * {@link com.crashinvaders.vfx.VfxManager} keeps this in sync with its
+     * own blending flag. Disabled by default.
+     */
+    public void setBlendingEnabled(boolean blendingEnabled) {
+        this.blendingEnabled = blendingEnabled;
+    }
+
     public Mesh getMesh() {
         return mesh;
     }
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.framebuffer;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.crashinvaders.vfx.VfxMemoryReport;
+
+import de.damios.guacamole.Preconditions;
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * A chain of successively halved {@link NestableFrameBuffer}s, used by
+ * effects that work on a downsample pyramid. Level 0 is half the size of the
+ * source, level 1 a quarter and so on. The buffers use linear filtering, so
+ * they can be sampled in between texels when upsampling.
+ * <p>
+ * The buffers are (re-)created lazily by {@link #ensure(int, int)}.
+ */
+public class VfxMipChain implements Disposable {
+
+    private final Array<NestableFrameBuffer> levels = new Array<>();
+
+    private VfxBufferFormat format;
+    private int maxLevels;
+
+    private int srcWidth = -1;
+    private int srcHeight = -1;
+    private boolean dirty = true;
+
+    public VfxMipChain(int maxLevels) {
+        this(VfxBufferFormat.RGBA8888, maxLevels);
+    }
+
+    public VfxMipChain(VfxBufferFormat format, int maxLevels) {
+        Preconditions.checkArgument(maxLevels > 0,
+                "The chain needs to have at least 1 level.");
+        this.format = format;
+        this.maxLevels = maxLevels;
+    }
+
+    /**
+     * Makes sure the levels match a source of the specified size. Levels
+     * smaller than one pixel are omitted.
+     */
+    public void ensure(int srcWidth, int srcHeight) {
+        if (!dirty && this.srcWidth == srcWidth
+                && this.srcHeight == srcHeight)
+            return;
+
+        disposeLevels();
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.dirty = false;
+
+        VfxBufferFormat negotiated = format.negotiate();
+        int width = srcWidth / 2;
+        int height = srcHeight / 2;
+        while (levels.size < maxLevels && width > 0 && height > 0) {
+            levels.add(negotiated.createFrameBuffer(width, height, false));
+            width /= 2;
+            height /= 2;
+        }
+        rebind();
+    }
+
+    /** @return the number of levels, valid after {@link #ensure(int, int)}. */
+    public int getLevelCount() {
+        return levels.size;
+    }
+
+    public NestableFrameBuffer getLevel(int level) {
+        return levels.get(level);
+    }
+
+    public int getMaxLevels() {
+        return maxLevels;
+    }
+
+    public void setMaxLevels(int maxLevels) {
+        Preconditions.checkArgument(maxLevels > 0,
+                "The chain needs to have at least 1 level.");
+        if (this.maxLevels != maxLevels) {
+            this.maxLevels = maxLevels;
+            this.dirty = true;
+        }
+    }
+
+    public VfxBufferFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(VfxBufferFormat format) {
+        if (this.format != format) {
+            this.format = format;
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Restores the texture parameters. Could be useful in case of OpenGL
+     * context loss.
+     */
+    public void rebind() {
+        for (int i = 0; i < levels.size; i++) {
+            Texture texture = levels.get(i).getColorBufferTexture();
+            texture.setWrap(TextureWrap.ClampToEdge, TextureWrap.ClampToEdge);
+            texture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+        }
+    }
+
+    /** Adds the currently allocated levels to the report. */
+    public void reportMemory(VfxMemoryReport report, Object owner) {
+        VfxBufferFormat negotiated = format.negotiate();
+        for (int i = 0; i < levels.size; i++) {
+            report.addFrameBuffer(owner, levels.get(i), negotiated);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        disposeLevels();
+        dirty = true;
+    }
+
+    private void disposeLevels() {
+        for (int i = 0; i < levels.size; i++) {
+            levels.get(i).dispose();
+        }
+        levels.clear();
+    }
+}
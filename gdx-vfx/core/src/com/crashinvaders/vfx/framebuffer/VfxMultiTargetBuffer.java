@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.crashinvaders.vfx.framebuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.GLFrameBuffer;
+
+import de.damios.guacamole.Preconditions;
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * A frame buffer with several color attachments, which a single draw call
+ * writes to at once (multiple render targets). The fragment shader writes the
+ * attachments through separate outputs, see
+ * {@link com.crashinvaders.vfx.gl.VfxGLUtils#compileMultiTargetShader}.
+ * <p>
+ * {@link #getColorBufferTexture()} returns the first attachment, so the buffer
+ * can be read like any other buffer. Requires OpenGL ES 3.0 or OpenGL 3.0 (see
+ * {@link #isSupported()}).
+ */
+public class VfxMultiTargetBuffer extends NestableFrameBuffer {
+
+    /**
+     * The maximum number of attachments. OpenGL ES 3.0 guarantees at least
+     * four draw buffers.
+     */
+    public static final int MAX_TARGETS = 4;
+
+    private final VfxBufferFormat[] formats;
+
+    /**
+     * @param formats
+     *            the formats of the attachments; they have to be
+     *            {@link VfxBufferFormat#isSupported() supported}
+     */
+    public VfxMultiTargetBuffer(int width, int height, boolean hasDepth,
+            VfxBufferFormat... formats) {
+        super(createBuilder(width, height, hasDepth, formats));
+        this.formats = formats.clone();
+    }
+
+    /** @return the number of color attachments. */
+    public int getTargetCount() {
+        return formats.length;
+    }
+
+    /** @return the format of the specified attachment. */
+    public VfxBufferFormat getFormat(int index) {
+        return formats[index];
+    }
+
+    /** @return the texture of the specified color attachment. */
+    public Texture getColorBufferTexture(int index) {
+        return getTextureAttachments().get(index);
+    }
+
+    /**
+     * @return whether the current OpenGL context supports multiple render
+     *         targets.
+     */
+    public static boolean isSupported() {
+        return Gdx.gl30 != null;
+    }
+
+    private static GLFrameBuffer.FrameBufferBuilder createBuilder(int width,
+            int height, boolean hasDepth, VfxBufferFormat[] formats) {
+        Preconditions.checkState(isSupported(),
+                "Multiple render targets require OpenGL (ES) 3.0.");
+        Preconditions.checkArgument(
+                formats.length > 0 && formats.length <= MAX_TARGETS,
+                "The number of targets has to be between 1 and "
+                        + MAX_TARGETS + ".");
+
+        GLFrameBuffer.FrameBufferBuilder builder = new GLFrameBuffer.FrameBufferBuilder(
+                width, height);
+        for (VfxBufferFormat format : formats) {
+            Preconditions.checkArgument(format.isSupported(),
+                    "Unsupported frame buffer format: " + format);
+            builder.addColorTextureAttachment(format.getInternalFormat(),
+                    format.getFormat(), format.getType());
+        }
+        if (hasDepth) {
+            builder.addBasicDepthRenderBuffer();
+        }
+        return builder;
+    }
+}
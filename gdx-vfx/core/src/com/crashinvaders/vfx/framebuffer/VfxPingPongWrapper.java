@@ -17,9 +17,10 @@
 package com.crashinvaders.vfx.framebuffer;
 
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.ScreenUtils;
+import com.crashinvaders.vfx.VfxMemoryReport;
 
 import de.damios.guacamole.Preconditions;
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
@@ -45,16 +46,28 @@ public class VfxPingPongWrapper implements Disposable {
     protected NestableFrameBuffer bufDst;
     protected NestableFrameBuffer bufSrc;
 
+    /** Stands in for the source buffer until the next swap, if not null. */
+    protected NestableFrameBuffer bufInput;
+
     /**
      * Where capturing is started. Should be true between {@link #begin()} and
      * {@link #end()}.
      */
     protected boolean capturing;
 
+    /** The format used to recreate the buffers on {@link #resize}. */
+    protected VfxBufferFormat format;
+
     public VfxPingPongWrapper(NestableFrameBuffer bufDst,
             NestableFrameBuffer bufSrc) {
+        this(bufDst, bufSrc, VfxBufferFormat.RGBA8888);
+    }
+
+    public VfxPingPongWrapper(NestableFrameBuffer bufDst,
+            NestableFrameBuffer bufSrc, VfxBufferFormat format) {
         this.bufSrc = bufSrc;
         this.bufDst = bufDst;
+        this.format = format;
     }
 
     /**
@@ -87,6 +100,9 @@ public class VfxPingPongWrapper implements Disposable {
             bufDst.end();
         }
 
+        // The input is read once, the hidden source buffer takes its place.
+        bufInput = null;
+
         // Swap buffers
         NestableFrameBuffer tmp = this.bufDst;
         bufDst = bufSrc;
@@ -103,7 +119,27 @@ public class VfxPingPongWrapper implements Disposable {
 
     /** @return the source buffer of the current ping-pong chain. */
     public NestableFrameBuffer getSrcBuffer() {
-        return bufSrc;
+        return bufInput != null ? bufInput : bufSrc;
+    }
+
+    /**
+     * Lets the buffer stand in for the source buffer until the next
+     * {@link #swap()}, which moves the destination buffer into the source as
+     * usual and continues in the hidden source buffer. That way the input is
+     * read, but never written to.
+     *
+     * @param input
+     *            a buffer of the same size as the wrapped ones; may be
+     *            <code>null</code> to reveal the source buffer again
+     * @see VfxTextureBuffer
+     */
+    public void setInput(NestableFrameBuffer input) {
+        this.bufInput = input;
+    }
+
+    /** @return whether an input stands in for the source buffer. */
+    public boolean hasInput() {
+        return bufInput != null;
     }
 
     /** @return Returns the result's buffer of the latest {@link #swap()}. */
@@ -138,14 +174,31 @@ public class VfxPingPongWrapper implements Disposable {
     }
 
     public void resize(int bufferWidth, int bufferHeight) {
-        boolean hasDepth = bufSrc.hasDepth();
-        bufSrc.dispose();
-        bufSrc = new NestableFrameBuffer(Format.RGBA8888, bufferWidth,
-                bufferHeight, hasDepth);
-
-        bufDst.dispose();
-        bufDst = new NestableFrameBuffer(Format.RGBA8888, bufferWidth,
-                bufferHeight, hasDepth);
+        bufSrc = recreate(bufSrc, bufferWidth, bufferHeight);
+        bufDst = recreate(bufDst, bufferWidth, bufferHeight);
+    }
+
+    /**
+     * Replaces the buffer with one of the new size, keeping the texture
+     * parameters of the old one.
+     */
+    private NestableFrameBuffer recreate(NestableFrameBuffer old,
+            int bufferWidth, int bufferHeight) {
+        Texture oldTexture = old.getColorBufferTexture();
+        NestableFrameBuffer fbo = format.createFrameBuffer(bufferWidth,
+                bufferHeight, old.hasDepth());
+        Texture texture = fbo.getColorBufferTexture();
+        texture.setWrap(oldTexture.getUWrap(), oldTexture.getVWrap());
+        texture.setFilter(oldTexture.getMinFilter(),
+                oldTexture.getMagFilter());
+        old.dispose();
+        return fbo;
+    }
+
+    /** Adds both buffers to the report. */
+    public void reportMemory(VfxMemoryReport report, Object owner) {
+        report.addFrameBuffer(owner, bufSrc, format);
+        report.addFrameBuffer(owner, bufDst, format);
     }
 
     @Override
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.framebuffer;
+
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.utils.BufferUtils;
+
+import de.damios.guacamole.Preconditions;
+import de.damios.guacamole.gdx.graphics.GLUtils;
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Stands in for a region of the default framebuffer wherever a
+ * {@link NestableFrameBuffer} is expected as a render target. Binding it binds
+ * the default framebuffer and sets the viewport to the region; ending it
+ * restores the previous binding and viewport.
+ * <p>
+ * The buffer can only be written. Its color texture is a 1x1 placeholder,
+ * which is never rendered into.
+ */
+public class VfxScreenBuffer extends NestableFrameBuffer {
+
+    private final IntBuffer previousViewport = BufferUtils.newIntBuffer(16);
+    private int previousHandle;
+    private boolean bound;
+
+    private int x, y, width, height;
+
+    public VfxScreenBuffer() {
+        super(Format.RGBA8888, 1, 1, false);
+    }
+
+    /** Sets the region of the default framebuffer, in backbuffer pixels. */
+    public void setViewport(int x, int y, int width, int height) {
+        Preconditions.checkState(!bound,
+                "The viewport cannot be changed while the buffer is bound.");
+
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public void begin() {
+        Preconditions.checkState(!bound,
+                "end() has to be called before another draw can begin!");
+
+        bound = true;
+        previousHandle = GLUtils.getBoundFboHandle();
+        Gdx.gl.glGetIntegerv(GL20.GL_VIEWPORT, previousViewport);
+        bind();
+        setFrameBufferViewport();
+    }
+
+    @Override
+    public void bind() {
+        FrameBuffer.unbind();
+    }
+
+    @Override
+    protected void setFrameBufferViewport() {
+        Gdx.gl.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void end() {
+        end(previousViewport.get(0), previousViewport.get(1),
+                previousViewport.get(2), previousViewport.get(3));
+    }
+
+    @Override
+    public void end(int x, int y, int width, int height) {
+        Preconditions.checkState(bound, "begin() has to be called first!");
+
+        bound = false;
+        Gdx.gl.glBindFramebuffer(GL20.GL_FRAMEBUFFER, previousHandle);
+        Gdx.gl.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public boolean isBound() {
+        return bound;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.framebuffer;
+
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+
+import de.damios.guacamole.Preconditions;
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Presents a texture as a read-only {@link NestableFrameBuffer}, so it can be
+ * used as a source wherever a buffer is expected. Binding it is not
+ * supported.
+ *
+ * @see VfxPingPongWrapper#setInput(NestableFrameBuffer)
+ */
+public class VfxTextureBuffer extends NestableFrameBuffer {
+
+    private Texture texture;
+
+    public VfxTextureBuffer() {
+        // The placeholder attachment is never used.
+        super(Format.RGBA8888, 1, 1, false);
+    }
+
+    /** Sets the presented texture. May be <code>null</code>. */
+    public void setTexture(Texture texture) {
+        this.texture = texture;
+    }
+
+    public Texture getTexture() {
+        return texture;
+    }
+
+    @Override
+    public Texture getColorBufferTexture() {
+        Preconditions.checkState(texture != null, "No texture is set.");
+        return texture;
+    }
+
+    @Override
+    public void begin() {
+        throw new IllegalStateException(
+                "A texture buffer cannot be rendered into.");
+    }
+
+    @Override
+    public void bind() {
+        throw new IllegalStateException(
+                "A texture buffer cannot be rendered into.");
+    }
+
+    @Override
+    public int getWidth() {
+        return texture != null ? texture.getWidth() : 0;
+    }
+
+    @Override
+    public int getHeight() {
+        return texture != null ? texture.getHeight() : 0;
+    }
+}
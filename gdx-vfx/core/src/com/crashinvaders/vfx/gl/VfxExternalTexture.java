@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+
+/**
+ * Wraps a GL texture handle that is owned elsewhere, e.g. by a video decoder,
+ * into a {@link Texture}. Nothing is uploaded, and disposing the wrapper
+ * leaves the GL texture alone.
+ * <p>
+ * Creating the wrapper sets the filter and wrap parameters of the texture to
+ * the libGDX defaults.
+ */
+public class VfxExternalTexture extends Texture {
+
+    private final ExternalData externalData;
+
+    public VfxExternalTexture(int glHandle, int width, int height) {
+        this(glHandle, new ExternalData(width, height));
+    }
+
+    private VfxExternalTexture(int glHandle, ExternalData data) {
+        super(GL20.GL_TEXTURE_2D, glHandle, data);
+        this.externalData = data;
+    }
+
+    /**
+     * Points the wrapper to another GL texture. The GL state of the new
+     * texture is taken as is.
+     */
+    public void setHandle(int glHandle, int width, int height) {
+        this.glHandle = glHandle;
+        externalData.width = width;
+        externalData.height = height;
+    }
+
+    @Override
+    protected void delete() {
+        // The GL texture is owned by someone else.
+        glHandle = 0;
+    }
+
+    /** Describes the external texture without providing any data. */
+    private static class ExternalData implements TextureData {
+
+        private int width, height;
+
+        ExternalData(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public TextureDataType getType() {
+            return TextureDataType.Custom;
+        }
+
+        @Override
+        public boolean isPrepared() {
+            return true;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public Pixmap consumePixmap() {
+            throw new UnsupportedOperationException(
+                    "External textures have no pixmap.");
+        }
+
+        @Override
+        public boolean disposePixmap() {
+            return false;
+        }
+
+        @Override
+        public void consumeCustomData(int target) {
+            // The texture has been filled by its owner.
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public Format getFormat() {
+            return Format.RGBA8888;
+        }
+
+        @Override
+        public boolean useMipMaps() {
+            return false;
+        }
+
+        @Override
+        public boolean isManaged() {
+            return false;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.nio.ByteBuffer;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.GLVersion;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.BufferUtils;
 
@@ -57,13 +58,73 @@ public class VfxGLUtils {
         sb.append("...");
         LOG.debug(sb.toString());
 
-        String srcVert = vertexFile.readString();
-        String srcFrag = fragmentFile.readString();
+        String srcVert = VfxShaderSource.load(vertexFile);
+        String srcFrag = VfxShaderSource.load(fragmentFile);
 
         return ShaderCompatibilityHelper.fromString(defines + "\n" + srcVert,
                 defines + "\n" + srcFrag);
     }
 
+    /**
+     * Compiles a program that writes to several color attachments of a
+     * {@link com.crashinvaders.vfx.framebuffer.VfxMultiTargetBuffer} at once.
+     * The sources are written like the other shaders of the library, but are
+     * compiled as GLSL 3.30 (desktop) or GLSL ES 3.00. Instead of
+     * <code>gl_FragColor</code>, the fragment shader declares its outputs via
+     * <code>TARGET(index, name)</code>, e.g. <code>TARGET(1, o_bright);</code>
+     * for the second attachment. The macro <code>MULTI_TARGET</code> is
+     * defined in both shaders.
+     *
+     * @return the program or <code>null</code>, if the context doesn't support
+     *         multiple render targets or the program failed to compile
+     */
+    public static ShaderProgram compileMultiTargetShader(FileHandle vertexFile,
+            FileHandle fragmentFile, String defines) {
+        Preconditions.checkNotNull(vertexFile,
+                "Vertex shader file cannot be null.");
+        Preconditions.checkNotNull(fragmentFile,
+                "Fragment shader file cannot be null.");
+        Preconditions.checkNotNull(defines, "Defines cannot be null.");
+
+        if (Gdx.gl30 == null)
+            return null;
+
+        String version;
+        GLVersion glVersion = Gdx.graphics.getGLVersion();
+        if (glVersion.getType() != GLVersion.Type.OpenGL) {
+            version = "#version 300 es\n";
+        } else if (glVersion.isVersionEqualToOrHigher(3, 3)) {
+            version = "#version 330\n";
+        } else if (Gdx.graphics
+                .supportsExtension("GL_ARB_explicit_attrib_location")) {
+            version = "#version 150\n"
+                    + "#extension GL_ARB_explicit_attrib_location : require\n";
+        } else {
+            return null;
+        }
+
+        LOG.debug("Compiling \"" + vertexFile.name() + '/'
+                + fragmentFile.name() + "\" for multiple render targets...");
+
+        String srcVert = version + "#define MULTI_TARGET\n"
+                + "#define attribute in\n" + "#define varying out\n"
+                + defines + "\n" + VfxShaderSource.load(vertexFile);
+        String srcFrag = version + "#define MULTI_TARGET\n"
+                + "#define varying in\n" + "#define texture2D texture\n"
+                + "#define TARGET(index, name) "
+                + "layout(location = index) out vec4 name\n" + defines
+                + "\n" + VfxShaderSource.load(fragmentFile);
+
+        ShaderProgram program = new ShaderProgram(srcVert, srcFrag);
+        if (!program.isCompiled()) {
+            LOG.error("Multiple render target shader failed to compile: "
+                    + program.getLog());
+            program.dispose();
+            return null;
+        }
+        return program;
+    }
+
     // region GL state queries
 
     /** Enable pipeline state queries: beware the pipeline can stall! */
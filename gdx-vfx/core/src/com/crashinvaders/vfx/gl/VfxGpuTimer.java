@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.glutils.GLVersion;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.crashinvaders.vfx.effects.ChainVfxEffect;
+
+import de.damios.guacamole.Preconditions;
+
+/**
+ * Measures the GPU time of effects with OpenGL timer queries
+ * (<code>GL_ARB_timer_query</code> / OpenGL 3.3 on desktop,
+ * <code>GL_EXT_disjoint_timer_query</code> on GLES 3).
+ * <p>
+ * The queries of each frame are stored in a ring of slots and only read back
+ * once the ring has wrapped around, so retrieving the results never stalls the
+ * pipeline. If the results of a slot are still not available by then, they are
+ * dropped.
+ *
+ * @see #isSupported()
+ */
+public class VfxGpuTimer implements Disposable {
+
+    /** Not a part of {@link GL30}, shared by the ARB and EXT extensions. */
+    public static final int GL_TIME_ELAPSED = 0x88BF;
+    public static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    public static final int DEFAULT_FRAME_LATENCY = 4;
+
+    private final IntBuffer tmpIntBuffer = BufferUtils.newIntBuffer(1);
+
+    private final Listener listener;
+    private final boolean checkDisjoint;
+    private final Slot[] slots;
+    private int currentSlot = 0;
+    private boolean measuring = false;
+
+    private int droppedFrames = 0;
+
+    public VfxGpuTimer(Listener listener) {
+        this(listener, DEFAULT_FRAME_LATENCY);
+    }
+
+    /**
+     * @param frameLatency
+     *            the number of frames after which the results are read back
+     */
+    public VfxGpuTimer(Listener listener, int frameLatency) {
+        Preconditions.checkNotNull(listener, "Listener cannot be null.");
+        Preconditions.checkArgument(frameLatency > 0,
+                "Frame latency has to be positive.");
+        Preconditions.checkState(isSupported(),
+                "Timer queries are not supported.");
+
+        this.listener = listener;
+        this.checkDisjoint = Gdx.graphics.getGLVersion()
+                .getType() != GLVersion.Type.OpenGL;
+        this.slots = new Slot[frameLatency];
+        for (int i = 0; i < frameLatency; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /** @return whether the current OpenGL context supports timer queries. */
+    public static boolean isSupported() {
+        if (Gdx.gl30 == null)
+            return false;
+
+        GLVersion version = Gdx.graphics.getGLVersion();
+        if (version.getType() == GLVersion.Type.OpenGL) {
+            return version.isVersionEqualToOrHigher(3, 3)
+                    || Gdx.graphics.supportsExtension("GL_ARB_timer_query");
+        }
+        return Gdx.graphics.supportsExtension("GL_EXT_disjoint_timer_query");
+    }
+
+    /**
+     * Starts a new frame. Reports the results of the frame that previously
+     * occupied the slot, if they are available.
+     */
+    public void beginFrame() {
+        Preconditions.checkState(!measuring,
+                "The last measurement has not been ended.");
+
+        currentSlot = (currentSlot + 1) % slots.length;
+        Slot slot = slots[currentSlot];
+        if (slot.count > 0) {
+            collect(slot);
+            slot.reset();
+        }
+    }
+
+    /** Starts to measure the GPU time of the specified effect. */
+    public void begin(ChainVfxEffect effect) {
+        Preconditions.checkState(!measuring,
+                "Timer queries cannot be nested.");
+
+        Slot slot = slots[currentSlot];
+        if (slot.count == slot.queries.size) {
+            Gdx.gl30.glGenQueries(1, tmpIntBuffer);
+            slot.queries.add(tmpIntBuffer.get(0));
+        }
+        slot.effects.add(effect);
+        Gdx.gl30.glBeginQuery(GL_TIME_ELAPSED,
+                slot.queries.get(slot.count++));
+        measuring = true;
+    }
+
+    /** Ends the current measurement. */
+    public void end() {
+        Preconditions.checkState(measuring, "No measurement has been begun.");
+
+        Gdx.gl30.glEndQuery(GL_TIME_ELAPSED);
+        measuring = false;
+    }
+
+    /**
+     * @return the number of frames whose results were dropped because they
+     *         weren't available in time or the GPU timer was disjoint.
+     */
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private void collect(Slot slot) {
+        // The queries complete in order, checking the last one is enough.
+        Gdx.gl30.glGetQueryObjectuiv(slot.queries.get(slot.count - 1),
+                GL30.GL_QUERY_RESULT_AVAILABLE, tmpIntBuffer);
+        boolean available = tmpIntBuffer.get(0) != 0;
+
+        if (available && checkDisjoint) {
+            Gdx.gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, tmpIntBuffer);
+            available = tmpIntBuffer.get(0) == 0;
+        }
+
+        if (!available) {
+            droppedFrames++;
+            return;
+        }
+
+        long total = 0;
+        for (int i = 0; i < slot.count; i++) {
+            Gdx.gl30.glGetQueryObjectuiv(slot.queries.get(i),
+                    GL30.GL_QUERY_RESULT, tmpIntBuffer);
+            long nanoseconds = tmpIntBuffer.get(0) & 0xFFFFFFFFL;
+            listener.onGpuTime(slot.effects.get(i), nanoseconds);
+            total += nanoseconds;
+        }
+        listener.onFrameGpuTime(total);
+    }
+
+    @Override
+    public void dispose() {
+        for (Slot slot : slots) {
+            for (int i = 0; i < slot.queries.size; i++) {
+                tmpIntBuffer.put(0, slot.queries.get(i));
+                Gdx.gl30.glDeleteQueries(1, tmpIntBuffer);
+            }
+            slot.queries.clear();
+            slot.reset();
+        }
+    }
+
+    private static class Slot {
+        final IntArray queries = new IntArray();
+        final Array<ChainVfxEffect> effects = new Array<>();
+        int count;
+
+        void reset() {
+            effects.clear();
+            count = 0;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called with the GPU time an effect took. The results arrive a few
+         * frames after the measurement.
+         */
+        void onGpuTime(ChainVfxEffect effect, long nanoseconds);
+
+        /**
+         * Called after the effects of a frame have been reported, with their
+         * total GPU time.
+         */
+        default void onFrameGpuTime(long nanoseconds) {
+            // Not needed by most listeners.
+        }
+    }
+}
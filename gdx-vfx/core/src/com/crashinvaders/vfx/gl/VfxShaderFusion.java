@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+
+/**
+ * Merges the fragment shaders of several per-pixel effects into a single
+ * fragment shader.
+ * <p>
+ * A shader can be fused if it samples <code>u_texture0</code> only at
+ * <code>v_texCoords</code>, declares no other samplers, doesn't discard
+ * fragments and doesn't sample the texture after it has written
+ * <code>gl_FragColor</code>. Each fused shader's <code>main()</code> is turned
+ * into a function that reads and writes a shared color variable, and all of
+ * its global names are prefixed to avoid collisions.
+ */
+public final class VfxShaderFusion {
+
+    private static final String TEXTURE = "u_texture0";
+    private static final String TEX_COORDS = "v_texCoords";
+    private static final String COLOR = "fusedColor";
+
+    // @formatter:off
+    private static final String HEADER =
+                      "#ifdef GL_ES\n"
+                    + "    precision mediump float;\n"
+                    + "    precision mediump int;\n"
+                    + "#endif\n"
+                    + "varying vec2 " + TEX_COORDS + ";\n"
+                    + "uniform sampler2D " + TEXTURE + ";\n"
+                    + "vec4 " + COLOR + ";\n";
+    // @formatter:on
+
+    private static final ObjectSet<String> KEYWORDS = new ObjectSet<>();
+    static {
+        String[] keywords = { "void", "bool", "int", "float", "vec2", "vec3",
+                "vec4", "bvec2", "bvec3", "bvec4", "ivec2", "ivec3", "ivec4",
+                "mat2", "mat3", "mat4", "sampler2D", "samplerCube", "uniform",
+                "varying", "attribute", "const", "precision", "highp",
+                "mediump", "lowp", "in", "out", "inout", "struct", "return",
+                "if", "else", "for", "while", "do", "break", "continue",
+                "discard", "true", "false" };
+        for (String keyword : keywords) {
+            KEYWORDS.add(keyword);
+        }
+    }
+
+    private VfxShaderFusion() {
+        // Not instantiable.
+    }
+
+    /** @return whether the fragment shader source can be fused. */
+    public static boolean isFusible(String fragmentSource) {
+        return transform(fragmentSource, "") != null;
+    }
+
+    /**
+     * Fuses the fragment shaders in the specified order.
+     *
+     * @return the fused shader or <code>null</code> if any of the sources
+     *         cannot be fused.
+     */
+    public static Result fuse(Array<String> fragmentSources) {
+        StringBuilder sb = new StringBuilder(HEADER);
+        StringBuilder main = new StringBuilder();
+        main.append("\nvoid main() {\n").append("    ").append(COLOR)
+                .append(" = texture2D(").append(TEXTURE).append(", ")
+                .append(TEX_COORDS).append(");\n");
+
+        Array<ObjectMap<String, String>> uniformNames = new Array<>(
+                fragmentSources.size);
+        for (int i = 0; i < fragmentSources.size; i++) {
+            String prefix = "f" + i + "_";
+            Member member = transform(fragmentSources.get(i), prefix);
+            if (member == null)
+                return null;
+
+            sb.append("\n// Fused shader #").append(i).append('\n');
+            sb.append(member.source).append('\n');
+            uniformNames.add(member.uniformNames);
+            main.append("    ").append(prefix).append("main();\n");
+        }
+
+        main.append("    gl_FragColor = ").append(COLOR).append(";\n}\n");
+        sb.append(main);
+        return new Result(sb.toString(), uniformNames);
+    }
+
+    private static Member transform(String source, String prefix) {
+        Array<String> tokens = tokenize(source);
+
+        // Indices of the significant tokens (no whitespace, comments or
+        // preprocessor directives).
+        int[] sig = new int[tokens.size];
+        int sigCount = 0;
+        for (int i = 0; i < tokens.size; i++) {
+            if (isSignificant(tokens.get(i))) {
+                sig[sigCount++] = i;
+            }
+        }
+
+        String[] replacements = new String[tokens.size];
+        ObjectSet<String> globals = new ObjectSet<>();
+        ObjectSet<String> uniforms = new ObjectSet<>();
+
+        int braceDepth = 0;
+        int parenDepth = 0;
+        int statementStart = 0;
+        boolean inInitializer = false;
+        boolean hasMain = false;
+        boolean colorWriting = false;
+        boolean colorWritten = false;
+
+        for (int s = 0; s < sigCount; s++) {
+            String token = tokens.get(sig[s]);
+            String next = s + 1 < sigCount ? tokens.get(sig[s + 1]) : "";
+
+            switch (token) {
+            case "{":
+                braceDepth++;
+                continue;
+            case "}":
+                braceDepth--;
+                if (braceDepth == 0) {
+                    statementStart = s + 1;
+                }
+                continue;
+            case "(":
+                parenDepth++;
+                continue;
+            case ")":
+                parenDepth--;
+                continue;
+            case ";":
+                colorWritten |= colorWriting;
+                if (braceDepth == 0 && parenDepth == 0) {
+                    statementStart = s + 1;
+                    inInitializer = false;
+                }
+                continue;
+            case "discard":
+            case "gl_FragData":
+            case "samplerCube":
+                return null;
+            case "sampler2D":
+                if (!TEXTURE.equals(next))
+                    return null;
+                break;
+            case "gl_FragColor":
+                replacements[sig[s]] = COLOR;
+                colorWriting = true;
+                continue;
+            case "texture2D":
+                if (s + 5 < sigCount && next.equals("(")
+                        && tokens.get(sig[s + 2]).equals(TEXTURE)
+                        && tokens.get(sig[s + 3]).equals(",")
+                        && tokens.get(sig[s + 4]).equals(TEX_COORDS)
+                        && tokens.get(sig[s + 5]).equals(")")) {
+                    // The input would be overwritten by then.
+                    if (colorWritten)
+                        return null;
+                    replacements[sig[s]] = COLOR;
+                    for (int j = s + 1; j <= s + 5; j++) {
+                        replacements[sig[j]] = "";
+                    }
+                    s += 5;
+                }
+                continue;
+            default:
+                break;
+            }
+
+            if (!isIdentifier(token))
+                continue;
+
+            if (braceDepth == 0 && parenDepth == 0 && !inInitializer
+                    && isDeclarator(next) && !KEYWORDS.contains(token)) {
+                String first = tokens.get(sig[statementStart]);
+                if (token.equals(TEXTURE) || token.equals(TEX_COORDS)) {
+                    // Declared once by the fused shader.
+                    int end = s;
+                    while (end < sigCount
+                            && !tokens.get(sig[end]).equals(";")) {
+                        end++;
+                    }
+                    for (int j = statementStart; j <= end
+                            && j < sigCount; j++) {
+                        replacements[sig[j]] = "";
+                    }
+                    s = end - 1;
+                    continue;
+                } else if (token.equals("main")) {
+                    hasMain = true;
+                } else if (!token.startsWith("gl_")) {
+                    globals.add(token);
+                    if (first.equals("uniform")) {
+                        uniforms.add(token);
+                    }
+                }
+                if (next.equals("=")) {
+                    inInitializer = true;
+                }
+            } else if (token.equals(TEXTURE)) {
+                // Any other usage of the texture.
+                return null;
+            }
+        }
+
+        if (!hasMain)
+            return null;
+
+        globals.add("main");
+
+        // Rename the global names and collect the defines to reset them
+        // afterwards.
+        StringBuilder sb = new StringBuilder(source.length() + 256);
+        Array<String> defines = new Array<>();
+        for (int i = 0; i < tokens.size; i++) {
+            String token = tokens.get(i);
+            if (replacements[i] != null) {
+                sb.append(replacements[i]);
+            } else if (globals.contains(token)) {
+                sb.append(prefix).append(token);
+            } else {
+                if (token.charAt(0) == '#') {
+                    String define = parseDefine(token);
+                    if (define != null && !defines.contains(define, false)) {
+                        defines.add(define);
+                    }
+                }
+                sb.append(token);
+            }
+        }
+        sb.append('\n');
+        for (int i = 0; i < defines.size; i++) {
+            sb.append("#undef ").append(defines.get(i)).append('\n');
+        }
+
+        ObjectMap<String, String> uniformNames = new ObjectMap<>();
+        for (String uniform : uniforms) {
+            uniformNames.put(uniform, prefix + uniform);
+        }
+        return new Member(sb.toString(), uniformNames);
+    }
+
+    private static boolean isDeclarator(String next) {
+        return next.equals("(") || next.equals(";") || next.equals("=")
+                || next.equals("[") || next.equals(",");
+    }
+
+    private static String parseDefine(String directive) {
+        int i = skipSpaces(directive, 1);
+        if (!directive.startsWith("define", i))
+            return null;
+        i = skipSpaces(directive, i + 6);
+        int start = i;
+        while (i < directive.length()
+                && isIdentifierPart(directive.charAt(i))) {
+            i++;
+        }
+        return i > start ? directive.substring(start, i) : null;
+    }
+
+    private static int skipSpaces(String s, int i) {
+        while (i < s.length()
+                && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Splits the source into identifiers, numbers, single punctuation
+     * characters, whitespace, comments and whole preprocessor lines.
+     */
+    static Array<String> tokenize(String source) {
+        Array<String> tokens = new Array<>();
+        int length = source.length();
+        boolean lineStart = true;
+        int i = 0;
+
+        while (i < length) {
+            char c = source.charAt(i);
+            int start = i;
+
+            if (c == '\n' || Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(source.charAt(i))) {
+                    if (source.charAt(i) == '\n')
+                        lineStart = true;
+                    i++;
+                }
+            } else if (c == '#' && lineStart) {
+                while (i < length && source.charAt(i) != '\n') {
+                    if (source.charAt(i) == '\\' && i + 1 < length) {
+                        i++;
+                    }
+                    i++;
+                }
+            } else if (source.startsWith("//", i)) {
+                while (i < length && source.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (source.startsWith("/*", i)) {
+                int end = source.indexOf("*/", i + 2);
+                i = end == -1 ? length : end + 2;
+            } else if (isIdentifierStart(c)) {
+                while (i < length && isIdentifierPart(source.charAt(i))) {
+                    i++;
+                }
+                lineStart = false;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length
+                    && Character.isDigit(source.charAt(i + 1)))) {
+                while (i < length && (isIdentifierPart(source.charAt(i))
+                        || source.charAt(i) == '.')) {
+                    i++;
+                }
+                lineStart = false;
+            } else {
+                i++;
+                lineStart = false;
+            }
+
+            tokens.add(source.substring(start, i));
+        }
+        return tokens;
+    }
+
+    private static boolean isSignificant(String token) {
+        char c = token.charAt(0);
+        return !Character.isWhitespace(c) && c != '#'
+                && !token.startsWith("//") && !token.startsWith("/*");
+    }
+
+    private static boolean isIdentifier(String token) {
+        return isIdentifierStart(token.charAt(0));
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    private static class Member {
+        final String source;
+        final ObjectMap<String, String> uniformNames;
+
+        Member(String source, ObjectMap<String, String> uniformNames) {
+            this.source = source;
+            this.uniformNames = uniformNames;
+        }
+    }
+
+    /** A fused fragment shader. */
+    public static class Result {
+
+        public final String fragmentSource;
+        /**
+         * For each fused shader, maps its original uniform names to the ones
+         * of the fused shader.
+         */
+        public final Array<ObjectMap<String, String>> uniformNames;
+
+        Result(String fragmentSource,
+                Array<ObjectMap<String, String>> uniformNames) {
+            this.fragmentSource = fragmentSource;
+            this.uniformNames = uniformNames;
+        }
+    }
+}
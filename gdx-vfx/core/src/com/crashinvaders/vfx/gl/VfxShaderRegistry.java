@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import de.damios.guacamole.Preconditions;
+import de.damios.guacamole.gdx.graphics.ShaderCompatibilityHelper;
+import de.damios.guacamole.gdx.log.Logger;
+import de.damios.guacamole.gdx.log.LoggerService;
+
+/**
+ * Shares compiled {@link ShaderProgram}s between effects. Programs are keyed
+ * by their vertex source, fragment source and defines, and are reference
+ * counted: each {@link #obtain(FileHandle, FileHandle, String)} has to be
+ * matched by a {@link #release(ShaderProgram)}, which disposes the program
+ * once it has no users left.
+ * <p>
+ * As the uniform state of a shared program is shared as well, its users have
+ * to upload their instance-specific uniforms before every draw. Users can
+ * {@linkplain #claim(ShaderProgram, Object) claim} the program to find out
+ * whether another user has drawn with it in the meantime.
+ * {@link com.crashinvaders.vfx.effects.ShaderVfxEffect} does this for its
+ * uniform handles, so effects whose uniforms are all handles (or constant)
+ * can safely use shared programs.
+ * <p>
+ * Released programs can be retained for later reuse (see
+ * {@link #setRetainLimit(int)}), so effects that are recreated don't have to
+ * be compiled again. The compilation itself is delegated to a
+ * {@link ProgramFactory}, which allows platforms to plug in their own program
+ * creation, e.g. backed by a persistent program binary cache.
+ * <p>
+ * Like all {@link ShaderProgram}s, the shared programs are recompiled by
+ * libGDX when the OpenGL context of the application is restored. As the
+ * registry outlives the application, the programs of a disposed application
+ * are dropped once the registry is used by a new one (see {@link #clear()}).
+ */
+public final class VfxShaderRegistry {
+
+    private static final ObjectMap<String, Entry> entries = new ObjectMap<>();
+    private static final ObjectMap<ShaderProgram, Entry> programs = new ObjectMap<>();
+    /** The released but retained programs, from the least recently used. */
+    private static final Array<Entry> retained = new Array<>();
+
+    private static final Logger LOG = LoggerService
+            .getLogger(VfxShaderRegistry.class);
+
+    /** Compiles the programs from source. */
+    public static final ProgramFactory DEFAULT_FACTORY = ShaderCompatibilityHelper::fromString;
+
+    private static ProgramFactory factory = DEFAULT_FACTORY;
+    /** The application the registered programs belong to. */
+    private static Application application;
+    private static int retainLimit = 0;
+
+    private VfxShaderRegistry() {
+        // Not instantiable.
+    }
+
+    public static ShaderProgram obtain(FileHandle vertexFile,
+            FileHandle fragmentFile) {
+        return obtain(vertexFile, fragmentFile, "");
+    }
+
+    /**
+     * Returns the shared program for the specified shaders, compiling it if
+     * it isn't in use yet.
+     */
+    public static ShaderProgram obtain(FileHandle vertexFile,
+            FileHandle fragmentFile, String defines) {
+        Preconditions.checkNotNull(vertexFile,
+                "Vertex shader file cannot be null.");
+        Preconditions.checkNotNull(fragmentFile,
+                "Fragment shader file cannot be null.");
+        Preconditions.checkNotNull(defines, "Defines cannot be null.");
+
+        return obtainFromSource(VfxShaderSource.load(vertexFile),
+                VfxShaderSource.load(fragmentFile), defines);
+    }
+
+    /**
+     * Returns the shared program for the specified shader sources, compiling
+     * it if it isn't in use yet.
+     *
+     * @throws GdxRuntimeException
+     *             if the program fails to compile
+     */
+    public static ShaderProgram obtainFromSource(String vertexSource,
+            String fragmentSource, String defines) {
+        checkApplication();
+
+        String key = createKey(vertexSource, fragmentSource, defines);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            LOG.debug("Compiling shared program" + (defines.length() > 0
+                    ? " w/ (" + defines.replace("\n", ", ") + ")"
+                    : "") + "...");
+            ShaderProgram program = factory.create(
+                    defines + "\n" + vertexSource,
+                    defines + "\n" + fragmentSource);
+            if (!program.isCompiled()) {
+                String log = program.getLog();
+                program.dispose();
+                throw new GdxRuntimeException(
+                        "Shared program failed to compile:\n" + log);
+            }
+            entry = register(key, program);
+        } else if (entry.references == 0) {
+            retained.removeValue(entry, true);
+        }
+        entry.references++;
+        return entry.program;
+    }
+
+    /**
+     * Adds a reference to a shared program that is still registered, e.g.
+     * one that has been obtained before and may have been retained since.
+     *
+     * @return <code>false</code> if the program isn't (or no longer) part of
+     *         the registry, in which case no reference is added
+     */
+    public static boolean retain(ShaderProgram program) {
+        checkApplication();
+
+        Entry entry = programs.get(program);
+        if (entry == null)
+            return false;
+        if (entry.references == 0) {
+            retained.removeValue(entry, true);
+        }
+        entry.references++;
+        return true;
+    }
+
+    /**
+     * Gives up a reference to the program. Shared programs are retained or
+     * disposed once their last user has released them; programs that aren't
+     * part of the registry are disposed right away.
+     */
+    public static void release(ShaderProgram program) {
+        Entry entry = programs.get(program);
+        if (entry == null) {
+            program.dispose();
+            return;
+        }
+
+        Preconditions.checkState(entry.references > 0,
+                "The program has already been released.");
+        entry.references--;
+        if (entry.references == 0) {
+            entry.user = null;
+            retained.add(entry);
+            trimRetained();
+        }
+    }
+
+    /** Disposes all retained programs that aren't in use. */
+    public static void clearRetained() {
+        while (retained.size > 0) {
+            discard(retained.removeIndex(retained.size - 1));
+        }
+    }
+
+    /**
+     * Forgets all registered programs without disposing them, e.g. after
+     * their OpenGL context has been destroyed for good. Programs that are
+     * still in use are no longer shared and are disposed when they are
+     * released.
+     */
+    public static void clear() {
+        entries.clear();
+        programs.clear();
+        retained.clear();
+    }
+
+    public static int getRetainLimit() {
+        return retainLimit;
+    }
+
+    /**
+     * Sets how many programs without users are kept for later reuse. Beyond
+     * that, the least recently released programs are disposed.
+     *
+     * @param retainLimit
+     *            the number of retained programs; <code>0</code> (the
+     *            default) disposes programs as soon as they are released
+     */
+    public static void setRetainLimit(int retainLimit) {
+        Preconditions.checkArgument(retainLimit >= 0,
+                "The limit cannot be negative.");
+        VfxShaderRegistry.retainLimit = retainLimit;
+        trimRetained();
+    }
+
+    public static ProgramFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Sets the factory that creates the programs. Already compiled programs
+     * are not affected.
+     */
+    public static void setFactory(ProgramFactory factory) {
+        Preconditions.checkNotNull(factory, "The factory cannot be null.");
+        VfxShaderRegistry.factory = factory;
+    }
+
+    /**
+     * Marks the specified user as the last one to draw with the program.
+     *
+     * @return <code>true</code> if the program is shared and another user has
+     *         drawn with it since the last claim of this user, i.e. its
+     *         uniforms have to be uploaded again.
+     */
+    public static boolean claim(ShaderProgram program, Object user) {
+        Entry entry = programs.get(program);
+        if (entry == null || entry.user == user)
+            return false;
+        entry.user = user;
+        return true;
+    }
+
+    /** @return whether the program is managed by the registry. */
+    public static boolean isShared(ShaderProgram program) {
+        return programs.containsKey(program);
+    }
+
+    /** @return the number of users of the program. */
+    public static int getReferenceCount(ShaderProgram program) {
+        Entry entry = programs.get(program);
+        return entry == null ? 0 : entry.references;
+    }
+
+    /** @return the number of distinct programs, including retained ones. */
+    public static int getProgramCount() {
+        return programs.size;
+    }
+
+    /**
+     * Adds all registered programs, including retained ones, to the array.
+     */
+    public static Array<ShaderProgram> getPrograms(Array<ShaderProgram> out) {
+        for (ShaderProgram program : programs.keys()) {
+            out.add(program);
+        }
+        return out;
+    }
+
+    /** @return the number of retained programs without users. */
+    public static int getRetainedCount() {
+        return retained.size;
+    }
+
+    private static String createKey(String vertexSource,
+            String fragmentSource, String defines) {
+        return new StringBuilder(defines.length() + vertexSource.length()
+                + fragmentSource.length() + 2).append(defines).append('\0')
+                        .append(vertexSource).append('\0')
+                        .append(fragmentSource).toString();
+    }
+
+    private static Entry register(String key, ShaderProgram program) {
+        Entry entry = new Entry(key, program);
+        entries.put(key, entry);
+        programs.put(program, entry);
+        return entry;
+    }
+
+    /**
+     * Drops the programs of a previous application, whose context is gone
+     * along with it.
+     */
+    private static void checkApplication() {
+        if (application == Gdx.app)
+            return;
+        if (programs.size > 0) {
+            LOG.debug("Dropping the " + programs.size
+                    + " shared programs of a disposed application.");
+        }
+        clear();
+        application = Gdx.app;
+    }
+
+    private static void trimRetained() {
+        while (retained.size > retainLimit) {
+            discard(retained.removeIndex(0));
+        }
+    }
+
+    private static void discard(Entry entry) {
+        entries.remove(entry.key);
+        programs.remove(entry.program);
+        entry.program.dispose();
+    }
+
+    /**
+     * Creates programs from the final shader sources, with the defines
+     * already prepended.
+     */
+    public interface ProgramFactory {
+        ShaderProgram create(String vertexSource, String fragmentSource);
+    }
+
+    private static class Entry {
+        final String key;
+        final ShaderProgram program;
+        int references;
+        Object user;
+
+        Entry(String key, ShaderProgram program) {
+            this.key = key;
+            this.program = program;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Loads shader sources, resolves their <code>#include</code> directives and
+ * caches the result.
+ * <p>
+ * An include has the form <code>#include "path"</code>, with the path
+ * relative to the including file. Each file is included only once per loaded
+ * source, so shared snippets (e.g. <code>include/precision.glsl</code>) don't
+ * need include guards and cyclic includes are harmless.
+ * <p>
+ * The cache is keyed by the file's type and path and is never invalidated
+ * automatically; call {@link #clearCache()} after changing shader files at
+ * runtime.
+ */
+public final class VfxShaderSource {
+
+    private static final String INCLUDE = "#include";
+
+    private static final ObjectMap<String, String> cache = new ObjectMap<>();
+
+    private VfxShaderSource() {
+        // Not instantiable.
+    }
+
+    /** @return the source of the file with all includes resolved. */
+    public static String load(FileHandle file) {
+        String key = getKey(file);
+        String source = cache.get(key);
+        if (source == null) {
+            StringBuilder sb = new StringBuilder();
+            Array<String> included = new Array<>();
+            included.add(key);
+            resolve(file.parent(), file.path(), file.readString(), sb,
+                    included);
+            source = sb.toString();
+            cache.put(key, source);
+        }
+        return source;
+    }
+
+    /**
+     * Resolves the includes of a source that doesn't come from a file.
+     *
+     * @param directory
+     *            the directory relative includes are resolved against
+     */
+    public static String preprocess(String source, FileHandle directory) {
+        StringBuilder sb = new StringBuilder(source.length());
+        resolve(directory, "source", source, sb, new Array<String>());
+        return sb.toString();
+    }
+
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static void resolve(FileHandle directory, String name,
+            String source, StringBuilder out, Array<String> included) {
+        int length = source.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = source.indexOf('\n', lineStart);
+            if (lineEnd == -1) {
+                lineEnd = length;
+            }
+
+            String path = parseInclude(source, lineStart, lineEnd);
+            if (path == null) {
+                out.append(source, lineStart, lineEnd);
+            } else {
+                FileHandle includeFile = directory.child(path);
+                String key = getKey(includeFile);
+                if (!included.contains(key, false)) {
+                    if (!includeFile.exists()) {
+                        throw new GdxRuntimeException("Cannot resolve \""
+                                + path + "\" included by " + name);
+                    }
+                    included.add(key);
+                    resolve(includeFile.parent(), includeFile.path(),
+                            includeFile.readString(), out, included);
+                    // The line break of the directive follows.
+                    if (out.length() > 0
+                            && out.charAt(out.length() - 1) == '\n') {
+                        out.setLength(out.length() - 1);
+                    }
+                }
+            }
+
+            if (lineEnd < length) {
+                out.append('\n');
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * @return the path of the include directive in the line or
+     *         <code>null</code>, if the line isn't an include.
+     */
+    private static String parseInclude(String source, int start, int end) {
+        int i = skipSpaces(source, start, end);
+        if (!source.startsWith(INCLUDE, i))
+            return null;
+        i = skipSpaces(source, i + INCLUDE.length(), end);
+        if (i >= end || source.charAt(i) != '"')
+            return null;
+        int close = source.indexOf('"', i + 1);
+        if (close == -1 || close >= end)
+            return null;
+        return source.substring(i + 1, close);
+    }
+
+    private static int skipSpaces(String s, int i, int end) {
+        while (i < end && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String getKey(FileHandle file) {
+        return file.type() + ":" + file.path();
+    }
+}
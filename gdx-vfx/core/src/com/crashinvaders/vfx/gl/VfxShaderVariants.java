@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BooleanArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.crashinvaders.vfx.VfxWarmUp;
+
+import de.damios.guacamole.Preconditions;
+
+/**
+ * Declares the variants of a shader, spanned by a number of axes. A switch
+ * axis either defines its name or not (for <code>#ifdef</code> checks), a
+ * value axis defines its name as one of the declared values.
+ * <p>
+ * Every combination of values gets an index, which can be computed in
+ * constant time via {@link #getIndex(int...)}. The define strings are built
+ * once per variant and the sources are taken from the
+ * {@link VfxShaderSource} cache, so creating a variant doesn't read any
+ * files again. The shared program of a variant is remembered by its index,
+ * so obtaining it again doesn't build a registry key from the sources as
+ * long as the program is registered. All variants can be queued for
+ * compilation via {@link #precompile(VfxWarmUp)}.
+ */
+public final class VfxShaderVariants {
+
+    private final FileHandle vertexFile;
+    private final FileHandle fragmentFile;
+
+    private final Array<String> names = new Array<>();
+    private final Array<int[]> values = new Array<>();
+    private final Array<IntIntMap> positions = new Array<>();
+    private final BooleanArray switches = new BooleanArray();
+
+    private int variantCount = 1;
+    private String[] defines;
+    private ShaderProgram[] programs;
+
+    public VfxShaderVariants(FileHandle vertexFile, FileHandle fragmentFile) {
+        Preconditions.checkNotNull(vertexFile,
+                "Vertex shader file cannot be null.");
+        Preconditions.checkNotNull(fragmentFile,
+                "Fragment shader file cannot be null.");
+        this.vertexFile = vertexFile;
+        this.fragmentFile = fragmentFile;
+    }
+
+    /**
+     * Adds an axis that is either defined (<code>1</code>) or not
+     * (<code>0</code>).
+     */
+    public VfxShaderVariants addSwitch(String name) {
+        return addAxis(name, true, 0, 1);
+    }
+
+    /** Adds an axis that defines the name as one of the values. */
+    public VfxShaderVariants addAxis(String name, int... values) {
+        return addAxis(name, false, values);
+    }
+
+    private VfxShaderVariants addAxis(String name, boolean isSwitch,
+            int... axisValues) {
+        Preconditions.checkState(defines == null,
+                "Axes cannot be added once variants have been used.");
+        Preconditions.checkArgument(axisValues.length > 0,
+                "An axis needs at least one value.");
+
+        IntIntMap axisPositions = new IntIntMap(axisValues.length);
+        for (int i = 0; i < axisValues.length; i++) {
+            axisPositions.put(axisValues[i], i);
+        }
+        names.add(name);
+        values.add(axisValues);
+        positions.add(axisPositions);
+        switches.add(isSwitch);
+        variantCount *= axisValues.length;
+        return this;
+    }
+
+    public int getVariantCount() {
+        return variantCount;
+    }
+
+    /**
+     * @param axisValues
+     *            a value for each axis, in the order they were added
+     * @return the index of the variant
+     * @throws IllegalArgumentException
+     *             if a value hasn't been declared for its axis
+     */
+    public int getIndex(int... axisValues) {
+        Preconditions.checkArgument(axisValues.length == names.size,
+                "A value is needed for each axis.");
+        int index = 0;
+        for (int i = 0; i < axisValues.length; i++) {
+            int position = positions.get(i).get(axisValues[i], -1);
+            if (position == -1) {
+                throw new IllegalArgumentException("Undeclared value "
+                        + axisValues[i] + " for " + names.get(i));
+            }
+            index = index * values.get(i).length + position;
+        }
+        return index;
+    }
+
+    /** @return the defines of the variant, one per line. */
+    public String getDefines(int index) {
+        Preconditions.checkArgument(index >= 0 && index < variantCount,
+                "Invalid variant index.");
+        if (defines == null) {
+            defines = new String[variantCount];
+        }
+        String result = defines[index];
+        if (result == null) {
+            result = buildDefines(index);
+            defines[index] = result;
+        }
+        return result;
+    }
+
+    /** @return the fragment source of the variant, with its defines. */
+    public String getFragmentSource(int index) {
+        return getDefines(index) + "\n" + VfxShaderSource.load(fragmentFile);
+    }
+
+    /**
+     * Obtains the shared program of the variant from the
+     * {@link VfxShaderRegistry}.
+     */
+    public ShaderProgram obtain(int index) {
+        String variantDefines = getDefines(index);
+        if (programs == null) {
+            programs = new ShaderProgram[variantCount];
+        }
+        ShaderProgram program = programs[index];
+        if (program != null && VfxShaderRegistry.retain(program))
+            return program;
+
+        program = VfxShaderRegistry.obtainFromSource(
+                VfxShaderSource.load(vertexFile),
+                VfxShaderSource.load(fragmentFile), variantDefines);
+        programs[index] = program;
+        return program;
+    }
+
+    /** Compiles a private program of the variant. */
+    public ShaderProgram compile(int index) {
+        return VfxGLUtils.compileShader(vertexFile, fragmentFile,
+                getDefines(index));
+    }
+
+    /**
+     * Queues all variants for compilation as the shared programs that
+     * {@link #obtain(int)} returns.
+     */
+    public void precompile(VfxWarmUp warmUp) {
+        for (int i = 0; i < variantCount; i++) {
+            warmUp.addProgram(vertexFile, fragmentFile, getDefines(i));
+        }
+    }
+
+    private String buildDefines(int index) {
+        StringBuilder sb = new StringBuilder();
+        // The last axis varies fastest.
+        for (int i = names.size - 1; i >= 0; i--) {
+            int[] axisValues = values.get(i);
+            int value = axisValues[index % axisValues.length];
+            index /= axisValues.length;
+
+            if (switches.get(i)) {
+                if (value == 0)
+                    continue;
+                prependLine(sb, "#define " + names.get(i));
+            } else {
+                prependLine(sb, "#define " + names.get(i) + " " + value);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void prependLine(StringBuilder sb, String line) {
+        if (sb.length() > 0) {
+            sb.insert(0, '\n');
+        }
+        sb.insert(0, line);
+    }
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.crashinvaders.vfx.effects.FusibleVfxEffect;
+import com.crashinvaders.vfx.effects.ShaderVfxEffect;
+
+/**
+ * A typed handle of a shader uniform. The handle shadows the uniform's value
+ * and caches its location. Setting a value only marks the handle as dirty;
+ * dirty handles are uploaded in a single batch right before the program is
+ * used for rendering.
+ *
+ * @see ShaderVfxEffect#registerUniform(VfxUniform)
+ */
+public abstract class VfxUniform {
+
+    private static final int UNRESOLVED = -2;
+
+    protected final String name;
+    private int location = UNRESOLVED;
+    private boolean dirty = true;
+    private int changeCount;
+
+    protected VfxUniform(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * @return how many times the value has changed. Unlike the dirty flag,
+     *         this isn't reset by uploading the value.
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /** Marks the value as changed and dirty. */
+    protected void changed() {
+        changeCount++;
+        dirty = true;
+    }
+
+    /** Schedules the value to be uploaded on the next {@link #flush}. */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Drops the cached location and marks the value as dirty. Should be
+     * called whenever the program may have been relinked (e.g. on OpenGL
+     * context loss).
+     */
+    public void invalidate() {
+        location = UNRESOLVED;
+        dirty = true;
+    }
+
+    /**
+     * Uploads the value if it is dirty. The program has to be bound. Uniforms
+     * that are not active in the program are silently skipped.
+     */
+    public void flush(ShaderProgram program) {
+        if (!dirty)
+            return;
+
+        if (location == UNRESOLVED) {
+            location = program.fetchUniformLocation(name, false);
+        }
+        if (location >= 0) {
+            upload(program, location);
+        }
+        dirty = false;
+    }
+
+    protected abstract void upload(ShaderProgram program, int location);
+
+    /** Uploads the current value into a fused shader program. */
+    public abstract void applyTo(FusibleVfxEffect.FusedUniforms uniforms);
+
+    /** A uniform of int type (also used for samplers). */
+    public static class IntUniform extends VfxUniform {
+
+        private int value;
+
+        public IntUniform(String name, int value) {
+            super(name);
+            this.value = value;
+        }
+
+        public int get() {
+            return value;
+        }
+
+        public void set(int value) {
+            if (this.value != value) {
+                this.value = value;
+                changed();
+            }
+        }
+
+        @Override
+        protected void upload(ShaderProgram program, int location) {
+            program.setUniformi(location, value);
+        }
+
+        @Override
+        public void applyTo(FusibleVfxEffect.FusedUniforms uniforms) {
+            uniforms.setUniformi(name, value);
+        }
+    }
+
+    /** A uniform of float type. */
+    public static class FloatUniform extends VfxUniform {
+
+        private float value;
+
+        public FloatUniform(String name, float value) {
+            super(name);
+            this.value = value;
+        }
+
+        public float get() {
+            return value;
+        }
+
+        public void set(float value) {
+            if (this.value != value) {
+                this.value = value;
+                changed();
+            }
+        }
+
+        @Override
+        protected void upload(ShaderProgram program, int location) {
+            program.setUniformf(location, value);
+        }
+
+        @Override
+        public void applyTo(FusibleVfxEffect.FusedUniforms uniforms) {
+            uniforms.setUniformf(name, value);
+        }
+    }
+
+    /** A uniform of vec2 type. */
+    public static class Vec2Uniform extends VfxUniform {
+
+        private final Vector2 value = new Vector2();
+
+        public Vec2Uniform(String name) {
+            super(name);
+        }
+
+        /**
+         * @return the current value. Must not be modified directly, use
+         *         {@link #set(float, float)} instead.
+         */
+        public Vector2 get() {
+            return value;
+        }
+
+        public void set(Vector2 value) {
+            set(value.x, value.y);
+        }
+
+        public void set(float x, float y) {
+            if (value.x != x || value.y != y) {
+                value.set(x, y);
+                changed();
+            }
+        }
+
+        @Override
+        protected void upload(ShaderProgram program, int location) {
+            program.setUniformf(location, value.x, value.y);
+        }
+
+        @Override
+        public void applyTo(FusibleVfxEffect.FusedUniforms uniforms) {
+            uniforms.setUniformf(name, value);
+        }
+    }
+
+    /** A uniform of vec3 type. */
+    public static class Vec3Uniform extends VfxUniform {
+
+        private final Vector3 value = new Vector3();
+
+        public Vec3Uniform(String name) {
+            super(name);
+        }
+
+        /**
+         * @return the current value. Must not be modified directly, use
+         *         {@link #set(float, float, float)} instead.
+         */
+        public Vector3 get() {
+            return value;
+        }
+
+        public void set(Vector3 value) {
+            set(value.x, value.y, value.z);
+        }
+
+        public void set(float x, float y, float z) {
+            if (value.x != x || value.y != y || value.z != z) {
+                value.set(x, y, z);
+                changed();
+            }
+        }
+
+        @Override
+        protected void upload(ShaderProgram program, int location) {
+            program.setUniformf(location, value.x, value.y, value.z);
+        }
+
+        @Override
+        public void applyTo(FusibleVfxEffect.FusedUniforms uniforms) {
+            uniforms.setUniformf(name, value);
+        }
+    }
+}
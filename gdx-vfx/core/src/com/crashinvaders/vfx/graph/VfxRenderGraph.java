@@ -0,0 +1,734 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.graph;
+
+import javax.annotation.Nullable;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BooleanArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.crashinvaders.vfx.VfxManager;
+import com.crashinvaders.vfx.VfxRenderContext;
+import com.crashinvaders.vfx.effects.ChainVfxEffect;
+import com.crashinvaders.vfx.framebuffer.VfxBufferFormat;
+import com.crashinvaders.vfx.framebuffer.VfxFrameBufferPool;
+import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
+import com.crashinvaders.vfx.gl.VfxGLUtils;
+
+import de.damios.guacamole.Preconditions;
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Schedules the render passes of an effect chain and manages the buffers used
+ * in between them.
+ * <p>
+ * Every {@link ChainVfxEffect} declares its passes and the buffers each of
+ * them reads and writes via
+ * {@link ChainVfxEffect#setupRenderPasses(Builder)}. Besides the two chain
+ * buffers ({@link #CHAIN_SRC} and {@link #CHAIN_DST}), which are backed by the
+ * {@link VfxManager}'s {@link VfxPingPongWrapper}, passes may request
+ * transient buffers. A transient buffer is obtained from the context's
+ * {@link VfxFrameBufferPool} right before the first pass that writes it and is
+ * returned right after the last pass that uses it. That way transient buffers
+ * with non-overlapping lifetimes share the same pooled memory.
+ * <p>
+ * Effects may run at a fraction of the chain resolution (see
+ * {@link #setResolutionDivisor(ChainVfxEffect, int, boolean)}). Their input is
+ * downsampled into pooled buffers of the reduced size, which stand in for the
+ * chain buffers and define the size of their transient buffers, and their
+ * output is upsampled back into the chain.
+ * <p>
+ * The output of the last effect may go straight into a target buffer (see
+ * {@link #execute(VfxRenderContext, VfxPingPongWrapper, int,
+ * NestableFrameBuffer)}).
+ * <p>
+ * The graph is only rebuilt when the list of effects or the
+ * {@linkplain ChainVfxEffect#getRenderPassesRevision() structure of their
+ * passes} changes, or once {@link #invalidate()} has been called.
+ */
+public class VfxRenderGraph {
+
+    /** The input buffer of the effect that owns the pass. */
+    public static final int CHAIN_SRC = 0;
+    /** The output buffer of the effect that owns the pass. */
+    public static final int CHAIN_DST = 1;
+
+    private static final int FIRST_TRANSIENT = 2;
+
+    private final Array<ChainVfxEffect> effects = new Array<>();
+    private final Array<PassNode> passes = new Array<>();
+    private final Array<VfxBufferFormat> formats = new Array<>();
+
+    private final ObjectIntMap<ChainVfxEffect> resolutionDivisors = new ObjectIntMap<>();
+    private final ObjectSet<ChainVfxEffect> edgeAwareEffects = new ObjectSet<>();
+    private final IntArray effectDivisors = new IntArray();
+    /** The revisions of the passes the effects have declared. */
+    private final IntArray effectPassesRevisions = new IntArray();
+    private final BooleanArray effectEdgeAware = new BooleanArray();
+
+    private final Builder builder = new Builder();
+    private final Resources resources = new Resources();
+
+    private int resourceCount = FIRST_TRANSIENT;
+    private NestableFrameBuffer[] bound = new NestableFrameBuffer[0];
+    private int peakTransientCount;
+
+    private boolean dirty = true;
+
+    private final TransientPingPongWrapper scaledBuffers = new TransientPingPongWrapper();
+    private NestableFrameBuffer scaledGuide;
+    private int scaledWidth, scaledHeight;
+
+    private final TransientPingPongWrapper directBuffers = new TransientPingPongWrapper();
+    private boolean finalDirect;
+
+    private EffectListener effectListener;
+
+    /** Forces the graph to be rebuilt on the next {@link #compile(Array)}. */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Sets a listener that is notified whenever the execution of an effect's
+     * passes begins and ends. May be <code>null</code>.
+     */
+    public void setEffectListener(EffectListener effectListener) {
+        this.effectListener = effectListener;
+    }
+
+    /**
+     * Lets the effect run at a fraction of the chain resolution. Suits effects
+     * whose result is smooth anyway, like blurs and glows.
+     *
+     * @param divisor
+     *            the chain resolution is divided by it; <code>1</code>
+     *            renders at full resolution
+     * @param edgeAware
+     *            whether the output is upsampled with a luma-aware bilateral
+     *            filter instead of bilinearly, which keeps the edges of the
+     *            input sharp
+     * @see #getScaledSize(int, int)
+     */
+    public void setResolutionDivisor(ChainVfxEffect effect, int divisor,
+            boolean edgeAware) {
+        Preconditions.checkArgument(divisor >= 1,
+                "The divisor has to be at least 1.");
+
+        if (divisor == 1) {
+            resolutionDivisors.remove(effect, 1);
+            edgeAwareEffects.remove(effect);
+        } else {
+            resolutionDivisors.put(effect, divisor);
+            if (edgeAware) {
+                edgeAwareEffects.add(effect);
+            } else {
+                edgeAwareEffects.remove(effect);
+            }
+        }
+        dirty = true;
+    }
+
+    /** @return the resolution divisor of the effect; 1 by default. */
+    public int getResolutionDivisor(ChainVfxEffect effect) {
+        return resolutionDivisors.get(effect, 1);
+    }
+
+    /** @return whether the output of the effect is upsampled edge-aware. */
+    public boolean isEdgeAwareUpsampling(ChainVfxEffect effect) {
+        return edgeAwareEffects.contains(effect);
+    }
+
+    /** Restores the full resolution for all effects. */
+    public void clearResolutionDivisors() {
+        resolutionDivisors.clear();
+        edgeAwareEffects.clear();
+        dirty = true;
+    }
+
+    /**
+     * @return the size of a buffer divided by the divisor, rounded up and at
+     *         least 1
+     */
+    public static int getScaledSize(int size, int divisor) {
+        return Math.max(1, (size + divisor - 1) / divisor);
+    }
+
+    /**
+     * Rebuilds the graph for the specified effects, unless it has already been
+     * built for the very same effects and passes.
+     */
+    public void compile(Array<ChainVfxEffect> chainEffects) {
+        if (!dirty && isCompiledFor(chainEffects))
+            return;
+
+        effects.clear();
+        effects.addAll(chainEffects);
+        passes.clear();
+        formats.clear();
+        effectDivisors.clear();
+        effectPassesRevisions.clear();
+        effectEdgeAware.clear();
+        formats.add(null, null); // The chain buffers
+        resourceCount = FIRST_TRANSIENT;
+
+        for (int i = 0; i < effects.size; i++) {
+            builder.effect = effects.get(i);
+            builder.effectIndex = i;
+            effectDivisors.add(getResolutionDivisor(builder.effect));
+            effectEdgeAware.add(isEdgeAwareUpsampling(builder.effect));
+            effectPassesRevisions
+                    .add(builder.effect.getRenderPassesRevision());
+            builder.effect.setupRenderPasses(builder);
+        }
+        builder.effect = null;
+
+        computeLifetimes();
+        bound = new NestableFrameBuffer[resourceCount];
+        dirty = false;
+    }
+
+    /**
+     * Renders all the passes in order. The chain buffers have to be in the
+     * capturing state, with the input of the first effect in the source
+     * buffer. Upon return, the result of the last effect is in the
+     * destination buffer.
+     */
+    public void execute(VfxRenderContext context,
+            VfxPingPongWrapper chainBuffers) {
+        execute(context, chainBuffers, 0);
+    }
+
+    /**
+     * Renders the passes of the effects starting at the specified index, with
+     * the input of that effect in the source buffer. Transient buffers must
+     * not be shared between effects for this to work.
+     *
+     * @param firstEffect
+     *            the index of the first effect to render; if it equals the
+     *            number of effects, nothing is rendered
+     */
+    public void execute(VfxRenderContext context,
+            VfxPingPongWrapper chainBuffers, int firstEffect) {
+        execute(context, chainBuffers, firstEffect, null);
+    }
+
+    /**
+     * Renders the passes of the effects starting at the specified index, with
+     * the output of the last effect going into the target.
+     * <p>
+     * The last effect writes straight into the target, which saves a copy, if
+     * it is {@linkplain ChainVfxEffect#isSwapFree() swap-free}. Otherwise it
+     * renders into the chain and its output is copied. Either way the content
+     * of the chain's destination buffer is undefined afterwards.
+     *
+     * @param target
+     *            receives the output of the last effect; if
+     *            <code>null</code>, it stays in the chain's destination
+     *            buffer
+     */
+    public void execute(VfxRenderContext context,
+            VfxPingPongWrapper chainBuffers, int firstEffect,
+            NestableFrameBuffer target) {
+        resources.chainBuffers = chainBuffers;
+        // The buffers of the current effect.
+        VfxPingPongWrapper buffers = chainBuffers;
+        final int lastEffect = effects.size - 1;
+
+        int firstPass = 0;
+        while (firstPass < passes.size
+                && passes.get(firstPass).effectIndex < firstEffect) {
+            firstPass++;
+        }
+
+        int currentEffect = -1;
+        int divisor = 1;
+        for (int i = firstPass; i < passes.size; i++) {
+            PassNode node = passes.get(i);
+
+            if (node.effectIndex != currentEffect) {
+                // The output of the previous effect becomes the input of the
+                // next one.
+                if (currentEffect != -1) {
+                    if (divisor > 1) {
+                        endScaledEffect(context, buffers);
+                    }
+                    if (effectListener != null) {
+                        effectListener.endEffect(effects.get(currentEffect),
+                                buffers);
+                    }
+                    buffers.swap();
+                }
+                currentEffect = node.effectIndex;
+                divisor = effectDivisors.get(currentEffect);
+                if (target != null && currentEffect == lastEffect) {
+                    buffers = beginFinalEffect(chainBuffers, target);
+                    resources.chainBuffers = buffers;
+                }
+                if (effectListener != null) {
+                    effectListener.beginEffect(effects.get(currentEffect));
+                }
+                if (divisor > 1) {
+                    beginScaledEffect(context, buffers, divisor,
+                            effectEdgeAware.get(currentEffect));
+                }
+            }
+
+            for (int j = 0; j < node.acquire.size; j++) {
+                int handle = node.acquire.get(j);
+                bound[handle] = divisor > 1
+                        ? context.getBufferPool().obtain(scaledWidth,
+                                scaledHeight, formats.get(handle))
+                        : context.getBufferPool().obtain(formats.get(handle));
+            }
+
+            node.pass.render(context, resources);
+            resources.resolvePingPong();
+
+            for (int j = 0; j < node.release.size; j++) {
+                int handle = node.release.get(j);
+                context.getBufferPool().free(bound[handle]);
+                bound[handle] = null;
+            }
+        }
+
+        if (divisor > 1) {
+            endScaledEffect(context, buffers);
+        }
+        if (currentEffect != -1 && effectListener != null) {
+            effectListener.endEffect(effects.get(currentEffect),
+                    getOutputBuffers(buffers, target));
+        }
+        if (target != null) {
+            endFinalEffect(context, chainBuffers, target,
+                    currentEffect != -1 && currentEffect == lastEffect);
+        }
+        resources.chainBuffers = null;
+    }
+
+    /**
+     * Sets up the buffers of the last effect, with the target as the
+     * destination if the effect declares not to swap them.
+     */
+    private VfxPingPongWrapper beginFinalEffect(
+            VfxPingPongWrapper chainBuffers, NestableFrameBuffer target) {
+        finalDirect = effects.peek().isSwapFree();
+        if (!finalDirect)
+            return chainBuffers;
+
+        chainBuffers.end();
+        if (chainBuffers.hasInput()) {
+            // The destination buffer is free to take the place of the input,
+            // should the effect swap after all.
+            directBuffers.set(target, chainBuffers.getDstBuffer());
+            directBuffers.setInput(chainBuffers.getSrcBuffer());
+        } else {
+            directBuffers.set(target, chainBuffers.getSrcBuffer());
+        }
+        directBuffers.begin();
+        return directBuffers;
+    }
+
+    /**
+     * @return the buffers of the effect or <code>null</code>, if the last
+     *         effect has rendered straight into the target. Unlike the chain
+     *         buffers, the target may hold more than the effect's output.
+     */
+    private VfxPingPongWrapper getOutputBuffers(VfxPingPongWrapper buffers,
+            NestableFrameBuffer target) {
+        if (buffers == directBuffers && directBuffers.getDstBuffer() == target)
+            return null;
+        return buffers;
+    }
+
+    /**
+     * Makes sure the output of the last effect ends up in the target and
+     * hands the chain buffers back in the capturing state. The copies are
+     * drawn, so that they blend like the last effect would have.
+     *
+     * @param rendered
+     *            whether the last effect has been rendered; if not, its
+     *            output is in the chain's destination buffer already
+     */
+    private void endFinalEffect(VfxRenderContext context,
+            VfxPingPongWrapper chainBuffers, NestableFrameBuffer target,
+            boolean rendered) {
+        if (!rendered) {
+            context.getBufferRenderer()
+                    .drawToFbo(chainBuffers.getDstBuffer(), target);
+            return;
+        }
+
+        if (finalDirect) {
+            directBuffers.end();
+            if (directBuffers.getDstBuffer() != target) {
+                // The effect has swapped the buffers after all.
+                context.getBufferRenderer()
+                        .drawToFbo(directBuffers.getDstBuffer(), target);
+            }
+            directBuffers.set(null, null);
+            chainBuffers.begin();
+        } else {
+            context.getBufferRenderer()
+                    .drawToFbo(chainBuffers.getDstBuffer(), target);
+        }
+    }
+
+    /**
+     * Downsamples the chain input into reduced buffers, which replace the
+     * chain buffers for the passes of the current effect.
+     */
+    private void beginScaledEffect(VfxRenderContext context,
+            VfxPingPongWrapper chainBuffers, int divisor, boolean edgeAware) {
+        NestableFrameBuffer src = chainBuffers.getSrcBuffer();
+        scaledWidth = getScaledSize(src.getWidth(), divisor);
+        scaledHeight = getScaledSize(src.getHeight(), divisor);
+
+        VfxFrameBufferPool pool = context.getBufferPool();
+        VfxBufferFormat format = pool.getFormat();
+        NestableFrameBuffer input = pool.obtain(scaledWidth, scaledHeight,
+                format, TextureFilter.Linear, false);
+        NestableFrameBuffer output = pool.obtain(scaledWidth, scaledHeight,
+                format, TextureFilter.Linear, false);
+
+        // The resampling must not be blended.
+        boolean blendingWasEnabled = VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+
+        // Sample in between the texels to average them.
+        Texture texture = src.getColorBufferTexture();
+        TextureFilter minFilter = texture.getMinFilter();
+        TextureFilter magFilter = texture.getMagFilter();
+        texture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+        context.getBufferRenderer().renderToFbo(src, input);
+        texture.setFilter(minFilter, magFilter);
+
+        if (edgeAware) {
+            // The effect may overwrite its input, but the upsampling needs it.
+            scaledGuide = pool.obtain(scaledWidth, scaledHeight, format,
+                    TextureFilter.Nearest, false);
+            context.getBufferRenderer().renderToFbo(input, scaledGuide);
+        }
+
+        if (blendingWasEnabled) {
+            Gdx.gl.glEnable(GL20.GL_BLEND);
+        }
+
+        scaledBuffers.set(output, input);
+        scaledBuffers.begin();
+        resources.chainBuffers = scaledBuffers;
+    }
+
+    /** Upsamples the result of the current effect into the chain. */
+    private void endScaledEffect(VfxRenderContext context,
+            VfxPingPongWrapper chainBuffers) {
+        scaledBuffers.end();
+        resources.chainBuffers = chainBuffers;
+
+        boolean blendingWasEnabled = VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+
+        NestableFrameBuffer result = scaledBuffers.getDstBuffer();
+        if (scaledGuide != null) {
+            context.getBilateralUpsampler().upsample(
+                    context.getViewportMesh(), result, scaledGuide,
+                    chainBuffers.getSrcBuffer(), chainBuffers.getDstBuffer());
+            context.getBufferPool().free(scaledGuide);
+            scaledGuide = null;
+        } else {
+            context.getBufferRenderer().renderToFbo(result,
+                    chainBuffers.getDstBuffer());
+        }
+
+        if (blendingWasEnabled) {
+            Gdx.gl.glEnable(GL20.GL_BLEND);
+        }
+
+        context.getBufferPool().free(scaledBuffers.getSrcBuffer());
+        context.getBufferPool().free(result);
+        scaledBuffers.set(null, null);
+    }
+
+    /** @return the number of passes of the compiled graph. */
+    public int getPassCount() {
+        return passes.size;
+    }
+
+    /** @return the number of transient buffers declared by the effects. */
+    public int getTransientCount() {
+        return resourceCount - FIRST_TRANSIENT;
+    }
+
+    /**
+     * @return the maximum number of transient buffers that are alive at the
+     *         same time. This is the number of pooled buffers the graph
+     *         actually needs.
+     */
+    public int getPeakTransientCount() {
+        return peakTransientCount;
+    }
+
+    private boolean isCompiledFor(Array<ChainVfxEffect> chainEffects) {
+        if (effects.size != chainEffects.size)
+            return false;
+        for (int i = 0; i < effects.size; i++) {
+            ChainVfxEffect effect = effects.get(i);
+            if (effect != chainEffects.get(i) || effect
+                    .getRenderPassesRevision() != effectPassesRevisions.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    private void computeLifetimes() {
+        int[] firstWrite = new int[resourceCount];
+        int[] firstUse = new int[resourceCount];
+        int[] lastUse = new int[resourceCount];
+        for (int h = 0; h < resourceCount; h++) {
+            firstWrite[h] = -1;
+            firstUse[h] = -1;
+            lastUse[h] = -1;
+        }
+
+        for (int i = 0; i < passes.size; i++) {
+            PassNode node = passes.get(i);
+            for (int j = 0; j < node.reads.size; j++) {
+                int h = node.reads.get(j);
+                if (firstUse[h] == -1)
+                    firstUse[h] = i;
+                lastUse[h] = i;
+            }
+            for (int j = 0; j < node.writes.size; j++) {
+                int h = node.writes.get(j);
+                if (firstWrite[h] == -1)
+                    firstWrite[h] = i;
+                if (firstUse[h] == -1)
+                    firstUse[h] = i;
+                lastUse[h] = i;
+            }
+        }
+
+        int alive = 0;
+        peakTransientCount = 0;
+        for (int i = 0; i < passes.size; i++) {
+            PassNode node = passes.get(i);
+            node.acquire.clear();
+            node.release.clear();
+
+            for (int h = FIRST_TRANSIENT; h < resourceCount; h++) {
+                if (firstUse[h] == i) {
+                    Preconditions.checkState(firstWrite[h] == i,
+                            "Transient buffer #" + h
+                                    + " is read before it has been written.");
+                    node.acquire.add(h);
+                    alive++;
+                }
+            }
+            peakTransientCount = Math.max(peakTransientCount, alive);
+
+            for (int h = FIRST_TRANSIENT; h < resourceCount; h++) {
+                if (lastUse[h] == i) {
+                    node.release.add(h);
+                    alive--;
+                }
+            }
+        }
+    }
+
+    /** Gets notified about the execution of the effects' passes. */
+    public interface EffectListener {
+
+        void beginEffect(ChainVfxEffect effect);
+
+        /**
+         * @param buffers
+         *            the buffers with the effect's output in their
+         *            destination buffer or <code>null</code>, if the output
+         *            has gone straight into the target of
+         *            {@link VfxRenderGraph#execute execute()}
+         */
+        void endEffect(ChainVfxEffect effect,
+                @Nullable VfxPingPongWrapper buffers);
+
+    }
+
+    /** Declares the passes of the effects. */
+    public final class Builder {
+
+        private ChainVfxEffect effect;
+        private int effectIndex;
+
+        private Builder() {
+        }
+
+        /**
+         * Declares a new transient buffer and returns its handle. The buffer
+         * content is undefined until a pass writes it.
+         */
+        public int createTransient() {
+            return createTransient(VfxBufferFormat.RGBA8888);
+        }
+
+        /**
+         * Declares a new transient buffer of the specified format. If the
+         * format is not supported, a fallback format is used.
+         *
+         * @see VfxBufferFormat#negotiate()
+         */
+        public int createTransient(VfxBufferFormat format) {
+            formats.add(format);
+            return resourceCount++;
+        }
+
+        /**
+         * Adds a pass to the graph. The passes are executed in the order they
+         * are added.
+         */
+        public PassNode addPass(VfxRenderPass pass) {
+            Preconditions.checkState(effect != null,
+                    "Passes may only be added while the graph is compiled.");
+
+            PassNode node = new PassNode(effectIndex, pass);
+            passes.add(node);
+            return node;
+        }
+    }
+
+    /** A declared pass along with the buffers it reads and writes. */
+    public static final class PassNode {
+
+        private final int effectIndex;
+        private final VfxRenderPass pass;
+
+        private final IntArray reads = new IntArray(4);
+        private final IntArray writes = new IntArray(2);
+
+        private final IntArray acquire = new IntArray(2);
+        private final IntArray release = new IntArray(2);
+
+        private PassNode(int effectIndex, VfxRenderPass pass) {
+            this.effectIndex = effectIndex;
+            this.pass = pass;
+        }
+
+        public PassNode reads(int... handles) {
+            reads.addAll(handles);
+            return this;
+        }
+
+        public PassNode writes(int... handles) {
+            writes.addAll(handles);
+            return this;
+        }
+    }
+
+    /** Resolves the handles of the buffers during a pass execution. */
+    public final class Resources {
+
+        private final TransientPingPongWrapper pingPong = new TransientPingPongWrapper();
+        private VfxPingPongWrapper chainBuffers;
+        private int pingPongSrc = -1;
+        private int pingPongDst = -1;
+
+        private Resources() {
+        }
+
+        public NestableFrameBuffer get(int handle) {
+            switch (handle) {
+            case CHAIN_SRC:
+                return chainBuffers.getSrcBuffer();
+            case CHAIN_DST:
+                return chainBuffers.getDstBuffer();
+            default:
+                NestableFrameBuffer buffer = bound[handle];
+                if (buffer == null) {
+                    throw new IllegalStateException("Transient buffer #"
+                            + handle + " is not alive during the current pass.");
+                }
+                return buffer;
+            }
+        }
+
+        /**
+         * @return the chain buffers, for effects that render straight into
+         *         the {@link VfxPingPongWrapper}.
+         */
+        public VfxPingPongWrapper getChainBuffers() {
+            return chainBuffers;
+        }
+
+        /**
+         * Wraps two transient buffers of the current pass into a
+         * {@link VfxPingPongWrapper}, for effects that require one. Once the
+         * pass is done, the <code>dst</code> handle points to the buffer
+         * holding the result, while the content of <code>src</code> is
+         * undefined.
+         */
+        public VfxPingPongWrapper pingPong(int src, int dst) {
+            if (src == CHAIN_SRC && dst == CHAIN_DST)
+                return chainBuffers;
+
+            Preconditions.checkArgument(
+                    src >= FIRST_TRANSIENT && dst >= FIRST_TRANSIENT,
+                    "Chain buffers cannot be mixed with transient buffers.");
+
+            pingPongSrc = src;
+            pingPongDst = dst;
+            pingPong.set(get(dst), get(src));
+            return pingPong;
+        }
+
+        private void resolvePingPong() {
+            if (pingPongDst == -1)
+                return;
+
+            if (pingPong.getDstBuffer() != bound[pingPongDst]) {
+                NestableFrameBuffer tmp = bound[pingPongDst];
+                bound[pingPongDst] = bound[pingPongSrc];
+                bound[pingPongSrc] = tmp;
+            }
+            pingPong.set(null, null);
+            pingPongSrc = -1;
+            pingPongDst = -1;
+        }
+    }
+
+    /** A ping-pong wrapper that doesn't own its buffers. */
+    private static class TransientPingPongWrapper extends VfxPingPongWrapper {
+
+        TransientPingPongWrapper() {
+            super(null, null);
+        }
+
+        void set(NestableFrameBuffer dst, NestableFrameBuffer src) {
+            this.bufDst = dst;
+            this.bufSrc = src;
+            this.bufInput = null;
+        }
+
+        @Override
+        public void dispose() {
+            // The buffers are owned by the pool.
+        }
+    }
+}
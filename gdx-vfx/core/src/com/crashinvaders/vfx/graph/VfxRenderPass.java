@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.graph;
+
+import com.crashinvaders.vfx.VfxRenderContext;
+
+/**
+ * A single render pass of a {@link VfxRenderGraph}. The buffers the pass has
+ * declared as its inputs and outputs are resolved through the supplied
+ * {@link VfxRenderGraph.Resources}.
+ */
+public interface VfxRenderPass {
+
+    void render(VfxRenderContext context, VfxRenderGraph.Resources resources);
+
+}
@@ -16,13 +16,26 @@
 
 package com.crashinvaders.vfx.scene2d;
 
+import java.util.Arrays;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.WidgetGroup;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.SnapshotArray;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.crashinvaders.vfx.VfxManager;
+import com.crashinvaders.vfx.effects.ChainVfxEffect;
 import com.crashinvaders.vfx.effects.VfxEffect;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
@@ -39,6 +52,10 @@ import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
  * While working with VFX effects within {@link Stage}'s actor hierarchy, keep
  * in mind that not every effect is made to support transparency, so there might
  * be issues.
+ * <p>
+ * With {@linkplain #setDamageTracking(boolean) damage tracking} enabled, only
+ * the regions affected by changed children are captured and processed again;
+ * the rest of the previous result is kept.
  */
 public class VfxWidgetGroup extends WidgetGroup {
 
@@ -59,6 +76,27 @@ public class VfxWidgetGroup extends WidgetGroup {
      */
     private boolean updateManager = true;
 
+    /** @see #setDamageTracking(boolean) */
+    private boolean damageTracking = false;
+
+    /** The margin in pixels that covers rounding and linear filtering. */
+    private static final int DAMAGE_MARGIN = 2;
+
+    private final ObjectMap<Actor, ChildState> childStates = new ObjectMap<>();
+    private final Rectangle damage = new Rectangle();
+    private final Rectangle tmpRect = new Rectangle();
+    private final Vector2 tmpVec2 = new Vector2();
+    private final Vector3 tmpVec3 = new Vector3();
+    private final Matrix4 bufferTransform = new Matrix4();
+    private final Matrix4 lastBufferTransform = new Matrix4();
+    private boolean damaged = false;
+    private boolean fullDamage = true;
+    private float lastParentAlpha;
+    private int lastChainRevision;
+    private int frameId;
+    /** Keeps the result between the frames while tracking the damage. */
+    private NestableFrameBuffer resultBuffer;
+
     public VfxWidgetGroup() {
         vfxManager = new VfxManager();
         super.setTransform(false);
@@ -92,6 +130,65 @@ public class VfxWidgetGroup extends WidgetGroup {
         this.updateManager = updateManager;
     }
 
+    /** @see #setDamageTracking(boolean) */
+    public boolean isDamageTracking() {
+        return damageTracking;
+    }
+
+    /**
+     * Enables the damage tracking. If enabled, the widget compares the
+     * direct children against their state from the previous frame and only
+     * captures and processes the regions of the children that changed,
+     * widened by the {@linkplain VfxManager#getChainFootprint() footprint} of
+     * the effect chain. Everything else is taken from the previous result.
+     * <p>
+     * Changes the widget cannot see, like the content of nested groups or
+     * textures that are updated in place, must be reported with
+     * {@link #addDamage(Actor)} or {@link #addDamage(float, float, float,
+     * float)}. Effects with an unbounded footprint, volatile effects and any
+     * change of the chain or the widget's transform cause a full redraw.
+     */
+    public void setDamageTracking(boolean damageTracking) {
+        if (this.damageTracking == damageTracking)
+            return;
+
+        this.damageTracking = damageTracking;
+        disposeResultBuffer();
+    }
+
+    /**
+     * Marks the region of the widget (in its local coordinates) for the redraw
+     * on the next frame. Has no effect unless the damage tracking is enabled.
+     */
+    public void addDamage(float x, float y, float width, float height) {
+        if (width <= 0f || height <= 0f)
+            return;
+
+        if (damaged) {
+            damage.merge(tmpRect.set(x, y, width, height));
+        } else {
+            damage.set(x, y, width, height);
+            damaged = true;
+        }
+    }
+
+    /**
+     * Marks the bounds of the child for the redraw on the next frame. Has no
+     * effect unless the damage tracking is enabled.
+     */
+    public void addDamage(Actor child) {
+        ChildState state = childStates.get(child);
+        if (state != null) {
+            addDamage(state.bounds);
+        }
+        addDamage(getChildBounds(child, tmpRect));
+    }
+
+    /** Makes the next frame redraw the whole widget. */
+    public void damageAll() {
+        fullDamage = true;
+    }
+
     @Override
     protected void setStage(Stage stage) {
         super.setStage(stage);
@@ -123,12 +220,28 @@ public class VfxWidgetGroup extends WidgetGroup {
     public void draw(Batch batch, float parentAlpha) {
         validate();
 
-        NestableFrameBuffer captureBuffer = vfxManager.getResultBuffer();
-
         batch.end();
 
         performPendingResize();
 
+        NestableFrameBuffer result;
+        if (damageTracking) {
+            result = renderDamage(batch, parentAlpha);
+        } else {
+            renderChildren(batch, parentAlpha);
+            result = vfxManager.getResultBuffer();
+        }
+
+        batch.begin();
+
+        // Render result to the screen.
+        batch.setColor(getColor().r, getColor().g, getColor().b,
+                getColor().a * parentAlpha);
+        batch.draw(result.getColorBufferTexture(), getX(), getY(), getWidth(),
+                getHeight(), 0f, 0f, 1f, 1f);
+    }
+
+    private void renderChildren(Batch batch, float parentAlpha) {
         vfxManager.clear();
 
         vfxManager.beginCapture();
@@ -143,14 +256,190 @@ public class VfxWidgetGroup extends WidgetGroup {
         vfxManager.endCapture();
 
         vfxManager.applyEffects();
+    }
 
-        batch.begin();
+    /**
+     * Renders the damaged region only and merges it into the
+     * {@link #resultBuffer}.
+     */
+    private NestableFrameBuffer renderDamage(Batch batch, float parentAlpha) {
+        NestableFrameBuffer src = vfxManager.getResultBuffer();
+        if (resultBuffer == null || resultBuffer.getWidth() != src.getWidth()
+                || resultBuffer.getHeight() != src.getHeight()) {
+            disposeResultBuffer();
+            resultBuffer = vfxManager.getRenderContext().getBufferPool()
+                    .newFrameBuffer();
+        }
+        // Upscaled like the manager's result below render scale 1, so it
+        // has to be filtered the same way.
+        Texture srcTexture = src.getColorBufferTexture();
+        Texture resultTexture = resultBuffer.getColorBufferTexture();
+        if (resultTexture.getMinFilter() != srcTexture.getMinFilter()
+                || resultTexture.getMagFilter() != srcTexture.getMagFilter()) {
+            resultTexture.setFilter(srcTexture.getMinFilter(),
+                    srcTexture.getMagFilter());
+        }
 
-        // Render result to the screen.
-        batch.setColor(getColor().r, getColor().g, getColor().b,
-                getColor().a * parentAlpha);
-        batch.draw(vfxManager.getResultBuffer().getColorBufferTexture(), getX(),
-                getY(), getWidth(), getHeight(), 0f, 0f, 1f, 1f);
+        // Same transform the children are captured with.
+        bufferTransform.set(batch.getProjectionMatrix())
+                .mul(computeTransform());
+        if (!Arrays.equals(bufferTransform.val, lastBufferTransform.val)) {
+            lastBufferTransform.set(bufferTransform);
+            fullDamage = true;
+        }
+        if (parentAlpha != lastParentAlpha) {
+            lastParentAlpha = parentAlpha;
+            fullDamage = true;
+        }
+        int chainRevision = vfxManager.getChainRevision();
+        if (chainRevision == VfxEffect.VOLATILE
+                || chainRevision != lastChainRevision) {
+            lastChainRevision = chainRevision;
+            fullDamage = true;
+        }
+        collectChildDamage();
+
+        if (!fullDamage && !damaged)
+            return resultBuffer;
+
+        int footprint = vfxManager.getChainFootprint();
+        if (footprint == ChainVfxEffect.UNBOUNDED_FOOTPRINT) {
+            fullDamage = true;
+        }
+
+        final int bufferWidth = resultBuffer.getWidth();
+        final int bufferHeight = resultBuffer.getHeight();
+        int x0 = 0, y0 = 0, x1 = bufferWidth, y1 = bufferHeight;
+        if (!fullDamage) {
+            // Project the damage to the buffer pixels.
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                tmpVec3.set(damage.x + (i % 2) * damage.width,
+                        damage.y + (i / 2) * damage.height, 0f)
+                        .prj(bufferTransform);
+                minX = Math.min(minX, tmpVec3.x);
+                minY = Math.min(minY, tmpVec3.y);
+                maxX = Math.max(maxX, tmpVec3.x);
+                maxY = Math.max(maxY, tmpVec3.y);
+            }
+            x0 = MathUtils.floor((minX + 1f) * 0.5f * bufferWidth)
+                    - DAMAGE_MARGIN;
+            y0 = MathUtils.floor((minY + 1f) * 0.5f * bufferHeight)
+                    - DAMAGE_MARGIN;
+            x1 = MathUtils.ceil((maxX + 1f) * 0.5f * bufferWidth)
+                    + DAMAGE_MARGIN;
+            y1 = MathUtils.ceil((maxY + 1f) * 0.5f * bufferHeight)
+                    + DAMAGE_MARGIN;
+        }
+        damaged = false;
+        fullDamage = false;
+
+        if (x1 <= 0 || y1 <= 0 || x0 >= bufferWidth || y0 >= bufferHeight)
+            return resultBuffer;
+
+        // The result within the footprint of the damage depends on the input
+        // within twice the footprint, so that much has to be processed.
+        final boolean scissor = x0 > 0 || y0 > 0 || x1 < bufferWidth
+                || y1 < bufferHeight;
+        if (scissor) {
+            Gdx.gl.glEnable(GL20.GL_SCISSOR_TEST);
+            setScissor(x0, y0, x1, y1, 2 * footprint);
+        }
+
+        renderChildren(batch, parentAlpha);
+
+        if (scissor) {
+            setScissor(x0, y0, x1, y1, footprint);
+        }
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+        vfxManager.getRenderContext().getBufferRenderer()
+                .renderToFbo(vfxManager.getResultBuffer(), resultBuffer);
+        if (scissor) {
+            Gdx.gl.glDisable(GL20.GL_SCISSOR_TEST);
+        }
+        return resultBuffer;
+    }
+
+    private void setScissor(int x0, int y0, int x1, int y1, int expand) {
+        // Widen in a long, the footprint may be huge.
+        int left = (int) Math.max(0L, (long) x0 - expand);
+        int bottom = (int) Math.max(0L, (long) y0 - expand);
+        int right = (int) Math.min(resultBuffer.getWidth(), (long) x1 + expand);
+        int top = (int) Math.min(resultBuffer.getHeight(), (long) y1 + expand);
+        Gdx.gl.glScissor(left, bottom, right - left, top - bottom);
+    }
+
+    /**
+     * Compares the children against the previous frame and adds the old and
+     * the new bounds of each changed, added or removed child to the damage.
+     */
+    private void collectChildDamage() {
+        frameId++;
+
+        SnapshotArray<Actor> children = getChildren();
+        for (int i = 0; i < children.size; i++) {
+            Actor child = children.get(i);
+            ChildState state = childStates.get(child);
+            if (state == null) {
+                state = new ChildState();
+                childStates.put(child, state);
+                state.update(child, i);
+                getChildBounds(child, state.bounds);
+                if (state.visible) {
+                    addDamage(state.bounds);
+                }
+            } else if (state.update(child, i) || child.hasActions()) {
+                if (state.wasVisible) {
+                    addDamage(state.bounds);
+                }
+                getChildBounds(child, state.bounds);
+                if (state.visible) {
+                    addDamage(state.bounds);
+                }
+            }
+            state.frameId = frameId;
+        }
+
+        ObjectMap.Entries<Actor, ChildState> entries = childStates.entries();
+        while (entries.hasNext()) {
+            ChildState state = entries.next().value;
+            if (state.frameId != frameId) {
+                if (state.visible) {
+                    addDamage(state.bounds);
+                }
+                entries.remove();
+            }
+        }
+    }
+
+    private void addDamage(Rectangle rect) {
+        addDamage(rect.x, rect.y, rect.width, rect.height);
+    }
+
+    /** @return the axis-aligned bounds of the child in local coordinates. */
+    private Rectangle getChildBounds(Actor child, Rectangle out) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            child.localToParentCoordinates(tmpVec2.set(
+                    (i % 2) * child.getWidth(), (i / 2) * child.getHeight()));
+            minX = Math.min(minX, tmpVec2.x);
+            minY = Math.min(minY, tmpVec2.y);
+            maxX = Math.max(maxX, tmpVec2.x);
+            maxY = Math.max(maxY, tmpVec2.y);
+        }
+        return out.set(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    private void disposeResultBuffer() {
+        if (resultBuffer != null) {
+            resultBuffer.dispose();
+            resultBuffer = null;
+        }
+        childStates.clear();
+        damaged = false;
+        fullDamage = true;
     }
 
     @Override
@@ -216,6 +505,7 @@ public class VfxWidgetGroup extends WidgetGroup {
             return;
 
         vfxManager.dispose();
+        disposeResultBuffer();
 
         resizePending = false;
         initialized = false;
@@ -253,4 +543,44 @@ public class VfxWidgetGroup extends WidgetGroup {
         resizePending = false;
     }
 
+    /** The state of a child on the last frame it was drawn. */
+    private static class ChildState {
+        private float x, y, width, height;
+        private float originX, originY, rotation, scaleX, scaleY;
+        private final Color color = new Color();
+        private boolean visible, wasVisible;
+        private int index;
+        private final Rectangle bounds = new Rectangle();
+        private int frameId;
+
+        /** @return whether anything affecting the child's pixels changed. */
+        boolean update(Actor child, int index) {
+            boolean changed = x != child.getX() || y != child.getY()
+                    || width != child.getWidth()
+                    || height != child.getHeight()
+                    || originX != child.getOriginX()
+                    || originY != child.getOriginY()
+                    || rotation != child.getRotation()
+                    || scaleX != child.getScaleX()
+                    || scaleY != child.getScaleY()
+                    || !color.equals(child.getColor())
+                    || visible != child.isVisible() || this.index != index;
+
+            x = child.getX();
+            y = child.getY();
+            width = child.getWidth();
+            height = child.getHeight();
+            originX = child.getOriginX();
+            originY = child.getOriginY();
+            rotation = child.getRotation();
+            scaleX = child.getScaleX();
+            scaleY = child.getScaleY();
+            color.set(child.getColor());
+            wasVisible = visible;
+            visible = child.isVisible();
+            this.index = index;
+            return changed;
+        }
+    }
+
 }
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.utils.Array;
+import com.crashinvaders.vfx.effects.ChainVfxEffect;
+import com.crashinvaders.vfx.effects.CompositeVfxEffect;
+import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
+
+public class VfxChainCacheTest {
+
+    private final VfxChainCache cache = new VfxChainCache(null);
+
+    @Test
+    public void unchangedChainIsStable() {
+        Array<ChainVfxEffect> chain = chain(new TestEffect(),
+                new TestEffect(), new TestEffect());
+
+        assertEquals(0, cache.updateRevisions(chain));
+        assertEquals(3, cache.updateRevisions(chain));
+        assertEquals(3, cache.updateRevisions(chain));
+    }
+
+    @Test
+    public void changedEffectEndsStablePrefix() {
+        TestEffect changing = new TestEffect();
+        Array<ChainVfxEffect> chain = chain(new TestEffect(), changing,
+                new TestEffect());
+        cache.updateRevisions(chain);
+
+        changing.revision++;
+        assertEquals(1, cache.updateRevisions(chain));
+        // Stable again once the revision is kept
+        assertEquals(3, cache.updateRevisions(chain));
+    }
+
+    @Test
+    public void volatileEffectIsNeverStable() {
+        TestEffect animated = new TestEffect();
+        animated.revision = ChainVfxEffect.VOLATILE;
+        Array<ChainVfxEffect> chain = chain(new TestEffect(),
+                new TestEffect(), animated, new TestEffect());
+        cache.updateRevisions(chain);
+
+        assertEquals(2, cache.updateRevisions(chain));
+        assertEquals(2, cache.updateRevisions(chain));
+    }
+
+    @Test
+    public void reorderedOrReplacedEffectsAreNotStable() {
+        TestEffect first = new TestEffect();
+        TestEffect second = new TestEffect();
+        cache.updateRevisions(chain(first, second));
+
+        assertEquals(0, cache.updateRevisions(chain(second, first)));
+        assertEquals(1, cache.updateRevisions(chain(second, second)));
+        assertEquals(1,
+                cache.updateRevisions(chain(second, new TestEffect())));
+    }
+
+    @Test
+    public void grownAndShrunkChains() {
+        TestEffect first = new TestEffect();
+        TestEffect second = new TestEffect();
+        cache.updateRevisions(chain(first));
+
+        assertEquals(1, cache.updateRevisions(chain(first, second)));
+        assertEquals(1, cache.updateRevisions(chain(first)));
+        assertEquals(0, cache.updateRevisions(chain()));
+        assertEquals(0, cache.updateRevisions(chain(first)));
+    }
+
+    @Test
+    public void invalidationForgetsRevisions() {
+        Array<ChainVfxEffect> chain = chain(new TestEffect(),
+                new TestEffect());
+        cache.updateRevisions(chain);
+
+        cache.invalidate();
+        assertEquals(0, cache.updateRevisions(chain));
+        assertEquals(2, cache.updateRevisions(chain));
+    }
+
+    @Test
+    public void changedInternalEffectEndsStablePrefix() {
+        TestEffect nested = new TestEffect();
+        Array<ChainVfxEffect> chain = chain(new TestEffect(),
+                new TestComposite(new TestEffect(), nested));
+        cache.updateRevisions(chain);
+
+        nested.revision = Integer.MAX_VALUE;
+        assertEquals(1, cache.updateRevisions(chain));
+        assertEquals(2, cache.updateRevisions(chain));
+    }
+
+    @Test
+    public void volatileInternalEffectIsNeverStable() {
+        TestEffect nested = new TestEffect();
+        nested.revision = ChainVfxEffect.VOLATILE;
+        Array<ChainVfxEffect> chain = chain(new TestEffect(),
+                new TestComposite(new TestEffect(), nested));
+        cache.updateRevisions(chain);
+
+        assertEquals(1, cache.updateRevisions(chain));
+        assertEquals(1, cache.updateRevisions(chain));
+    }
+
+    private static Array<ChainVfxEffect> chain(ChainVfxEffect... effects) {
+        return new Array<>(effects);
+    }
+
+    /** Combines the revisions of its internal effects. */
+    private static class TestComposite extends CompositeVfxEffect
+            implements ChainVfxEffect {
+
+        TestComposite(TestEffect... effects) {
+            for (TestEffect effect : effects) {
+                register(effect);
+            }
+        }
+
+        @Override
+        public void render(VfxRenderContext context,
+                VfxPingPongWrapper buffers) {
+        }
+    }
+
+    /** An effect with a controllable revision. */
+    private static class TestEffect implements ChainVfxEffect {
+
+        int revision;
+
+        @Override
+        public int getRevision() {
+            return revision;
+        }
+
+        @Override
+        public void render(VfxRenderContext context,
+                VfxPingPongWrapper buffers) {
+        }
+
+        @Override
+        public boolean isDisabled() {
+            return false;
+        }
+
+        @Override
+        public void setDisabled(boolean enabled) {
+        }
+
+        @Override
+        public void resize(int width, int height) {
+        }
+
+        @Override
+        public void update(float delta) {
+        }
+
+        @Override
+        public void rebind() {
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VfxResolutionGovernorTest {
+
+    private VfxResolutionGovernor governor;
+
+    @Before
+    public void setUp() {
+        governor = new VfxResolutionGovernor(10f);
+        governor.setCooldownFrames(0);
+        governor.setSmoothing(1f);
+    }
+
+    @Test
+    public void noChangeWithoutSamples() {
+        assertFalse(governor.update());
+        assertEquals(1f, governor.getScale(), 0f);
+        assertEquals(-1f, governor.getAverageMillis(), 0f);
+    }
+
+    @Test
+    public void lowersScaleDownToMinimum() {
+        for (int i = 0; i < 10; i++) {
+            governor.addSample(100f);
+            governor.update();
+        }
+        assertEquals(VfxResolutionGovernor.DEFAULT_MIN_SCALE,
+                governor.getScale(), 1e-6f);
+
+        governor.addSample(100f);
+        assertFalse(governor.update());
+    }
+
+    @Test
+    public void raisesScaleBelowHeadroom() {
+        governor.setScaleRange(0.5f, 1f);
+        governor.addSample(20f);
+        assertTrue(governor.update());
+        assertEquals(0.9f, governor.getScale(), 1e-6f);
+
+        governor.addSample(1f);
+        assertTrue(governor.update());
+        assertEquals(1f, governor.getScale(), 1e-6f);
+    }
+
+    @Test
+    public void keepsScaleWithinThresholds() {
+        governor.addSample(20f);
+        governor.update();
+        float scale = governor.getScale();
+
+        // Between target * headroom and the target
+        governor.addSample(8f);
+        assertFalse(governor.update());
+        assertEquals(scale, governor.getScale(), 0f);
+    }
+
+    @Test
+    public void scalesAverageWithPixelCount() {
+        governor.addSample(20f);
+        governor.update();
+        assertEquals(20f * 0.9f * 0.9f, governor.getAverageMillis(), 1e-4f);
+    }
+
+    @Test
+    public void cooldownDelaysNextChange() {
+        governor.setCooldownFrames(2);
+        governor.addSample(20f);
+        assertTrue(governor.update());
+        assertFalse(governor.update());
+        assertFalse(governor.update());
+        assertTrue(governor.update());
+    }
+
+    @Test
+    public void smoothsSamples() {
+        governor.setSmoothing(0.5f);
+        governor.addSample(10f);
+        governor.addSample(20f);
+        assertEquals(15f, governor.getAverageMillis(), 0f);
+    }
+
+    @Test
+    public void resetRestoresMaximum() {
+        governor.addSample(20f);
+        governor.update();
+        governor.reset();
+        assertEquals(1f, governor.getScale(), 0f);
+        assertEquals(-1f, governor.getAverageMillis(), 0f);
+    }
+
+    @Test
+    public void scaleRangeClampsScale() {
+        governor.setScaleRange(0.25f, 0.75f);
+        assertEquals(0.75f, governor.getScale(), 0f);
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.framebuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.utils.Array;
+import com.crashinvaders.vfx.framebuffer.VfxFrameBufferPool.Bucket;
+
+public class VfxFrameBufferPoolTest {
+
+    @Test
+    public void leastRecentlyUsedIsOldestIdleBuffer() {
+        Bucket small = bucket(64, 64);
+        Bucket large = bucket(512, 512);
+        Bucket busy = bucket(128, 128);
+        small.idleSince.addAll(5, 9);
+        large.idleSince.addAll(3, 12);
+        Array<Bucket> buckets = new Array<>(
+                new Bucket[] { small, busy, large });
+
+        assertSame(large, VfxFrameBufferPool.findLeastRecentlyUsed(buckets));
+
+        large.idleSince.removeIndex(0);
+        assertSame(small, VfxFrameBufferPool.findLeastRecentlyUsed(buckets));
+    }
+
+    @Test
+    public void noLeastRecentlyUsedIfAllBuffersAreInUse() {
+        Array<Bucket> buckets = new Array<>(
+                new Bucket[] { bucket(64, 64), bucket(128, 128) });
+        assertNull(VfxFrameBufferPool.findLeastRecentlyUsed(buckets));
+    }
+
+    @Test
+    public void expiresBuffersIdleForTooLong() {
+        Bucket bucket = bucket(64, 64);
+        bucket.idleSince.addAll(10, 20, 30);
+
+        assertEquals(0, VfxFrameBufferPool.countExpired(bucket, 40, 30));
+        assertEquals(1, VfxFrameBufferPool.countExpired(bucket, 41, 30));
+        assertEquals(2, VfxFrameBufferPool.countExpired(bucket, 55, 30));
+        assertEquals(3, VfxFrameBufferPool.countExpired(bucket, 100, 30));
+    }
+
+    @Test
+    public void estimatesBytesOfAllAttachments() {
+        Bucket bucket = new Bucket(10, 10, VfxBufferFormat.RGBA8888,
+                new VfxBufferFormat[] { VfxBufferFormat.RGBA8888,
+                        VfxBufferFormat.RGBA16F },
+                null, null, false);
+        assertEquals(10 * 10 * (4 + 8), bucket.bytes);
+    }
+
+    private static Bucket bucket(int width, int height) {
+        return new Bucket(width, height, VfxBufferFormat.RGBA8888, null,
+                TextureFilter.Nearest, TextureFilter.Nearest, false);
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+public class VfxShaderSourceTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        VfxShaderSource.clearCache();
+    }
+
+    @Test
+    public void resolvesRelativeIncludes() throws IOException {
+        write("include/precision.glsl", "precision mediump float;\n");
+        write("include/common.glsl",
+                "#include \"precision.glsl\"\nfloat f();\n");
+        FileHandle shader = write("shader.frag",
+                "#include \"include/common.glsl\"\nvoid main() {}\n");
+
+        assertEquals("precision mediump float;\nfloat f();\nvoid main() {}\n",
+                VfxShaderSource.load(shader));
+    }
+
+    @Test
+    public void includesEachFileOnce() throws IOException {
+        write("a.glsl", "#include \"b.glsl\"\nA\n");
+        write("b.glsl", "#include \"a.glsl\"\nB\n");
+        FileHandle shader = write("shader.frag",
+                "#include \"a.glsl\"\n#include \"b.glsl\"\nmain\n");
+
+        // Skipped includes leave an empty line
+        assertEquals("\nB\nA\n\nmain\n", VfxShaderSource.load(shader));
+    }
+
+    @Test
+    public void keepsLinesThatAreNoIncludes() throws IOException {
+        String source = "// #include \"missing.glsl\"\n"
+                + "  #include missing.glsl\n#define INCLUDE 1";
+        FileHandle shader = write("shader.frag", source);
+
+        assertEquals(source, VfxShaderSource.load(shader));
+    }
+
+    @Test
+    public void acceptsIndentedIncludes() throws IOException {
+        write("a.glsl", "A");
+        FileHandle shader = write("shader.frag",
+                "\t #include  \"a.glsl\"\nmain");
+
+        assertEquals("A\nmain", VfxShaderSource.load(shader));
+    }
+
+    @Test
+    public void cachesLoadedSources() throws IOException {
+        FileHandle shader = write("shader.frag", "first");
+        String source = VfxShaderSource.load(shader);
+        write("shader.frag", "second");
+
+        assertSame(source, VfxShaderSource.load(shader));
+        VfxShaderSource.clearCache();
+        assertEquals("second", VfxShaderSource.load(shader));
+    }
+
+    @Test
+    public void preprocessesSourcesAgainstDirectory() throws IOException {
+        write("include/a.glsl", "A");
+        FileHandle directory = new FileHandle(folder.getRoot());
+
+        assertEquals("A\nmain", VfxShaderSource
+                .preprocess("#include \"include/a.glsl\"\nmain", directory));
+    }
+
+    @Test(expected = GdxRuntimeException.class)
+    public void failsOnMissingInclude() throws IOException {
+        FileHandle shader = write("shader.frag", "#include \"missing.glsl\"");
+        VfxShaderSource.load(shader);
+    }
+
+    private FileHandle write(String path, String content) throws IOException {
+        FileHandle file = new FileHandle(new File(folder.getRoot(), path));
+        file.writeString(content, false);
+        return file;
+    }
+}
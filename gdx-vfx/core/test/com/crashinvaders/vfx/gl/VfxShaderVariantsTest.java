@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.ObjectSet;
+
+public class VfxShaderVariantsTest {
+
+    private static VfxShaderVariants create() {
+        return new VfxShaderVariants(new FileHandle("shader.vert"),
+                new FileHandle("shader.frag"));
+    }
+
+    @Test
+    public void singleVariantWithoutAxes() {
+        VfxShaderVariants variants = create();
+        assertEquals(1, variants.getVariantCount());
+        assertEquals(0, variants.getIndex());
+        assertEquals("", variants.getDefines(0));
+    }
+
+    @Test
+    public void switchDefinesNameOnlyIfSet() {
+        VfxShaderVariants variants = create().addSwitch("SUPPORT_ALPHA");
+        assertEquals(2, variants.getVariantCount());
+        assertEquals("", variants.getDefines(variants.getIndex(0)));
+        assertEquals("#define SUPPORT_ALPHA",
+                variants.getDefines(variants.getIndex(1)));
+    }
+
+    @Test
+    public void axisDefinesDeclaredValue() {
+        VfxShaderVariants variants = create().addAxis("LENGTH", 3, 5, 9);
+        assertEquals(3, variants.getVariantCount());
+        assertEquals("#define LENGTH 5",
+                variants.getDefines(variants.getIndex(5)));
+        assertEquals("#define LENGTH 9",
+                variants.getDefines(variants.getIndex(9)));
+    }
+
+    @Test
+    public void everyCombinationHasItsOwnIndex() {
+        VfxShaderVariants variants = create().addAxis("TAPS", 4, 8, 12)
+                .addSwitch("VERTICAL").addAxis("MODE", 0, 1);
+        assertEquals(12, variants.getVariantCount());
+
+        ObjectSet<Integer> indices = new ObjectSet<>();
+        ObjectSet<String> defines = new ObjectSet<>();
+        for (int taps : new int[] { 4, 8, 12 }) {
+            for (int vertical = 0; vertical <= 1; vertical++) {
+                for (int mode = 0; mode <= 1; mode++) {
+                    int index = variants.getIndex(taps, vertical, mode);
+                    indices.add(index);
+
+                    String expected = "#define TAPS " + taps
+                            + (vertical == 1 ? "\n#define VERTICAL" : "")
+                            + "\n#define MODE " + mode;
+                    assertEquals(expected, variants.getDefines(index));
+                    defines.add(variants.getDefines(index));
+                }
+            }
+        }
+        assertEquals(12, indices.size);
+        assertEquals(12, defines.size);
+        for (int i = 0; i < 12; i++) {
+            assertEquals(true, indices.contains(i));
+        }
+    }
+
+    @Test
+    public void definesAreBuiltOnce() {
+        VfxShaderVariants variants = create().addSwitch("A");
+        assertSame(variants.getDefines(1), variants.getDefines(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void undeclaredValueIsRejected() {
+        create().addAxis("LENGTH", 3, 5).getIndex(4);
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.gl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.crashinvaders.vfx.effects.FusibleVfxEffect.FusedUniforms;
+import com.crashinvaders.vfx.gl.VfxUniform.FloatUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.Vec2Uniform;
+import com.crashinvaders.vfx.gl.VfxUniform.Vec3Uniform;
+
+public class VfxUniformTest {
+
+    @Test
+    public void changeCountOnlyCountsActualChanges() {
+        FloatUniform uniform = new FloatUniform("u_value", 1f);
+        assertEquals(0, uniform.getChangeCount());
+
+        uniform.set(1f);
+        assertEquals(0, uniform.getChangeCount());
+        uniform.set(2f);
+        assertEquals(1, uniform.getChangeCount());
+        uniform.set(2f);
+        assertEquals(1, uniform.getChangeCount());
+        uniform.set(3f);
+        assertEquals(2, uniform.getChangeCount());
+    }
+
+    @Test
+    public void changeCountOfEveryType() {
+        IntUniform intUniform = new IntUniform("u_int", 0);
+        intUniform.set(0);
+        intUniform.set(1);
+        assertEquals(1, intUniform.getChangeCount());
+
+        Vec2Uniform vec2Uniform = new Vec2Uniform("u_vec2");
+        vec2Uniform.set(0f, 0f);
+        vec2Uniform.set(1f, 0f);
+        vec2Uniform.set(new Vector2(1f, 0f));
+        vec2Uniform.set(1f, 2f);
+        assertEquals(2, vec2Uniform.getChangeCount());
+
+        Vec3Uniform vec3Uniform = new Vec3Uniform("u_vec3");
+        vec3Uniform.set(0f, 0f, 0f);
+        vec3Uniform.set(new Vector3(0f, 0f, 1f));
+        assertEquals(1, vec3Uniform.getChangeCount());
+    }
+
+    @Test
+    public void markingDirtyDoesNotCountAsChange() {
+        FloatUniform uniform = new FloatUniform("u_value", 1f);
+        uniform.markDirty();
+        uniform.invalidate();
+        assertEquals(0, uniform.getChangeCount());
+        assertTrue(uniform.isDirty());
+    }
+
+    @Test
+    public void applyToPassesCurrentValues() {
+        RecordingUniforms uniforms = new RecordingUniforms();
+        IntUniform intUniform = new IntUniform("u_int", 4);
+        FloatUniform floatUniform = new FloatUniform("u_float", 0.5f);
+        Vec2Uniform vec2Uniform = new Vec2Uniform("u_vec2");
+        vec2Uniform.set(1f, 2f);
+
+        intUniform.applyTo(uniforms);
+        floatUniform.applyTo(uniforms);
+        vec2Uniform.applyTo(uniforms);
+
+        assertEquals(4, uniforms.values.get("u_int"));
+        assertEquals(0.5f, uniforms.values.get("u_float"));
+        assertEquals(new Vector2(1f, 2f), uniforms.values.get("u_vec2"));
+        assertFalse(uniforms.values.containsKey("u_vec3"));
+    }
+
+    private static class RecordingUniforms implements FusedUniforms {
+
+        final ObjectMap<String, Object> values = new ObjectMap<>();
+
+        @Override
+        public void setUniformi(String uniformName, int value) {
+            values.put(uniformName, value);
+        }
+
+        @Override
+        public void setUniformf(String uniformName, float value) {
+            values.put(uniformName, value);
+        }
+
+        @Override
+        public void setUniformf(String uniformName, Vector2 value) {
+            values.put(uniformName, new Vector2(value));
+        }
+
+        @Override
+        public void setUniformf(String uniformName, Vector3 value) {
+            values.put(uniformName, new Vector3(value));
+        }
+    }
+}
@@ -1,13 +1,7 @@
 // Originally based on
 // https://github.com/spite/Wagner/blob/master/fragment-shaders/chromatic-aberration-fs.glsl
 
-#ifdef GL_ES
-	#define PRECISION mediump
-	precision PRECISION float;
-	precision PRECISION int;
-#else
-	#define PRECISION
-#endif
+#include "include/precision.glsl"
 
 #ifndef PASSES
 #error Please define PASSES
@@ -0,0 +1,34 @@
+#include "include/precision.glsl"
+
+// Dual Kawase blur (Bjorge 2015, "Bandwidth-Efficient Rendering").
+// Define UPSAMPLE for the upsample filter, otherwise the downsample filter
+// is used.
+
+uniform PRECISION sampler2D u_texture0;
+// Half of a source texel, scaled by the sample offset.
+uniform vec2 u_halfPixel;
+
+varying vec2 v_texCoords;
+
+void main() {
+	vec2 hp = u_halfPixel;
+
+#ifdef UPSAMPLE
+	vec4 sum = texture2D(u_texture0, v_texCoords + vec2(-hp.x * 2.0, 0.0));
+	sum += texture2D(u_texture0, v_texCoords + vec2(-hp.x, hp.y)) * 2.0;
+	sum += texture2D(u_texture0, v_texCoords + vec2(0.0, hp.y * 2.0));
+	sum += texture2D(u_texture0, v_texCoords + vec2(hp.x, hp.y)) * 2.0;
+	sum += texture2D(u_texture0, v_texCoords + vec2(hp.x * 2.0, 0.0));
+	sum += texture2D(u_texture0, v_texCoords + vec2(hp.x, -hp.y)) * 2.0;
+	sum += texture2D(u_texture0, v_texCoords + vec2(0.0, -hp.y * 2.0));
+	sum += texture2D(u_texture0, v_texCoords + vec2(-hp.x, -hp.y)) * 2.0;
+	gl_FragColor = sum / 12.0;
+#else
+	vec4 sum = texture2D(u_texture0, v_texCoords) * 4.0;
+	sum += texture2D(u_texture0, v_texCoords - hp);
+	sum += texture2D(u_texture0, v_texCoords + hp);
+	sum += texture2D(u_texture0, v_texCoords + vec2(hp.x, -hp.y));
+	sum += texture2D(u_texture0, v_texCoords - vec2(hp.x, -hp.y));
+	gl_FragColor = sum / 8.0;
+#endif
+}
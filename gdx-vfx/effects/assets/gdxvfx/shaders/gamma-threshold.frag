@@ -1,10 +1,4 @@
-#ifdef GL_ES
-	#define PRECISION mediump
-	precision PRECISION float;
-	precision PRECISION int;
-#else
-	#define PRECISION
-#endif
+#include "include/precision.glsl"
 
 #ifndef THRESHOLD_TYPE
 	#error Please define THRESHOLD_TYPE
@@ -21,19 +15,22 @@ varying vec2 v_texCoords;
 
 void main() {
 	vec4 tex = texture2D(u_texture0, v_texCoords);
+	vec4 bright;
 
 #if THRESHOLD_TYPE == RGBA
-	gl_FragColor = (tex - vec4(u_threshold)) * u_thresholdInv;
+	bright = (tex - vec4(u_threshold)) * u_thresholdInv;
 
 #elif THRESHOLD_TYPE == RGB
-	gl_FragColor.a = tex.a;
-	gl_FragColor.rgb = (tex.rgb - u_threshold) * u_thresholdInv;
+	bright.a = tex.a;
+	bright.rgb = (tex.rgb - u_threshold) * u_thresholdInv;
 
 #elif THRESHOLD_TYPE == ALPHA_PREMULTIPLIED
-	gl_FragColor = (tex.rgb - u_threshold) * u_thresholdInv * tex.a, tex.a;
+	bright = vec4((tex.rgb - u_threshold) * u_thresholdInv * tex.a, tex.a);
 
 #else
 	#error Unexpected THRESHOLD_TYPE value
 
 #endif
-}
\ No newline at end of file
+
+	gl_FragColor = bright;
+}
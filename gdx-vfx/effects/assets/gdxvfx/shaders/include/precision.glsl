@@ -0,0 +1,8 @@
+// Default precision, shared by all shaders.
+#ifdef GL_ES
+	#define PRECISION mediump
+	precision PRECISION float;
+	precision PRECISION int;
+#else
+	#define PRECISION
+#endif
@@ -1,12 +1,6 @@
 // Simple lens flare implementation by Toni Sagrista
 
-#ifdef GL_ES
-	#define PRECISION mediump
-	precision PRECISION float;
-	precision PRECISION int;
-#else
-	#define PRECISION
-#endif
+#include "include/precision.glsl"
 
 uniform sampler2D u_texture0;
 
@@ -0,0 +1,44 @@
+#include "include/precision.glsl"
+
+// 13-tap downsample filter (Jimenez 2014, "Next Generation Post Processing
+// in Call of Duty: Advanced Warfare"). Halves the source while avoiding the
+// aliasing of a plain bilinear downsample.
+
+uniform PRECISION sampler2D u_texture0;
+// Size of a source texel.
+uniform vec2 u_texelSize;
+#ifdef THRESHOLD
+uniform float u_threshold;
+uniform float u_thresholdInv;
+#endif
+
+varying vec2 v_texCoords;
+
+void main() {
+	vec2 d = u_texelSize;
+
+	vec4 a = texture2D(u_texture0, v_texCoords + d * vec2(-2.0, -2.0));
+	vec4 b = texture2D(u_texture0, v_texCoords + d * vec2( 0.0, -2.0));
+	vec4 c = texture2D(u_texture0, v_texCoords + d * vec2( 2.0, -2.0));
+	vec4 e = texture2D(u_texture0, v_texCoords + d * vec2(-2.0,  0.0));
+	vec4 f = texture2D(u_texture0, v_texCoords);
+	vec4 g = texture2D(u_texture0, v_texCoords + d * vec2( 2.0,  0.0));
+	vec4 h = texture2D(u_texture0, v_texCoords + d * vec2(-2.0,  2.0));
+	vec4 i = texture2D(u_texture0, v_texCoords + d * vec2( 0.0,  2.0));
+	vec4 j = texture2D(u_texture0, v_texCoords + d * vec2( 2.0,  2.0));
+	vec4 k = texture2D(u_texture0, v_texCoords + d * vec2(-1.0, -1.0));
+	vec4 l = texture2D(u_texture0, v_texCoords + d * vec2( 1.0, -1.0));
+	vec4 m = texture2D(u_texture0, v_texCoords + d * vec2(-1.0,  1.0));
+	vec4 n = texture2D(u_texture0, v_texCoords + d * vec2( 1.0,  1.0));
+
+	vec4 color = f * 0.125;
+	color += (a + c + h + j) * 0.03125;
+	color += (b + e + g + i) * 0.0625;
+	color += (k + l + m + n) * 0.125;
+
+#ifdef THRESHOLD
+	color = max(color - vec4(u_threshold), 0.0) * u_thresholdInv;
+#endif
+
+	gl_FragColor = color;
+}
@@ -0,0 +1,26 @@
+#include "include/precision.glsl"
+
+// 9-tap tent filter, used to upsample a level of a downsample pyramid.
+
+uniform PRECISION sampler2D u_texture0;
+// Size of a source texel.
+uniform vec2 u_texelSize;
+uniform float u_radius;
+
+varying vec2 v_texCoords;
+
+void main() {
+	vec2 d = u_texelSize * u_radius;
+
+	vec4 color = texture2D(u_texture0, v_texCoords) * 4.0;
+	color += texture2D(u_texture0, v_texCoords + vec2(-d.x, 0.0)) * 2.0;
+	color += texture2D(u_texture0, v_texCoords + vec2( d.x, 0.0)) * 2.0;
+	color += texture2D(u_texture0, v_texCoords + vec2(0.0, -d.y)) * 2.0;
+	color += texture2D(u_texture0, v_texCoords + vec2(0.0,  d.y)) * 2.0;
+	color += texture2D(u_texture0, v_texCoords + vec2(-d.x, -d.y));
+	color += texture2D(u_texture0, v_texCoords + vec2( d.x, -d.y));
+	color += texture2D(u_texture0, v_texCoords + vec2(-d.x,  d.y));
+	color += texture2D(u_texture0, v_texCoords + vec2( d.x,  d.y));
+
+	gl_FragColor = color * 0.0625;
+}
@@ -1,13 +1,7 @@
 // Originally based on
 // https://www.shadertoy.com/view/MtlyDX
 
-#ifdef GL_ES
-	#define PRECISION mediump
-	precision PRECISION float;
-	precision PRECISION int;
-#else
-	#define PRECISION
-#endif
+#include "include/precision.glsl"
 
 uniform sampler2D u_texture0;
 uniform vec2 u_resolution;
@@ -19,18 +19,27 @@ package com.crashinvaders.vfx.effects;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
+import com.crashinvaders.vfx.VfxMemoryReport;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.effects.GaussianBlurEffect.BlurType;
 import com.crashinvaders.vfx.effects.util.CombineEffect;
 import com.crashinvaders.vfx.effects.util.CopyEffect;
 import com.crashinvaders.vfx.effects.util.GammaThresholdEffect;
+import com.crashinvaders.vfx.effects.util.MipDownsampleEffect;
+import com.crashinvaders.vfx.effects.util.MipUpsampleEffect;
+import com.crashinvaders.vfx.framebuffer.VfxBufferFormat;
+import com.crashinvaders.vfx.framebuffer.VfxMipChain;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
 import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.graph.VfxRenderGraph;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
 public class BloomEffect extends CompositeVfxEffect implements ChainVfxEffect {
 
+    /** The default number of levels of the {@link Mode#MipChain} pyramid. */
+    public static final int DEFAULT_MIP_LEVELS = 6;
+
     private final CopyEffect copy;
     private final GaussianBlurEffect blur;
     private final GammaThresholdEffect threshold;
@@ -39,6 +48,18 @@ public class BloomEffect extends CompositeVfxEffect implements ChainVfxEffect {
     private boolean blending = false;
     private int sfactor, dfactor;
 
+    private boolean blendingWasEnabled = false;
+
+    private VfxBufferFormat bufferFormat = VfxBufferFormat.RGBA8888;
+    private int renderPassesRevision;
+
+    private Mode mode = Mode.Gaussian;
+    private final VfxMipChain mipChain = new VfxMipChain(DEFAULT_MIP_LEVELS);
+    // Created once the mode is set
+    private MipDownsampleEffect thresholdDownsample;
+    private MipDownsampleEffect downsample;
+    private MipUpsampleEffect upsample;
+
     public BloomEffect() {
         this(new Settings(10, 0.85f, 1f, .85f, 1.1f, .85f));
     }
@@ -53,22 +74,65 @@ public class BloomEffect extends CompositeVfxEffect implements ChainVfxEffect {
         applySettings(settings);
     }
 
+    @Override
+    public void rebind() {
+        super.rebind();
+        mipChain.rebind();
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        mipChain.dispose();
+    }
+
+    @Override
+    public void reportMemory(VfxMemoryReport report) {
+        super.reportMemory(report);
+        mipChain.reportMemory(report, this);
+    }
+
+    /** Just the original scene without the bloom contribution. */
+    @Override
+    public boolean isIdentity() {
+        return !blending && getBloomIntensity() == 0f
+                && getBaseIntensity() == 1f && getBaseSaturation() == 1f;
+    }
+
+    @Override
+    public int getRenderPassesRevision() {
+        return renderPassesRevision;
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
+        if (mode == Mode.MipChain) {
+            // The source buffer is left untouched, no need to preserve it.
+            renderMipChain(context, buffers.getSrcBuffer(),
+                    buffers.getDstBuffer());
+            return;
+        }
+
         // Preserve the input buffer data.
         NestableFrameBuffer origSrc = context.getBufferPool().obtain();
+        beginSubPass(context, copy);
         copy.render(context, buffers.getSrcBuffer(), origSrc);
+        endSubPass(context);
 
         boolean blendingWasEnabled = VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
         Gdx.gl.glDisable(GL20.GL_BLEND);
 
         // High-pass filter
         // Only areas with pixels >= threshold are blit.
+        beginSubPass(context, threshold);
         threshold.render(context, buffers);
+        endSubPass(context);
         buffers.swap();
 
         // Blur pass
+        beginSubPass(context, blur);
         blur.render(context, buffers);
+        endSubPass(context);
         buffers.swap();
 
         if (blending || blendingWasEnabled) {
@@ -83,12 +147,127 @@ public class BloomEffect extends CompositeVfxEffect implements ChainVfxEffect {
         }
 
         // Mix original scene and blurred result).
+        beginSubPass(context, combine);
         combine.render(context, origSrc, buffers.getSrcBuffer(),
                 buffers.getDstBuffer());
+        endSubPass(context);
 
         context.getBufferPool().free(origSrc);
     }
 
+    /**
+     * Declares the bloom stages as separate passes. Unlike
+     * {@link #render(VfxRenderContext, VfxPingPongWrapper)}, the original
+     * scene doesn't have to be preserved, as the combine pass reads it
+     * straight from the chain's source buffer.
+     */
+    @Override
+    public void setupRenderPasses(VfxRenderGraph.Builder builder) {
+        if (mode == Mode.MipChain) {
+            // The pyramid buffers are owned by the effect.
+            builder.addPass((context, resources) -> renderMipChain(context,
+                    resources.get(VfxRenderGraph.CHAIN_SRC),
+                    resources.get(VfxRenderGraph.CHAIN_DST)))
+                    .reads(VfxRenderGraph.CHAIN_SRC)
+                    .writes(VfxRenderGraph.CHAIN_DST);
+            return;
+        }
+
+        final int bright = builder.createTransient(bufferFormat);
+        final int blurred = builder.createTransient(bufferFormat);
+
+        // High-pass filter
+        // Only areas with pixels >= threshold are blit.
+        builder.addPass((context, resources) -> {
+            blendingWasEnabled = VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
+            Gdx.gl.glDisable(GL20.GL_BLEND);
+
+            beginSubPass(context, threshold);
+            threshold.render(context,
+                    resources.get(VfxRenderGraph.CHAIN_SRC),
+                    resources.get(bright));
+            endSubPass(context);
+        }).reads(VfxRenderGraph.CHAIN_SRC).writes(bright);
+
+        // Blur pass
+        builder.addPass((context, resources) -> {
+            beginSubPass(context, blur);
+            blur.render(context, resources.pingPong(bright, blurred));
+            endSubPass(context);
+        }).reads(bright).writes(blurred);
+
+        // Mix original scene and blurred result.
+        builder.addPass((context, resources) -> {
+            if (blending || blendingWasEnabled) {
+                Gdx.gl.glEnable(GL20.GL_BLEND);
+            }
+
+            if (blending) {
+                Gdx.gl.glBlendFunc(sfactor, dfactor);
+            }
+
+            beginSubPass(context, combine);
+            combine.render(context, resources.get(VfxRenderGraph.CHAIN_SRC),
+                    resources.get(blurred),
+                    resources.get(VfxRenderGraph.CHAIN_DST));
+            endSubPass(context);
+        }).reads(VfxRenderGraph.CHAIN_SRC, blurred)
+                .writes(VfxRenderGraph.CHAIN_DST);
+    }
+
+    /**
+     * Renders the bloom through a downsample pyramid: the first 13-tap
+     * downsample applies the threshold, each further one halves the previous
+     * level. The levels are then upsampled with a tent filter and accumulated
+     * with additive blending. The result, at half resolution, is combined
+     * with the source.
+     */
+    private void renderMipChain(VfxRenderContext context,
+            NestableFrameBuffer src, NestableFrameBuffer dst) {
+        mipChain.ensure(src.getWidth(), src.getHeight());
+        final int levels = mipChain.getLevelCount();
+        if (levels == 0) {
+            copy.render(context, src, dst);
+            return;
+        }
+
+        blendingWasEnabled = VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+
+        // Downsample pass, the first step doubles as the high-pass filter.
+        beginSubPass(context, downsample);
+        thresholdDownsample.render(context, src, mipChain.getLevel(0));
+        for (int i = 1; i < levels; i++) {
+            downsample.render(context, mipChain.getLevel(i - 1),
+                    mipChain.getLevel(i));
+        }
+        endSubPass(context);
+
+        // Upsample pass, each level adds up with the one above.
+        beginSubPass(context, upsample);
+        Gdx.gl.glEnable(GL20.GL_BLEND);
+        Gdx.gl.glBlendFunc(GL20.GL_ONE, GL20.GL_ONE);
+        for (int i = levels - 1; i > 0; i--) {
+            upsample.render(context, mipChain.getLevel(i),
+                    mipChain.getLevel(i - 1));
+        }
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+        endSubPass(context);
+
+        if (blending || blendingWasEnabled) {
+            Gdx.gl.glEnable(GL20.GL_BLEND);
+        }
+
+        if (blending) {
+            Gdx.gl.glBlendFunc(sfactor, dfactor);
+        }
+
+        // Mix original scene and the bloom.
+        beginSubPass(context, combine);
+        combine.render(context, src, mipChain.getLevel(0), dst);
+        endSubPass(context);
+    }
+
     public float getBaseIntensity() {
         return combine.getSource1Intensity();
     }
@@ -129,6 +308,15 @@ public class BloomEffect extends CompositeVfxEffect implements ChainVfxEffect {
         blur.setPasses(passes);
     }
 
+    public boolean isCollapseBlurPasses() {
+        return blur.isCollapsePasses();
+    }
+
+    /** @see GaussianBlurEffect#setCollapsePasses(boolean) */
+    public void setCollapseBlurPasses(boolean collapse) {
+        blur.setCollapsePasses(collapse);
+    }
+
     public float getBlurAmount() {
         return blur.getAmount();
     }
@@ -155,16 +343,79 @@ public class BloomEffect extends CompositeVfxEffect implements ChainVfxEffect {
 
     public void setThreshold(float gamma) {
         threshold.setGamma(gamma);
+        if (thresholdDownsample != null) {
+            thresholdDownsample.setThreshold(gamma);
+        }
     }
 
     public void enableBlending(int sfactor, int dfactor) {
         this.blending = true;
         this.sfactor = sfactor;
         this.dfactor = dfactor;
+        markChanged();
     }
 
     public void disableBlending() {
         this.blending = false;
+        markChanged();
+    }
+
+    public VfxBufferFormat getBufferFormat() {
+        return bufferFormat;
+    }
+
+    /**
+     * Sets the format of the intermediate bright-pass and blur buffers, e.g.
+     * {@link VfxBufferFormat#R11G11B10F} for HDR bloom. If the format is not
+     * supported, a fallback format is used.
+     */
+    public void setBufferFormat(VfxBufferFormat bufferFormat) {
+        if (this.bufferFormat == bufferFormat)
+            return;
+        this.bufferFormat = bufferFormat;
+        mipChain.setFormat(bufferFormat);
+        // The transient buffers of the render graph have to be recreated.
+        renderPassesRevision++;
+        markChanged();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the way the bloom is blurred. The shaders of
+     * {@link Mode#MipChain} are compiled right away, when it is set for the
+     * first time.
+     */
+    public void setMode(Mode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode cannot be null.");
+        }
+        if (this.mode == mode)
+            return;
+        if (mode == Mode.MipChain && downsample == null) {
+            thresholdDownsample = register(new MipDownsampleEffect(true));
+            thresholdDownsample.setThreshold(threshold.getGamma());
+            downsample = register(new MipDownsampleEffect(false));
+            upsample = register(new MipUpsampleEffect());
+        }
+        this.mode = mode;
+        renderPassesRevision++;
+        markChanged();
+    }
+
+    public int getMipLevels() {
+        return mipChain.getMaxLevels();
+    }
+
+    /**
+     * Sets the maximum number of pyramid levels of {@link Mode#MipChain},
+     * starting at half resolution. More levels make a wider bloom.
+     */
+    public void setMipLevels(int levels) {
+        mipChain.setMaxLevels(levels);
+        markChanged();
     }
 
     public BlurType getBlurType() {
@@ -191,6 +442,19 @@ public class BloomEffect extends CompositeVfxEffect implements ChainVfxEffect {
         setBlurType(settings.blurType);
     }
 
+    public enum Mode {
+        /**
+         * Thresholds and blurs at full resolution, with
+         * {@link GaussianBlurEffect}.
+         */
+        Gaussian,
+        /**
+         * Blurs through a 1/2 to 1/64 resolution downsample pyramid. Much
+         * cheaper for wide, soft bloom. The blur settings are ignored.
+         */
+        MipChain,
+    }
+
     public static class Settings {
 
         public final BlurType blurType;
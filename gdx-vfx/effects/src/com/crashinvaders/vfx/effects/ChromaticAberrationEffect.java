@@ -62,6 +62,11 @@ public class ChromaticAberrationEffect extends ShaderVfxEffect
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
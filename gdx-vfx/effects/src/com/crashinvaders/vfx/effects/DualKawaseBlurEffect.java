@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.effects;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.crashinvaders.vfx.VfxMemoryReport;
+import com.crashinvaders.vfx.VfxRenderContext;
+import com.crashinvaders.vfx.framebuffer.VfxMipChain;
+import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
+import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderVariants;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.Vec2Uniform;
+
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Blurs by repeatedly halving the frame with a 5-tap filter and scaling it back
+ * up with an 8-tap filter (Dual Kawase). The number of halving steps grows
+ * with the logarithm of the radius, which makes large radii far cheaper than
+ * with a separable gaussian kernel.
+ * <p>
+ * The radius is continuous: it selects the number of steps and scales the
+ * sample offsets in between.
+ */
+public class DualKawaseBlurEffect extends CompositeVfxEffect
+        implements ChainVfxEffect {
+
+    /** The maximum number of halving steps. */
+    public static final int MAX_ITERATIONS = 8;
+
+    private final KawaseSampleEffect down;
+    private final KawaseSampleEffect up;
+    private final VfxMipChain mipChain = new VfxMipChain(1);
+
+    private float radius;
+    private float renderScale = 1f;
+    private int iterations;
+    private float offset;
+
+    public DualKawaseBlurEffect() {
+        this(8f);
+    }
+
+    public DualKawaseBlurEffect(float radius) {
+        down = register(new KawaseSampleEffect(false));
+        up = register(new KawaseSampleEffect(true));
+        setRadius(radius);
+    }
+
+    @Override
+    public void rebind() {
+        super.rebind();
+        mipChain.rebind();
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        mipChain.dispose();
+    }
+
+    @Override
+    public void reportMemory(VfxMemoryReport report) {
+        super.reportMemory(report);
+        mipChain.reportMemory(report, this);
+    }
+
+    /** Scales the radius to keep the blur the same size on screen. */
+    @Override
+    public void setRenderScale(float scale) {
+        super.setRenderScale(scale);
+        this.renderScale = scale;
+        updateIterations();
+    }
+
+    @Override
+    public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
+        render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
+    }
+
+    public void render(VfxRenderContext context, NestableFrameBuffer src,
+            NestableFrameBuffer dst) {
+        mipChain.ensure(src.getWidth(), src.getHeight());
+        final int levels = mipChain.getLevelCount();
+        if (levels == 0) {
+            // Nothing to halve, pass the frame through.
+            up.setOffset(0f);
+            up.render(context, src, dst);
+            return;
+        }
+
+        // The intermediate levels must not be blended.
+        boolean blendingWasEnabled = VfxGLUtils.isGLEnabled(GL20.GL_BLEND);
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+
+        beginSubPass(context, down);
+        down.setOffset(offset);
+        down.render(context, src, mipChain.getLevel(0));
+        for (int i = 1; i < levels; i++) {
+            down.render(context, mipChain.getLevel(i - 1),
+                    mipChain.getLevel(i));
+        }
+        endSubPass(context);
+
+        beginSubPass(context, up);
+        up.setOffset(offset);
+        for (int i = levels - 1; i > 0; i--) {
+            up.render(context, mipChain.getLevel(i), mipChain.getLevel(i - 1));
+        }
+        if (blendingWasEnabled) {
+            Gdx.gl.glEnable(GL20.GL_BLEND);
+        }
+        up.render(context, mipChain.getLevel(0), dst);
+        endSubPass(context);
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    /**
+     * Sets the blur radius in pixels. The cost grows with
+     * <code>log2(radius)</code>.
+     */
+    public void setRadius(float radius) {
+        if (radius < 0f) {
+            throw new IllegalArgumentException("Radius cannot be negative.");
+        }
+        this.radius = radius;
+        updateIterations();
+    }
+
+    private void updateIterations() {
+        float scaledRadius = radius * renderScale;
+
+        // Each step doubles the reach of the previous one. The offset scales
+        // the taps in [1, 2) in between to keep the radius continuous.
+        int n = 1;
+        while (n < MAX_ITERATIONS && (1 << (n + 1)) <= scaledRadius) {
+            n++;
+        }
+        this.iterations = n;
+        this.offset = scaledRadius / (1 << n);
+        mipChain.setMaxLevels(n);
+        markChanged();
+    }
+
+    /** @return the number of halving steps for the current radius. */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** A single downsample or upsample step. */
+    public static final class KawaseSampleEffect extends ShaderVfxEffect {
+
+        private static final String U_TEXTURE0 = "u_texture0";
+        private static final String U_HALF_PIXEL = "u_halfPixel";
+
+        private static VfxShaderVariants variants;
+
+        private final Vec2Uniform halfPixel = registerUniform(
+                new Vec2Uniform(U_HALF_PIXEL));
+        private float offset = 1f;
+
+        public KawaseSampleEffect(boolean upsample) {
+            super(getShaderVariants()
+                    .obtain(getShaderVariants().getIndex(upsample ? 1 : 0)));
+            registerUniform(new IntUniform(U_TEXTURE0, TEXTURE_HANDLE0));
+        }
+
+        /** @return the shader variants, spanned by the upsample switch. */
+        public static VfxShaderVariants getShaderVariants() {
+            if (variants == null) {
+                variants = new VfxShaderVariants(
+                        Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
+                        Gdx.files.classpath("gdxvfx/shaders/dual-kawase.frag"))
+                                .addSwitch("UPSAMPLE");
+            }
+            return variants;
+        }
+
+        public void render(VfxRenderContext context, NestableFrameBuffer src,
+                NestableFrameBuffer dst) {
+            halfPixel.set(0.5f * offset / src.getWidth(),
+                    0.5f * offset / src.getHeight());
+            // Bind src buffer's texture as a primary one.
+            src.getColorBufferTexture().bind(TEXTURE_HANDLE0);
+            // Apply shader effect and render result to dst buffer.
+            renderShader(context, dst);
+        }
+
+        public void setOffset(float offset) {
+            this.offset = offset;
+        }
+    }
+}
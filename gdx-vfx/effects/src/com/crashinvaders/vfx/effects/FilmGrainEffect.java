@@ -19,41 +19,45 @@ package com.crashinvaders.vfx.effects;
 import com.badlogic.gdx.Gdx;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
-import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderRegistry;
+import com.crashinvaders.vfx.gl.VfxShaderSource;
+import com.crashinvaders.vfx.gl.VfxUniform.FloatUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
-public class FilmGrainEffect extends ShaderVfxEffect implements ChainVfxEffect {
+public class FilmGrainEffect extends ShaderVfxEffect
+        implements FusibleVfxEffect {
 
     private static final String U_TEXTURE0 = "u_texture0";
     private static final String U_SEED = "u_seed";
     private static final String U_NOISE_AMOUNT = "u_noiseAmount";
 
-    private float seed = 0f;
-    private float noiseAmount = 0.18f;
+    private static final String FRAGMENT_SHADER = "gdxvfx/shaders/film-grain.frag";
+
+    private final FloatUniform seed = registerUniform(
+            new FloatUniform(U_SEED, 0f));
+    private final FloatUniform noiseAmount = registerUniform(
+            new FloatUniform(U_NOISE_AMOUNT, 0.18f));
 
     public FilmGrainEffect() {
-        super(VfxGLUtils.compileShader(
+        super(VfxShaderRegistry.obtain(
                 Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
-                Gdx.files.classpath("gdxvfx/shaders/film-grain.frag")));
-        rebind();
+                Gdx.files.classpath(FRAGMENT_SHADER)));
+        registerUniform(new IntUniform(U_TEXTURE0, TEXTURE_HANDLE0));
     }
 
     @Override
     public void update(float delta) {
         super.update(delta);
-        float newSeedValue = (this.seed + delta) % 1f;
+        float newSeedValue = (seed.get() + delta) % 1f;
         setSeed(newSeedValue);
     }
 
+    /** Every pixel is processed on its own. */
     @Override
-    public void rebind() {
-        super.rebind();
-        program.begin();
-        program.setUniformi(U_TEXTURE0, TEXTURE_HANDLE0);
-        program.setUniformf(U_SEED, seed);
-        program.setUniformf(U_NOISE_AMOUNT, noiseAmount);
-        program.begin();
+    public int getSamplingFootprint() {
+        return 0;
     }
 
     @Override
@@ -69,21 +73,29 @@ public class FilmGrainEffect extends ShaderVfxEffect implements ChainVfxEffect {
         renderShader(context, dst);
     }
 
+    @Override
+    public String getFragmentSource() {
+        return VfxShaderSource.load(Gdx.files.classpath(FRAGMENT_SHADER));
+    }
+
+    @Override
+    public void applyFusedUniforms(FusedUniforms uniforms) {
+        applyUniforms(uniforms);
+    }
+
     public float getSeed() {
-        return seed;
+        return seed.get();
     }
 
     public void setSeed(float seed) {
-        this.seed = seed;
-        setUniform(U_SEED, seed);
+        this.seed.set(seed);
     }
 
     public float getNoiseAmount() {
-        return noiseAmount;
+        return noiseAmount.get();
     }
 
     public void setNoiseAmount(float noiseAmount) {
-        this.noiseAmount = noiseAmount;
-        setUniform(U_NOISE_AMOUNT, noiseAmount);
+        this.noiseAmount.set(noiseAmount);
     }
 }
@@ -51,6 +51,11 @@ public class FisheyeEffect extends ShaderVfxEffect implements ChainVfxEffect {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
@@ -17,10 +17,12 @@
 package com.crashinvaders.vfx.effects;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.math.Vector2;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
-import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderVariants;
+import com.crashinvaders.vfx.gl.VfxUniform.FloatUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.Vec2Uniform;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
@@ -39,10 +41,16 @@ public class FxaaEffect extends ShaderVfxEffect implements ChainVfxEffect {
     private static final String U_FXAA_REDUCE_MUL = "u_fxaaReduceMul";
     private static final String U_FXAA_SPAN_MAX = "u_fxaaSpanMax";
 
-    private final Vector2 viewportInverse = new Vector2();
-    private float fxaaReduceMin;
-    private float fxaaReduceMul;
-    private float fxaaSpanMax;
+    private static VfxShaderVariants variants;
+
+    private final Vec2Uniform viewportInverse = registerUniform(
+            new Vec2Uniform(U_VIEWPORT_INVERSE));
+    private final FloatUniform fxaaReduceMin = registerUniform(
+            new FloatUniform(U_FXAA_REDUCE_MIN, 1f / 128f));
+    private final FloatUniform fxaaReduceMul = registerUniform(
+            new FloatUniform(U_FXAA_REDUCE_MUL, 1f / 8f));
+    private final FloatUniform fxaaSpanMax = registerUniform(
+            new FloatUniform(U_FXAA_SPAN_MAX, 8f));
 
     public FxaaEffect() {
         this(1f / 128f, 1f / 8f, 8f, true);
@@ -50,33 +58,35 @@ public class FxaaEffect extends ShaderVfxEffect implements ChainVfxEffect {
 
     public FxaaEffect(float fxaaReduceMin, float fxaaReduceMul,
             float fxaaSpanMax, boolean supportAlpha) {
-        super(VfxGLUtils.compileShader(
-                Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
-                Gdx.files.classpath("gdxvfx/shaders/fxaa.frag"),
-                supportAlpha ? "#define SUPPORT_ALPHA" : ""));
-        this.fxaaReduceMin = fxaaReduceMin;
-        this.fxaaReduceMul = fxaaReduceMul;
-        this.fxaaSpanMax = fxaaSpanMax;
-        rebind();
+        super(getShaderVariants()
+                .obtain(getShaderVariants().getIndex(supportAlpha ? 1 : 0)));
+        registerUniform(new IntUniform(U_TEXTURE0, TEXTURE_HANDLE0));
+        this.fxaaReduceMin.set(fxaaReduceMin);
+        this.fxaaReduceMul.set(fxaaReduceMul);
+        this.fxaaSpanMax.set(fxaaSpanMax);
     }
 
     @Override
     public void resize(int width, int height) {
         super.resize(width, height);
-        this.viewportInverse.set(1f / width, 1f / height);
-        setUniform(U_VIEWPORT_INVERSE, this.viewportInverse);
+        viewportInverse.set(1f / width, 1f / height);
+    }
+
+    /** @return the shader variants, spanned by the alpha support switch. */
+    public static VfxShaderVariants getShaderVariants() {
+        if (variants == null) {
+            variants = new VfxShaderVariants(
+                    Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
+                    Gdx.files.classpath("gdxvfx/shaders/fxaa.frag"))
+                            .addSwitch("SUPPORT_ALPHA");
+        }
+        return variants;
     }
 
+    /** The samples are spread along the edge up to the span. */
     @Override
-    public void rebind() {
-        super.rebind();
-        program.begin();
-        program.setUniformi(U_TEXTURE0, TEXTURE_HANDLE0);
-        program.setUniformf(U_VIEWPORT_INVERSE, viewportInverse);
-        program.setUniformf(U_FXAA_REDUCE_MIN, fxaaReduceMin);
-        program.setUniformf(U_FXAA_REDUCE_MUL, fxaaReduceMul);
-        program.setUniformf(U_FXAA_SPAN_MAX, fxaaSpanMax);
-        program.end();
+    public int getSamplingFootprint() {
+        return (int) Math.ceil(fxaaSpanMax.get()) + 1;
     }
 
     @Override
@@ -84,6 +94,11 @@ public class FxaaEffect extends ShaderVfxEffect implements ChainVfxEffect {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
@@ -98,8 +113,7 @@ public class FxaaEffect extends ShaderVfxEffect implements ChainVfxEffect {
      * @param value
      */
     public void setReduceMin(float value) {
-        this.fxaaReduceMin = value;
-        setUniform(U_FXAA_REDUCE_MIN, this.fxaaReduceMin);
+        fxaaReduceMin.set(value);
     }
 
     /**
@@ -108,8 +122,7 @@ public class FxaaEffect extends ShaderVfxEffect implements ChainVfxEffect {
      * @param value
      */
     public void setReduceMul(float value) {
-        this.fxaaReduceMul = value;
-        setUniform(U_FXAA_REDUCE_MUL, this.fxaaReduceMul);
+        fxaaReduceMul.set(value);
     }
 
     /**
@@ -118,7 +131,6 @@ public class FxaaEffect extends ShaderVfxEffect implements ChainVfxEffect {
      * @param value
      */
     public void setSpanMax(float value) {
-        this.fxaaSpanMax = value;
-        setUniform(U_FXAA_SPAN_MAX, this.fxaaSpanMax);
+        fxaaSpanMax.set(value);
     }
 }
@@ -17,14 +17,20 @@
 package com.crashinvaders.vfx.effects;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.crashinvaders.vfx.VfxMemoryReport;
+import com.crashinvaders.vfx.VfxProfiler;
 import com.crashinvaders.vfx.VfxRenderContext;
+import com.crashinvaders.vfx.effects.util.GaussianKernel;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
-import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderRegistry;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
 public class GaussianBlurEffect extends AbstractVfxEffect
-        implements ChainVfxEffect {
+        implements ChainVfxEffect, VfxMemoryReport.Reporter,
+        ScalableVfxEffect {
 
     private enum Tap {
         Tap3x3(1), Tap5x5(2),
@@ -43,6 +49,19 @@ public class GaussianBlurEffect extends AbstractVfxEffect
                                                            // "higher-then-discard")
         Gaussian5x5(Tap.Tap5x5), Gaussian5x5b(Tap.Tap5x5), // R=9 (19x19, policy
                                                            // "higher-then-discard")
+        /**
+         * Gaussian of arbitrary sigma (set via
+         * {@link GaussianBlurEffect#setAmount(float)}), sampled with merged
+         * bilinear taps. The tap count follows the sigma, up to
+         * {@link GaussianKernel#MAX_TAPS}.
+         */
+        Gaussian(null),
+        /**
+         * Downsample/upsample blur, see {@link DualKawaseBlurEffect}. Uses
+         * {@link GaussianBlurEffect#setRadius(float)} instead of the amount
+         * and the passes.
+         */
+        DualKawase(null),
         ;
 
         public final Tap tap;
@@ -52,13 +71,29 @@ public class GaussianBlurEffect extends AbstractVfxEffect
         }
     }
 
+    // @formatter:off
+    private static final float[] WEIGHTS_3X3B = { 0.352941f, 0.294118f, 0.352941f };
+    private static final float[] OFFSETS_3X3B = { -1.33333f, 0f, 1.33333f };
+    private static final float[] WEIGHTS_5X5B = { 0.0702703f, 0.316216f, 0.227027f, 0.316216f, 0.0702703f };
+    private static final float[] OFFSETS_5X5B = { -3.23077f, -1.38462f, 0f, 1.38462f, 3.23077f };
+    // @formatter:on
+
     private BlurType type;
     private float amount = 1f;
     private int passes = 1;
 
+    private boolean collapsePasses = false;
+    private float maxKernelError = GaussianKernel.DEFAULT_MAX_ERROR;
+    private Convolve2DEffect collapsed;
+    private int collapsedPasses;
+
     private float invWidth, invHeight;
+    private float renderScale = 1f;
     private Convolve2DEffect convolve;
 
+    private float radius = 8f;
+    private DualKawaseBlurEffect dualKawase;
+
     public GaussianBlurEffect() {
         this(BlurType.Gaussian5x5);
     }
@@ -69,7 +104,16 @@ public class GaussianBlurEffect extends AbstractVfxEffect
 
     @Override
     public void dispose() {
-        convolve.dispose();
+        if (convolve != null) {
+            convolve.dispose();
+        }
+        if (collapsed != null) {
+            collapsed.dispose();
+            collapsed = null;
+        }
+        if (dualKawase != null) {
+            dualKawase.dispose();
+        }
     }
 
     @Override
@@ -77,22 +121,107 @@ public class GaussianBlurEffect extends AbstractVfxEffect
         this.invWidth = 1f / (float) width;
         this.invHeight = 1f / (float) height;
 
-        convolve.resize(width, height);
+        if (convolve != null) {
+            convolve.resize(width, height);
+        }
+        if (dualKawase != null) {
+            dualKawase.resize(width, height);
+        }
         computeBlurWeightings();
     }
 
     @Override
     public void rebind() {
-        convolve.rebind();
+        if (convolve != null) {
+            convolve.rebind();
+        }
+        if (dualKawase != null) {
+            dualKawase.rebind();
+        }
         computeBlurWeightings();
     }
 
+    @Override
+    public void reportMemory(VfxMemoryReport report) {
+        if (dualKawase != null) {
+            dualKawase.reportMemory(report);
+        }
+    }
+
+    /**
+     * Scales the kernel offsets (or the radius of
+     * {@link BlurType#DualKawase}) to keep the blur the same size on screen.
+     */
+    @Override
+    public void setRenderScale(float scale) {
+        this.renderScale = scale;
+        if (dualKawase != null) {
+            dualKawase.setRenderScale(scale);
+        }
+        computeBlurWeightings();
+    }
+
+    @Override
+    public int getRevision() {
+        int revision = super.getRevision();
+        if (convolve != null) {
+            revision = combineRevisions(revision, convolve.getRevision());
+        }
+        if (collapsed != null) {
+            revision = combineRevisions(revision, collapsed.getRevision());
+        }
+        if (dualKawase != null) {
+            revision = combineRevisions(revision, dualKawase.getRevision());
+        }
+        return revision;
+    }
+
+    /**
+     * The reach of the kernel times the number of passes.
+     * {@link BlurType#DualKawase} renders into smaller buffers and is thus
+     * unbounded.
+     */
+    @Override
+    public int getSamplingFootprint() {
+        if (type == BlurType.DualKawase || invWidth == 0f)
+            return UNBOUNDED_FOOTPRINT;
+
+        final Convolve2DEffect filter = collapsed != null ? collapsed
+                : convolve;
+        final int passCount = collapsed != null ? collapsedPasses : passes;
+        float[] offsetsH = filter.getOffsetsHor();
+        float[] offsetsV = filter.getOffsetsVert();
+        float reach = 0f;
+        for (int i = 0; i < filter.getLength(); i++) {
+            reach = Math.max(reach, Math.abs(offsetsH[i * 2]) / invWidth);
+            reach = Math.max(reach,
+                    Math.abs(offsetsV[i * 2 + 1]) / invHeight);
+        }
+        // Linear sampling reads one more texel.
+        return passCount * ((int) Math.ceil(reach) + 1);
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
-        for (int i = 0; i < this.passes; i++) {
-            convolve.render(context, buffers);
+        if (type == BlurType.DualKawase) {
+            dualKawase.render(context, buffers);
+            return;
+        }
+
+        final Convolve2DEffect filter = collapsed != null ? collapsed
+                : convolve;
+        final int passCount = collapsed != null ? collapsedPasses : passes;
+        final VfxProfiler profiler = context.getProfiler();
+        for (int i = 0; i < passCount; i++) {
+            if (profiler != null) {
+                profiler.begin(filter);
+            }
+            filter.render(context, buffers);
+            if (profiler != null) {
+                profiler.end();
+            }
 
-            if (i < this.passes - 1) {
+            if (i < passCount - 1) {
                 buffers.swap();
             }
         }
@@ -117,8 +246,17 @@ public class GaussianBlurEffect extends AbstractVfxEffect
             // Instantiate new matching convolve filter instance.
             if (convolve != null) {
                 convolve.dispose();
+                convolve = null;
+            }
+            if (type == BlurType.DualKawase) {
+                if (dualKawase == null) {
+                    dualKawase = new DualKawaseBlurEffect(radius);
+                    dualKawase.setRenderScale(renderScale);
+                }
+                updateCollapsed();
+                return;
             }
-            convolve = new Convolve2DEffect(this.type.tap.radius);
+            convolve = new Convolve2DEffect(getConvolveRadius());
 
             computeBlurWeightings();
         }
@@ -132,9 +270,43 @@ public class GaussianBlurEffect extends AbstractVfxEffect
     /** Warning: Not all blur types support custom amounts at this time */
     public void setAmount(float amount) {
         this.amount = amount;
+        if (type == BlurType.Gaussian
+                && convolve.getRadius() != getConvolveRadius()) {
+            // The shader programs are cached, so this is cheap.
+            convolve.dispose();
+            convolve = new Convolve2DEffect(getConvolveRadius());
+        }
         computeBlurWeightings();
     }
 
+    /**
+     * @return the radius of the {@link Convolve2DEffect}, i.e. half the
+     *         number of taps
+     */
+    private int getConvolveRadius() {
+        if (type != BlurType.Gaussian)
+            return type.tap.radius;
+
+        int radius = Math.min(GaussianKernel.getMaxRadius(), GaussianKernel
+                .computeRadius(amount, GaussianKernel.DEFAULT_MAX_ERROR));
+        return GaussianKernel.getTapCount(radius) / 2;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    /**
+     * Sets the blur radius in pixels. Only supported by
+     * {@link BlurType#DualKawase}.
+     */
+    public void setRadius(float radius) {
+        this.radius = radius;
+        if (dualKawase != null) {
+            dualKawase.setRadius(radius);
+        }
+    }
+
     public int getPasses() {
         return passes;
     }
@@ -145,114 +317,157 @@ public class GaussianBlurEffect extends AbstractVfxEffect
                     "Passes should be greater than 0.");
 
         this.passes = passes;
+        updateCollapsed();
     }
 
-    private void computeBlurWeightings() {
-        boolean hasData = true;
+    public boolean isCollapsePasses() {
+        return collapsePasses;
+    }
+
+    /**
+     * Enables replacing the repeated passes with fewer passes of an
+     * equivalent, wider gaussian kernel. The result matches the repeated
+     * passes up to the kernel truncation error (see
+     * {@link #setMaxKernelError(float)}). Disabled by default.
+     */
+    public void setCollapsePasses(boolean collapsePasses) {
+        this.collapsePasses = collapsePasses;
+        updateCollapsed();
+    }
 
-        float[] outWeights = convolve.getWeights();
-        float[] outOffsetsH = convolve.getOffsetsHor();
-        float[] outOffsetsV = convolve.getOffsetsVert();
+    public float getMaxKernelError() {
+        return maxKernelError;
+    }
+
+    /**
+     * Sets the share of the kernel weight that may be cut off when collapsing
+     * passes. The higher, the fewer passes are needed.
+     */
+    public void setMaxKernelError(float maxKernelError) {
+        if (maxKernelError <= 0f || maxKernelError >= 1f)
+            throw new IllegalArgumentException(
+                    "Max kernel error should be in (0, 1).");
 
-        float dx = this.invWidth;
-        float dy = this.invHeight;
+        this.maxKernelError = maxKernelError;
+        updateCollapsed();
+    }
+
+    private void computeBlurWeightings() {
+        if (convolve == null)
+            return;
+
+        float[] weights = convolve.getWeights();
+        float[] offsets = new float[convolve.getLength()];
+        if (computeKernel(weights, offsets)) {
+            fillOffsets(convolve, offsets);
+            convolve.rebind();
+        }
+        updateCollapsed();
+    }
 
+    /**
+     * Computes the 1D kernel of the current type.
+     *
+     * @param outOffsets
+     *            receives the offsets of the taps, in texels
+     * @return whether the type has a kernel
+     */
+    private boolean computeKernel(float[] outWeights, float[] outOffsets) {
         switch (this.type) {
+        case Gaussian: {
+            int radius = Math.min(GaussianKernel.getMaxRadius(),
+                    GaussianKernel.computeRadius(amount,
+                            GaussianKernel.DEFAULT_MAX_ERROR));
+            GaussianKernel.computeLinear(amount, radius, outWeights,
+                    outOffsets);
+            return true;
+        }
         case Gaussian3x3:
         case Gaussian5x5:
             computeKernel(this.type.tap.radius, this.amount, outWeights);
-            computeOffsets(this.type.tap.radius, this.invWidth, this.invHeight,
-                    outOffsetsH, outOffsetsV);
-            break;
+            for (int i = 0; i < outOffsets.length; i++) {
+                outOffsets[i] = i - this.type.tap.radius;
+            }
+            return true;
 
         case Gaussian3x3b:
             // Weights and offsets are computed from a binomial distribution
             // and reduced to be used *only* with bilinearly-filtered texture
             // lookups
             // with radius = 1f
-
-            // Weights
-            outWeights[0] = 0.352941f;
-            outWeights[1] = 0.294118f;
-            outWeights[2] = 0.352941f;
-
-            // Horizontal offsets
-            outOffsetsH[0] = -1.33333f;
-            outOffsetsH[1] = 0f;
-            outOffsetsH[2] = 0f;
-            outOffsetsH[3] = 0f;
-            outOffsetsH[4] = 1.33333f;
-            outOffsetsH[5] = 0f;
-
-            // Vertical offsets
-            outOffsetsV[0] = 0f;
-            outOffsetsV[1] = -1.33333f;
-            outOffsetsV[2] = 0f;
-            outOffsetsV[3] = 0f;
-            outOffsetsV[4] = 0f;
-            outOffsetsV[5] = 1.33333f;
-
-            // Scale offsets from binomial space to screen space
-            for (int i = 0; i < convolve.getLength() * 2; i++) {
-                outOffsetsH[i] *= dx;
-                outOffsetsV[i] *= dy;
-            }
-
-            break;
+            System.arraycopy(WEIGHTS_3X3B, 0, outWeights, 0, 3);
+            System.arraycopy(OFFSETS_3X3B, 0, outOffsets, 0, 3);
+            return true;
 
         case Gaussian5x5b:
-
             // Weights and offsets are computed from a binomial distribution
             // and reduced to be used *only* with bilinearly-filtered texture
             // lookups
             // with radius = 2f
+            System.arraycopy(WEIGHTS_5X5B, 0, outWeights, 0, 5);
+            System.arraycopy(OFFSETS_5X5B, 0, outOffsets, 0, 5);
+            return true;
 
-            // weights
-            outWeights[0] = 0.0702703f;
-            outWeights[1] = 0.316216f;
-            outWeights[2] = 0.227027f;
-            outWeights[3] = 0.316216f;
-            outWeights[4] = 0.0702703f;
-
-            // Horizontal offsets
-            outOffsetsH[0] = -3.23077f;
-            outOffsetsH[1] = 0f;
-            outOffsetsH[2] = -1.38462f;
-            outOffsetsH[3] = 0f;
-            outOffsetsH[4] = 0f;
-            outOffsetsH[5] = 0f;
-            outOffsetsH[6] = 1.38462f;
-            outOffsetsH[7] = 0f;
-            outOffsetsH[8] = 3.23077f;
-            outOffsetsH[9] = 0f;
-
-            // Vertical offsets
-            outOffsetsV[0] = 0f;
-            outOffsetsV[1] = -3.23077f;
-            outOffsetsV[2] = 0f;
-            outOffsetsV[3] = -1.38462f;
-            outOffsetsV[4] = 0f;
-            outOffsetsV[5] = 0f;
-            outOffsetsV[6] = 0f;
-            outOffsetsV[7] = 1.38462f;
-            outOffsetsV[8] = 0f;
-            outOffsetsV[9] = 3.23077f;
-
-            // Scale offsets from binomial space to screen space
-            for (int i = 0; i < convolve.getLength() * 2; i++) {
-                outOffsetsH[i] *= dx;
-                outOffsetsV[i] *= dy;
-            }
-
-            break;
         default:
-            hasData = false;
-            break;
+            return false;
         }
+    }
 
-        if (hasData) {
-            convolve.rebind();
+    /**
+     * Scales the texel offsets to screen space and sets them as the
+     * horizontal and vertical offsets of the filter. At a reduced render
+     * scale the taps move closer together, so the kernel keeps its size on
+     * screen.
+     */
+    private void fillOffsets(Convolve2DEffect filter, float[] offsets) {
+        float[] outOffsetsH = filter.getOffsetsHor();
+        float[] outOffsetsV = filter.getOffsetsVert();
+        for (int i = 0; i < offsets.length; i++) {
+            outOffsetsH[i * 2] = offsets[i] * renderScale * invWidth;
+            outOffsetsH[i * 2 + 1] = 0f;
+            outOffsetsV[i * 2] = 0f;
+            outOffsetsV[i * 2 + 1] = offsets[i] * renderScale * invHeight;
+        }
+    }
+
+    /**
+     * Replaces the repeated passes by as few passes of a wider gaussian
+     * kernel as possible. N convolutions with a kernel of variance v add up to
+     * a single gaussian of variance N * v (i.e. sigma * sqrt(N)). If that
+     * kernel would need too many taps, it is split into k passes of variance
+     * N * v / k each.
+     */
+    private void updateCollapsed() {
+        markChanged();
+        if (collapsed != null) {
+            collapsed.dispose();
+            collapsed = null;
         }
+        if (!collapsePasses || passes < 2 || convolve == null)
+            return;
+
+        float[] weights = new float[convolve.getLength()];
+        float[] offsets = new float[convolve.getLength()];
+        computeKernel(weights, offsets);
+        float variance = passes * GaussianKernel.computeVariance(weights,
+                offsets, convolve.getLength());
+
+        int collapsedPasses = GaussianKernel.computePassCount(variance,
+                maxKernelError);
+        if (collapsedPasses >= passes)
+            return; // Nothing to gain
+
+        float sigma = (float) Math.sqrt(variance / collapsedPasses);
+        int radius = GaussianKernel.computeRadius(sigma, maxKernelError);
+
+        int length = GaussianKernel.getTapCount(radius);
+        collapsed = new Convolve2DEffect(length / 2);
+        offsets = new float[length];
+        GaussianKernel.computeLinear(sigma, radius, collapsed.getWeights(),
+                offsets);
+        fillOffsets(collapsed, offsets);
+        collapsed.rebind();
+        this.collapsedPasses = collapsedPasses;
     }
 
     private void computeKernel(int blurRadius, float blurAmount,
@@ -282,20 +497,6 @@ public class GaussianBlurEffect extends AbstractVfxEffect
         }
     }
 
-    private void computeOffsets(int blurRadius, float dx, float dy,
-            float[] outOffsetH, float[] outOffsetV) {
-        int radius = blurRadius;
-
-        final int X = 0, Y = 1;
-        for (int i = -radius, j = 0; i <= radius; ++i, j += 2) {
-            outOffsetH[j + X] = i * dx;
-            outOffsetH[j + Y] = 0;
-
-            outOffsetV[j + X] = 0;
-            outOffsetV[j + Y] = i * dy;
-        }
-    }
-
     public static final class Convolve1DEffect extends ShaderVfxEffect
             implements ChainVfxEffect {
 
@@ -307,6 +508,9 @@ public class GaussianBlurEffect extends AbstractVfxEffect
         public float[] weights;
         public float[] offsets;
 
+        /** Whether the kernel has to be uploaded before the next render. */
+        private boolean kernelDirty = true;
+
         public Convolve1DEffect(int length) {
             this(length, new float[length], new float[length * 2]);
         }
@@ -317,31 +521,37 @@ public class GaussianBlurEffect extends AbstractVfxEffect
 
         public Convolve1DEffect(int length, float[] weightsData,
                 float[] offsets) {
-            super(VfxGLUtils.compileShader(
+            this(length, weightsData, offsets, false);
+        }
+
+        /**
+         * @param vertical
+         *            only selects the shared program; the direction is
+         *            defined by the offsets. The two passes of a
+         *            {@link Convolve2DEffect} use separate programs, so they
+         *            don't overwrite each other's kernel on every pass.
+         */
+        public Convolve1DEffect(int length, float[] weightsData,
+                float[] offsets, boolean vertical) {
+            // The programs are shared between the instances of the same
+            // length, as only the uniforms differ.
+            super(VfxShaderRegistry.obtain(
                     Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
                     Gdx.files.classpath("gdxvfx/shaders/convolve-1d.frag"),
-                    "#define LENGTH " + length));
+                    "#define LENGTH " + length
+                            + (vertical ? "\n#define VERTICAL" : "")));
             setWeights(length, weightsData, offsets);
             rebind();
         }
 
+        /**
+         * Schedules the kernel to be uploaded again. Has to be called after
+         * the weight or offset arrays have been modified in place.
+         */
         @Override
         public void rebind() {
             super.rebind();
-            program.begin();
-            program.setUniformi(U_TEXTURE, TEXTURE_HANDLE0);
-            program.setUniform2fv(U_SAMPLE_OFFSETS, offsets, 0, length * 2); // LibGDX
-                                                                             // asks
-                                                                             // for
-                                                                             // number
-                                                                             // of
-                                                                             // floats,
-                                                                             // NOT
-                                                                             // number
-                                                                             // of
-                                                                             // elements.
-            program.setUniform1fv(U_SAMPLE_WEIGHTS, weights, 0, length);
-            program.end();
+            kernelDirty = true;
         }
 
         @Override
@@ -352,16 +562,49 @@ public class GaussianBlurEffect extends AbstractVfxEffect
 
         public void render(VfxRenderContext context, NestableFrameBuffer src,
                 NestableFrameBuffer dst) {
+            program.bind();
+            // The program is shared, so another instance may have replaced
+            // the kernel in the meantime.
+            if (VfxShaderRegistry.claim(program, this)) {
+                kernelDirty = true;
+            }
+            if (kernelDirty) {
+                program.setUniformi(U_TEXTURE, TEXTURE_HANDLE0);
+                // LibGDX asks for number of floats, NOT number of elements.
+                program.setUniform2fv(U_SAMPLE_OFFSETS, offsets, 0,
+                        length * 2);
+                program.setUniform1fv(U_SAMPLE_WEIGHTS, weights, 0, length);
+                kernelDirty = false;
+            }
+
+            // The merged taps sample in between the texels, which needs
+            // bilinear filtering. The chain buffers are nearest-filtered at
+            // full resolution.
+            Texture texture = src.getColorBufferTexture();
+            TextureFilter minFilter = texture.getMinFilter();
+            TextureFilter magFilter = texture.getMagFilter();
+            boolean linear = minFilter == TextureFilter.Linear
+                    && magFilter == TextureFilter.Linear;
+            if (!linear) {
+                texture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+            }
+
             // Bind src buffer's texture as a primary one.
-            src.getColorBufferTexture().bind(TEXTURE_HANDLE0);
+            texture.bind(TEXTURE_HANDLE0);
             // Apply shader effect.
             renderShader(context, dst);
+
+            if (!linear) {
+                texture.setFilter(minFilter, magFilter);
+            }
         }
 
         public void setWeights(int length, float[] weights, float[] offsets) {
             this.weights = weights;
             this.length = length;
             this.offsets = offsets;
+            kernelDirty = true;
+            markChanged();
         }
     }
 
@@ -379,8 +622,10 @@ public class GaussianBlurEffect extends AbstractVfxEffect
             this.radius = radius;
             length = (radius * 2) + 1;
 
-            hor = register(new Convolve1DEffect(length));
-            vert = register(new Convolve1DEffect(length, hor.weights));
+            hor = register(new Convolve1DEffect(length, new float[length],
+                    new float[length * 2], false));
+            vert = register(new Convolve1DEffect(length, hor.weights,
+                    new float[length * 2], true));
 
             weights = hor.weights;
             offsetsHor = hor.offsets;
@@ -390,9 +635,13 @@ public class GaussianBlurEffect extends AbstractVfxEffect
         @Override
         public void render(VfxRenderContext context,
                 VfxPingPongWrapper buffers) {
+            beginSubPass(context, hor);
             hor.render(context, buffers);
+            endSubPass(context);
             buffers.swap();
+            beginSubPass(context, vert);
             vert.render(context, buffers);
+            endSubPass(context);
         }
 
         public int getRadius() {
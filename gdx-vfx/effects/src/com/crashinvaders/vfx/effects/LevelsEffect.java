@@ -35,11 +35,13 @@ import com.badlogic.gdx.Gdx;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
 import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderSource;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
 /** Controls levels of brightness and contrast. */
-public class LevelsEffect extends ShaderVfxEffect implements ChainVfxEffect {
+public class LevelsEffect extends ShaderVfxEffect
+        implements FusibleVfxEffect {
 
     private static final String Texture = "u_texture0";
     private static final String Brightness = "u_brightness";
@@ -54,10 +56,12 @@ public class LevelsEffect extends ShaderVfxEffect implements ChainVfxEffect {
     private float hue = 1.0f;
     private float gamma = 1.0f;
 
+    private static final String FRAGMENT_SHADER = "gdxvfx/shaders/levels.frag";
+
     public LevelsEffect() {
         super(VfxGLUtils.compileShader(
                 Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
-                Gdx.files.classpath("gdxvfx/shaders/levels.frag")));
+                Gdx.files.classpath(FRAGMENT_SHADER)));
         rebind();
     }
 
@@ -74,6 +78,19 @@ public class LevelsEffect extends ShaderVfxEffect implements ChainVfxEffect {
         program.end();
     }
 
+    /** Every pixel is processed on its own. */
+    @Override
+    public int getSamplingFootprint() {
+        return 0;
+    }
+
+    /** Neutral at the default levels. */
+    @Override
+    public boolean isIdentity() {
+        return brightness == 0f && contrast == 1f && saturation == 1f
+                && hue == 1f && gamma == 1f;
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
@@ -87,6 +104,20 @@ public class LevelsEffect extends ShaderVfxEffect implements ChainVfxEffect {
         renderShader(context, dst);
     }
 
+    @Override
+    public String getFragmentSource() {
+        return VfxShaderSource.load(Gdx.files.classpath(FRAGMENT_SHADER));
+    }
+
+    @Override
+    public void applyFusedUniforms(FusedUniforms uniforms) {
+        uniforms.setUniformf(Brightness, brightness);
+        uniforms.setUniformf(Contrast, contrast);
+        uniforms.setUniformf(Saturation, saturation);
+        uniforms.setUniformf(Hue, hue);
+        uniforms.setUniformf(Gamma, gamma);
+    }
+
     public float getContrast() {
         return contrast;
     }
@@ -19,6 +19,7 @@ package com.crashinvaders.vfx.effects;
 
 import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Gdx;
+import com.crashinvaders.vfx.VfxMemoryReport;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.effects.util.CopyEffect;
 import com.crashinvaders.vfx.effects.util.MixEffect;
@@ -66,6 +67,12 @@ public class MotionBlurEffect extends CompositeVfxEffect
         localBuffer.dispose();
     }
 
+    @Override
+    public void reportMemory(VfxMemoryReport report) {
+        super.reportMemory(report);
+        localBuffer.reportMemory(report, this);
+    }
+
     @Override
     public void resize(int width, int height) {
         super.resize(width, height);
@@ -79,6 +86,12 @@ public class MotionBlurEffect extends CompositeVfxEffect
         localBuffer.rebind();
     }
 
+    /** The output depends on the previous frames. */
+    @Override
+    public int getRevision() {
+        return VOLATILE;
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
         NestableFrameBuffer prevFrame = this.localBuffer.changeToNext();
@@ -91,8 +104,12 @@ public class MotionBlurEffect extends CompositeVfxEffect
             return;
         }
 
+        beginSubPass(context, mixFilter);
         mixFilter.render(context, buffers.getSrcBuffer(), prevFrame,
                 buffers.getDstBuffer());
+        endSubPass(context);
+        beginSubPass(context, copyFilter);
         copyFilter.render(context, buffers.getDstBuffer(), prevFrame);
+        endSubPass(context);
     }
 }
\ No newline at end of file
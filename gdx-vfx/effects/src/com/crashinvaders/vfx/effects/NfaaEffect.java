@@ -17,10 +17,11 @@
 package com.crashinvaders.vfx.effects;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.math.Vector2;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
-import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderVariants;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.Vec2Uniform;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
@@ -35,29 +36,41 @@ public class NfaaEffect extends ShaderVfxEffect implements ChainVfxEffect {
     private static final String U_TEXTURE0 = "u_texture0";
     private static final String U_VIEWPORT_INVERSE = "u_viewportInverse";
 
-    private final Vector2 viewportInverse = new Vector2();
+    private static VfxShaderVariants variants;
+
+    private final Vec2Uniform viewportInverse = registerUniform(
+            new Vec2Uniform(U_VIEWPORT_INVERSE));
 
     public NfaaEffect(boolean supportAlpha) {
-        super(VfxGLUtils.compileShader(
-                Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
-                Gdx.files.classpath("gdxvfx/shaders/nfaa.frag"),
-                supportAlpha ? "#define SUPPORT_ALPHA" : ""));
+        super(getShaderVariants()
+                .obtain(getShaderVariants().getIndex(supportAlpha ? 1 : 0)));
+        registerUniform(new IntUniform(U_TEXTURE0, TEXTURE_HANDLE0));
     }
 
-    @Override
-    public void rebind() {
-        super.rebind();
-        program.begin();
-        program.setUniformi(U_TEXTURE0, TEXTURE_HANDLE0);
-        program.setUniformf(U_VIEWPORT_INVERSE, viewportInverse);
-        program.end();
+    /** @return the shader variants, spanned by the alpha support switch. */
+    public static VfxShaderVariants getShaderVariants() {
+        if (variants == null) {
+            variants = new VfxShaderVariants(
+                    Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
+                    Gdx.files.classpath("gdxvfx/shaders/nfaa.frag"))
+                            .addSwitch("SUPPORT_ALPHA");
+        }
+        return variants;
     }
 
     @Override
     public void resize(int width, int height) {
         super.resize(width, height);
-        this.viewportInverse.set(1f / width, 1f / height);
-        setUniform(U_VIEWPORT_INVERSE, this.viewportInverse);
+        viewportInverse.set(1f / width, 1f / height);
+    }
+
+    /**
+     * The normal is estimated from the direct neighbours and scales the
+     * samples up to three pixels away.
+     */
+    @Override
+    public int getSamplingFootprint() {
+        return 4;
     }
 
     @Override
@@ -65,6 +78,11 @@ public class NfaaEffect extends ShaderVfxEffect implements ChainVfxEffect {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
@@ -17,10 +17,12 @@
 package com.crashinvaders.vfx.effects;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.math.Vector2;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
-import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderRegistry;
+import com.crashinvaders.vfx.gl.VfxUniform.FloatUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.Vec2Uniform;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
@@ -30,46 +32,36 @@ public class OldTvEffect extends ShaderVfxEffect implements ChainVfxEffect {
     private static final String Resolution = "u_resolution";
     private static final String Time = "u_time";
 
-    private final Vector2 resolution = new Vector2();
-    private float time = 0f;
+    private final Vec2Uniform resolution = registerUniform(
+            new Vec2Uniform(Resolution));
+    private final FloatUniform time = registerUniform(
+            new FloatUniform(Time, 0f));
 
     public OldTvEffect() {
-        super(VfxGLUtils.compileShader(
+        super(VfxShaderRegistry.obtain(
                 Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
                 Gdx.files.classpath("gdxvfx/shaders/old-tv.frag")));
-        rebind();
+        registerUniform(new IntUniform(Texture0, TEXTURE_HANDLE0));
     }
 
     @Override
     public void resize(int width, int height) {
         super.resize(width, height);
         this.resolution.set(width, height);
-        rebind();
-    }
-
-    @Override
-    public void rebind() {
-        super.rebind();
-        program.begin();
-        program.setUniformi(Texture0, TEXTURE_HANDLE0);
-        program.setUniformf(Resolution, resolution);
-        program.setUniformf(Time, time);
-        program.end();
     }
 
     @Override
     public void update(float delta) {
         super.update(delta);
-        setTime(this.time + delta);
+        setTime(time.get() + delta);
     }
 
     public float getTime() {
-        return time;
+        return time.get();
     }
 
     public void setTime(float time) {
-        this.time = time;
-        setUniform(Time, time);
+        this.time.set(time);
     }
 
     @Override
@@ -77,6 +69,11 @@ public class OldTvEffect extends ShaderVfxEffect implements ChainVfxEffect {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
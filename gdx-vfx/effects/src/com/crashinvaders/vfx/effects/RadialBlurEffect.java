@@ -62,11 +62,22 @@ public class RadialBlurEffect extends ShaderVfxEffect
         program.end();
     }
 
+    /** All the samples hit the same texel without zoom and strength. */
+    @Override
+    public boolean isIdentity() {
+        return zoom == 1f && strength == 0f;
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
@@ -123,6 +134,7 @@ public class RadialBlurEffect extends ShaderVfxEffect
         program.setUniformf(U_OFFSET_X, this.originX);
         program.setUniformf(U_OFFSET_Y, this.originY);
         program.end();
+        markChanged();
     }
 
     public float getStrength() {
@@ -50,11 +50,22 @@ public class RadialDistortionEffect extends ShaderVfxEffect
         program.end();
     }
 
+    /** Neutral without zoom and distortion. */
+    @Override
+    public boolean isIdentity() {
+        return zoom == 1f && distortion == 0f;
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
@@ -19,12 +19,14 @@ package com.crashinvaders.vfx.effects;
 import com.badlogic.gdx.Gdx;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
-import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderVariants;
+import com.crashinvaders.vfx.gl.VfxUniform.FloatUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
 public class VignettingEffect extends ShaderVfxEffect
-        implements ChainVfxEffect {
+        implements FusibleVfxEffect {
 
     private static final String TEXTURE0 = "u_texture0";
     private static final String VIGNETTE_INTENSITY = "u_vignetteIntensity";
@@ -35,41 +37,57 @@ public class VignettingEffect extends ShaderVfxEffect
     private static final String SATURATION = "u_saturation";
     private static final String SATURATION_MUL = "u_saturationMul";
 
-    private float vignetteX = 0.8f;
-    private float vignetteY = 0.25f;
-    private float centerX = 0.5f;
-    private float centerY = 0.5f;
-    private float intensity = 1f;
+    private static final String FRAGMENT_SHADER = "gdxvfx/shaders/vignetting.frag";
+
+    private static VfxShaderVariants variants;
+
+    private final FloatUniform vignetteX = registerUniform(
+            new FloatUniform(VIGNETTE_X, 0.8f));
+    private final FloatUniform vignetteY = registerUniform(
+            new FloatUniform(VIGNETTE_Y, 0.25f));
+    private final FloatUniform centerX = registerUniform(
+            new FloatUniform(CENTER_X, 0.5f));
+    private final FloatUniform centerY = registerUniform(
+            new FloatUniform(CENTER_Y, 0.5f));
+    private final FloatUniform intensity = registerUniform(
+            new FloatUniform(VIGNETTE_INTENSITY, 1f));
 
     private final boolean saturationEnabled;
-    private float saturation = 0f;
-    private float saturationMul = 0f;
+    // Inactive in the program without saturation control
+    private final FloatUniform saturation = registerUniform(
+            new FloatUniform(SATURATION, 0f));
+    private final FloatUniform saturationMul = registerUniform(
+            new FloatUniform(SATURATION_MUL, 0f));
 
     public VignettingEffect(boolean controlSaturation) {
-        super(VfxGLUtils.compileShader(
-                Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
-                Gdx.files.classpath("gdxvfx/shaders/vignetting.frag"),
-                (controlSaturation ? "#define CONTROL_SATURATION" : "")));
+        super(getShaderVariants().obtain(
+                getShaderVariants().getIndex(controlSaturation ? 1 : 0)));
         this.saturationEnabled = controlSaturation;
-        rebind();
+        registerUniform(new IntUniform(TEXTURE0, TEXTURE_HANDLE0));
     }
 
-    @Override
-    public void rebind() {
-        program.begin();
-        program.setUniformi(TEXTURE0, TEXTURE_HANDLE0);
-
-        if (saturationEnabled) {
-            program.setUniformf(SATURATION, saturation);
-            program.setUniformf(SATURATION_MUL, saturationMul);
+    /** @return the shader variants, spanned by the saturation switch. */
+    public static VfxShaderVariants getShaderVariants() {
+        if (variants == null) {
+            variants = new VfxShaderVariants(
+                    Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
+                    Gdx.files.classpath(FRAGMENT_SHADER))
+                            .addSwitch("CONTROL_SATURATION");
         }
+        return variants;
+    }
 
-        program.setUniformf(VIGNETTE_INTENSITY, intensity);
-        program.setUniformf(VIGNETTE_X, vignetteX);
-        program.setUniformf(VIGNETTE_Y, vignetteY);
-        program.setUniformf(CENTER_X, centerX);
-        program.setUniformf(CENTER_Y, centerY);
-        program.end();
+    /** Every pixel is processed on its own. */
+    @Override
+    public int getSamplingFootprint() {
+        return 0;
+    }
+
+    /** Neutral at zero intensity, unless the saturation is altered. */
+    @Override
+    public boolean isIdentity() {
+        return intensity.get() == 0f && (!saturationEnabled
+                || (saturation.get() == 1f && saturationMul.get() == 1f));
     }
 
     @Override
@@ -85,81 +103,74 @@ public class VignettingEffect extends ShaderVfxEffect
         renderShader(context, dst);
     }
 
+    @Override
+    public String getFragmentSource() {
+        return getShaderVariants().getFragmentSource(
+                getShaderVariants().getIndex(saturationEnabled ? 1 : 0));
+    }
+
+    @Override
+    public void applyFusedUniforms(FusedUniforms uniforms) {
+        applyUniforms(uniforms);
+    }
+
     public void setIntensity(float intensity) {
-        this.intensity = intensity;
-        setUniform(VIGNETTE_INTENSITY, intensity);
+        this.intensity.set(intensity);
     }
 
     public void setSaturation(float saturation) {
-        this.saturation = saturation;
-        if (saturationEnabled) {
-            setUniform(SATURATION, saturation);
-        }
+        this.saturation.set(saturation);
     }
 
     public void setSaturationMul(float saturationMul) {
-        this.saturationMul = saturationMul;
-        if (saturationEnabled) {
-            setUniform(SATURATION_MUL, saturationMul);
-        }
+        this.saturationMul.set(saturationMul);
     }
 
     public void setCoords(float x, float y) {
-        this.vignetteX = x;
-        this.vignetteY = y;
-        program.begin();
-        program.setUniformf(VIGNETTE_X, x);
-        program.setUniformf(VIGNETTE_Y, y);
-        program.end();
+        vignetteX.set(x);
+        vignetteY.set(y);
     }
 
     public void setVignetteX(float x) {
-        this.vignetteX = x;
-        setUniform(VIGNETTE_X, x);
+        vignetteX.set(x);
     }
 
     public void setVignetteY(float vignetteY) {
-        this.vignetteY = vignetteY;
-        setUniform(VIGNETTE_Y, vignetteY);
+        this.vignetteY.set(vignetteY);
     }
 
     /** Specify the center, in normalized screen coordinates. */
     public void setCenter(float x, float y) {
-        this.centerX = x;
-        this.centerY = y;
-
-        program.begin();
-        program.setUniformf(CENTER_X, centerX);
-        program.setUniformf(CENTER_Y, centerY);
-        program.end();
+        centerX.set(x);
+        centerY.set(y);
     }
 
     public float getCenterX() {
-        return centerX;
+        return centerX.get();
     }
 
     public float getCenterY() {
-        return centerY;
+        return centerY.get();
     }
 
     public float getVignetteX() {
-        return vignetteX;
+        return vignetteX.get();
     }
 
     public float getVignetteY() {
-        return vignetteY;
+        return vignetteY.get();
     }
 
     public float getIntensity() {
-        return intensity;
+        return intensity.get();
     }
 
     public float getSaturation() {
-        return saturation;
+        return saturation.get();
     }
 
     public float getSaturationMul() {
-        return saturationMul;
+        return saturationMul.get();
     }
 
     public boolean isSaturationControlEnabled() {
@@ -19,7 +19,9 @@ package com.crashinvaders.vfx.effects;
 import com.badlogic.gdx.Gdx;
 import com.crashinvaders.vfx.VfxRenderContext;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
-import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderRegistry;
+import com.crashinvaders.vfx.gl.VfxUniform.FloatUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
@@ -31,50 +33,50 @@ public class WaterDistortionEffect extends ShaderVfxEffect
     private static final String U_SPEED = "u_speed";
     private static final String U_TIME = "u_time";
 
-    private float amount;
-    private float speed;
-    private float time = 0f;
+    private final FloatUniform amount = registerUniform(
+            new FloatUniform(U_AMOUNT, 0f));
+    private final FloatUniform speed = registerUniform(
+            new FloatUniform(U_SPEED, 0f));
+    private final FloatUniform time = registerUniform(
+            new FloatUniform(U_TIME, 0f));
 
     public WaterDistortionEffect(float amount, float speed) {
-        super(VfxGLUtils.compileShader(
+        super(VfxShaderRegistry.obtain(
                 Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
                 Gdx.files.classpath("gdxvfx/shaders/water-distortion.frag")));
-        this.amount = amount;
-        this.speed = speed;
-        rebind();
+        registerUniform(new IntUniform(U_TEXTURE0, TEXTURE_HANDLE0));
+        this.amount.set(amount);
+        this.speed.set(speed);
     }
 
     @Override
     public void update(float delta) {
         super.update(delta);
-        setTime(this.time + delta);
+        setTime(time.get() + delta);
     }
 
     public float getTime() {
-        return time;
+        return time.get();
     }
 
     public void setTime(float time) {
-        this.time = time;
-        setUniform(U_TIME, time);
+        this.time.set(time);
     }
 
     public float getAmount() {
-        return amount;
+        return amount.get();
     }
 
     public void setAmount(float amount) {
-        this.amount = amount;
-        setUniform(U_AMOUNT, amount);
+        this.amount.set(amount);
     }
 
     public float getSpeed() {
-        return speed;
+        return speed.get();
     }
 
     public void setSpeed(float speed) {
-        this.speed = speed;
-        setUniform(U_SPEED, speed);
+        this.speed.set(speed);
     }
 
     @Override
@@ -82,15 +84,10 @@ public class WaterDistortionEffect extends ShaderVfxEffect
         // Do nothing.
     }
 
+    /** No distortion at zero amount. */
     @Override
-    public void rebind() {
-        super.rebind();
-        program.begin();
-        program.setUniformi(U_TEXTURE0, TEXTURE_HANDLE0);
-        setUniform(U_TIME, time);
-        setUniform(U_AMOUNT, amount);
-        setUniform(U_SPEED, speed);
-        program.end();
+    public boolean isIdentity() {
+        return amount.get() == 0f;
     }
 
     @Override
@@ -98,6 +95,11 @@ public class WaterDistortionEffect extends ShaderVfxEffect
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
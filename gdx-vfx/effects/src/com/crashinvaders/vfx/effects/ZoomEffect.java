@@ -54,11 +54,22 @@ public class ZoomEffect extends ShaderVfxEffect implements ChainVfxEffect {
         program.end();
     }
 
+    /** The origin has no effect at a zoom of 1. */
+    @Override
+    public boolean isIdentity() {
+        return zoom == 1f;
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    @Override
+    public boolean isSwapFree() {
+        return true;
+    }
+
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
         // Bind src buffer's texture as a primary one.
@@ -116,6 +127,7 @@ public class ZoomEffect extends ShaderVfxEffect implements ChainVfxEffect {
         program.setUniformf(U_OFFSET_X, originX);
         program.setUniformf(U_OFFSET_Y, originY);
         program.end();
+        markChanged();
     }
 
     public float getZoom() {
@@ -18,21 +18,25 @@ package com.crashinvaders.vfx.effects.util;
 
 import com.badlogic.gdx.Gdx;
 import com.crashinvaders.vfx.VfxRenderContext;
-import com.crashinvaders.vfx.effects.ChainVfxEffect;
+import com.crashinvaders.vfx.effects.FusibleVfxEffect;
 import com.crashinvaders.vfx.effects.ShaderVfxEffect;
+import com.crashinvaders.vfx.framebuffer.VfxFrameBufferRenderer;
 import com.crashinvaders.vfx.framebuffer.VfxPingPongWrapper;
-import com.crashinvaders.vfx.gl.VfxGLUtils;
+import com.crashinvaders.vfx.gl.VfxShaderRegistry;
+import com.crashinvaders.vfx.gl.VfxShaderSource;
 
 import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
 
-public class CopyEffect extends ShaderVfxEffect implements ChainVfxEffect {
+public class CopyEffect extends ShaderVfxEffect implements FusibleVfxEffect {
 
     private static final String U_TEXTURE0 = "u_texture0";
 
+    private static final String FRAGMENT_SHADER = "gdxvfx/shaders/copy.frag";
+
     public CopyEffect() {
-        super(VfxGLUtils.compileShader(
+        super(VfxShaderRegistry.obtain(
                 Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
-                Gdx.files.classpath("gdxvfx/shaders/copy.frag")));
+                Gdx.files.classpath(FRAGMENT_SHADER)));
         rebind();
     }
 
@@ -42,13 +46,32 @@ public class CopyEffect extends ShaderVfxEffect implements ChainVfxEffect {
         setUniform(U_TEXTURE0, TEXTURE_HANDLE0);
     }
 
+    @Override
+    public String getFragmentSource() {
+        return VfxShaderSource.load(Gdx.files.classpath(FRAGMENT_SHADER));
+    }
+
+    @Override
+    public void applyFusedUniforms(FusedUniforms uniforms) {
+        // No uniforms besides the input texture.
+    }
+
     @Override
     public void render(VfxRenderContext context, VfxPingPongWrapper buffers) {
         render(context, buffers.getSrcBuffer(), buffers.getDstBuffer());
     }
 
+    /**
+     * Copies the buffer. Where it gives the same result, the buffer is
+     * {@linkplain VfxFrameBufferRenderer#blit blitted} instead (see
+     * {@link VfxFrameBufferRenderer#canBlitCopy(NestableFrameBuffer)}).
+     */
     public void render(VfxRenderContext context, NestableFrameBuffer src,
             NestableFrameBuffer dst) {
+        VfxFrameBufferRenderer renderer = context.getBufferRenderer();
+        if (renderer.canBlitCopy(dst) && renderer.blit(src, dst))
+            return;
+
         // Bind src buffer's texture as a primary one.
         src.getColorBufferTexture().bind(TEXTURE_HANDLE0);
         // Apply shader effect.
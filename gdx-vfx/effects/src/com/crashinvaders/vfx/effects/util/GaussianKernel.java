@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.effects.util;
+
+/**
+ * Generates 1D gaussian kernels for separable convolutions.
+ * <p>
+ * The kernels are meant to be sampled from bilinearly-filtered textures: two
+ * adjacent taps are merged into a single fetch in between them, weighted so
+ * that the hardware filter reproduces both taps. A kernel of radius
+ * <code>r</code> thus needs only <code>1 + 2 * ceil(r / 2)</code> texture
+ * reads instead of <code>2r + 1</code>.
+ */
+public final class GaussianKernel {
+
+    /** The default share of the kernel weight that may be cut off. */
+    public static final float DEFAULT_MAX_ERROR = 0.002f;
+
+    /**
+     * The maximum number of linear taps of a kernel. Larger kernels would
+     * exceed the uniform limits of some devices.
+     */
+    public static final int MAX_TAPS = 15;
+
+    private GaussianKernel() {
+        // Not instantiable.
+    }
+
+    /**
+     * @return the smallest discrete radius (in texels), for which the
+     *         truncated tails of the kernel weigh no more than
+     *         <code>maxError</code> of the whole kernel
+     */
+    public static int computeRadius(float sigma, float maxError) {
+        if (sigma <= 0f)
+            return 0;
+
+        int limit = (int) Math.ceil(sigma * 6f) + 1;
+        double twoSigmaSquare = 2.0 * sigma * sigma;
+        double total = 1.0;
+        for (int i = 1; i <= limit; i++) {
+            total += 2.0 * Math.exp(-(i * i) / twoSigmaSquare);
+        }
+
+        double covered = 1.0;
+        for (int i = 1; i <= limit; i++) {
+            covered += 2.0 * Math.exp(-(i * i) / twoSigmaSquare);
+            if (1.0 - covered / total <= maxError)
+                return i;
+        }
+        return limit;
+    }
+
+    /**
+     * @return the number of linear taps of a kernel with the specified
+     *         discrete radius
+     */
+    public static int getTapCount(int radius) {
+        return 1 + 2 * ((radius + 1) / 2);
+    }
+
+    /**
+     * @return the largest discrete radius whose kernel doesn't need more than
+     *         {@link #MAX_TAPS} linear taps
+     */
+    public static int getMaxRadius() {
+        return MAX_TAPS - 1;
+    }
+
+    /**
+     * Returns the number of passes a blur of the specified total variance has
+     * to be split into, so that the kernel of each pass (of variance
+     * <code>variance / passes</code>) needs no more than {@link #MAX_TAPS}
+     * linear taps. Repeated convolutions with gaussians add up their
+     * variances.
+     */
+    public static int computePassCount(float variance, float maxError) {
+        int passes = 1;
+        while (computeRadius((float) Math.sqrt(variance / passes),
+                maxError) > getMaxRadius()) {
+            passes++;
+        }
+        return passes;
+    }
+
+    /**
+     * Computes a normalized, linear-sampled gaussian kernel. The taps are
+     * ordered by their offsets, the center tap is at index
+     * <code>getTapCount(radius) / 2</code>.
+     *
+     * @param outWeights
+     *            receives the {@link #getTapCount(int)} weights
+     * @param outOffsets
+     *            receives the offsets of the taps, in texels
+     */
+    public static void computeLinear(float sigma, int radius,
+            float[] outWeights, float[] outOffsets) {
+        float[] discrete = new float[radius + 2];
+        if (sigma <= 0f || radius == 0) {
+            discrete[0] = 1f;
+        } else {
+            double twoSigmaSquare = 2.0 * sigma * sigma;
+            double total = 0.0;
+            for (int i = 0; i <= radius; i++) {
+                discrete[i] = (float) Math.exp(-(i * i) / twoSigmaSquare);
+                total += i == 0 ? discrete[i] : 2.0 * discrete[i];
+            }
+            for (int i = 0; i <= radius; i++) {
+                discrete[i] /= total;
+            }
+        }
+
+        int center = getTapCount(radius) / 2;
+        outWeights[center] = discrete[0];
+        outOffsets[center] = 0f;
+        for (int k = 1; k <= center; k++) {
+            int i = 2 * k - 1;
+            float a = discrete[i];
+            float b = discrete[i + 1];
+            float weight = a + b;
+            float offset = weight > 0f ? (i * a + (i + 1) * b) / weight : i;
+
+            outWeights[center + k] = weight;
+            outWeights[center - k] = weight;
+            outOffsets[center + k] = offset;
+            outOffsets[center - k] = -offset;
+        }
+    }
+
+    /**
+     * Computes the variance of a symmetric, linear-sampled kernel, i.e. the
+     * variance of the discrete kernel the bilinear fetches reproduce.
+     *
+     * @param offsets
+     *            the offsets of the taps, in texels
+     */
+    public static float computeVariance(float[] weights, float[] offsets,
+            int length) {
+        float variance = 0f;
+        for (int i = 0; i < length; i++) {
+            float offset = Math.abs(offsets[i]);
+            float lower = (float) Math.floor(offset);
+            float fraction = offset - lower;
+            variance += weights[i] * ((1f - fraction) * lower * lower
+                    + fraction * (lower + 1f) * (lower + 1f));
+        }
+        return variance;
+    }
+}
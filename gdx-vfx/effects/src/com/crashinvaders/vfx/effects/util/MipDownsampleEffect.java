@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.effects.util;
+
+import com.badlogic.gdx.Gdx;
+import com.crashinvaders.vfx.VfxRenderContext;
+import com.crashinvaders.vfx.effects.ShaderVfxEffect;
+import com.crashinvaders.vfx.gl.VfxShaderVariants;
+import com.crashinvaders.vfx.gl.VfxUniform.FloatUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.Vec2Uniform;
+
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Downsamples a frame with a 13-tap filter. Meant to build a downsample
+ * pyramid, e.g. a {@link com.crashinvaders.vfx.framebuffer.VfxMipChain}.
+ * Optionally applies a brightness threshold to the result, which lets the
+ * first downsample of a bloom double as its high-pass filter.
+ */
+public class MipDownsampleEffect extends ShaderVfxEffect {
+
+    private static final String U_TEXTURE0 = "u_texture0";
+    private static final String U_TEXEL_SIZE = "u_texelSize";
+    private static final String U_THRESHOLD = "u_threshold";
+    private static final String U_THRESHOLD_INV = "u_thresholdInv";
+
+    private static VfxShaderVariants variants;
+
+    private final Vec2Uniform texelSize = registerUniform(
+            new Vec2Uniform(U_TEXEL_SIZE));
+    private final FloatUniform threshold = registerUniform(
+            new FloatUniform(U_THRESHOLD, 0f));
+    private final FloatUniform thresholdInv = registerUniform(
+            new FloatUniform(U_THRESHOLD_INV, 1f));
+
+    public MipDownsampleEffect(boolean applyThreshold) {
+        super(getShaderVariants().obtain(
+                getShaderVariants().getIndex(applyThreshold ? 1 : 0)));
+        registerUniform(new IntUniform(U_TEXTURE0, TEXTURE_HANDLE0));
+    }
+
+    /** @return the shader variants, spanned by the threshold switch. */
+    public static VfxShaderVariants getShaderVariants() {
+        if (variants == null) {
+            variants = new VfxShaderVariants(
+                    Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
+                    Gdx.files.classpath("gdxvfx/shaders/mip-downsample.frag"))
+                            .addSwitch("THRESHOLD");
+        }
+        return variants;
+    }
+
+    public void render(VfxRenderContext context, NestableFrameBuffer src,
+            NestableFrameBuffer dst) {
+        texelSize.set(1f / src.getWidth(), 1f / src.getHeight());
+        // Bind src buffer's texture as a primary one.
+        src.getColorBufferTexture().bind(TEXTURE_HANDLE0);
+        // Apply shader effect and render result to dst buffer.
+        renderShader(context, dst);
+    }
+
+    public float getThreshold() {
+        return threshold.get();
+    }
+
+    /**
+     * Only has an effect if the threshold has been enabled upon construction.
+     */
+    public void setThreshold(float threshold) {
+        this.threshold.set(threshold);
+        this.thresholdInv.set(1f / (1f - threshold));
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.crashinvaders.vfx.effects.util;
+
+import com.badlogic.gdx.Gdx;
+import com.crashinvaders.vfx.VfxRenderContext;
+import com.crashinvaders.vfx.effects.ShaderVfxEffect;
+import com.crashinvaders.vfx.gl.VfxShaderRegistry;
+import com.crashinvaders.vfx.gl.VfxUniform.FloatUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.IntUniform;
+import com.crashinvaders.vfx.gl.VfxUniform.Vec2Uniform;
+
+import de.damios.guacamole.gdx.graphics.NestableFrameBuffer;
+
+/**
+ * Upsamples a frame with a 9-tap tent filter. Meant to walk a downsample
+ * pyramid back up; to accumulate the levels, render with additive blending.
+ *
+ * @see MipDownsampleEffect
+ */
+public class MipUpsampleEffect extends ShaderVfxEffect {
+
+    private static final String U_TEXTURE0 = "u_texture0";
+    private static final String U_TEXEL_SIZE = "u_texelSize";
+    private static final String U_RADIUS = "u_radius";
+
+    private final Vec2Uniform texelSize = registerUniform(
+            new Vec2Uniform(U_TEXEL_SIZE));
+    private final FloatUniform radius = registerUniform(
+            new FloatUniform(U_RADIUS, 1f));
+
+    public MipUpsampleEffect() {
+        super(VfxShaderRegistry.obtain(
+                Gdx.files.classpath("gdxvfx/shaders/screenspace.vert"),
+                Gdx.files.classpath("gdxvfx/shaders/mip-upsample.frag")));
+        registerUniform(new IntUniform(U_TEXTURE0, TEXTURE_HANDLE0));
+    }
+
+    public void render(VfxRenderContext context, NestableFrameBuffer src,
+            NestableFrameBuffer dst) {
+        texelSize.set(1f / src.getWidth(), 1f / src.getHeight());
+        // Bind src buffer's texture as a primary one.
+        src.getColorBufferTexture().bind(TEXTURE_HANDLE0);
+        // Apply shader effect and render result to dst buffer.
+        renderShader(context, dst);
+    }
+
+    public float getRadius() {
+        return radius.get();
+    }
+
+    /** Sets the spread of the tent filter, in source texels. */
+    public void setRadius(float radius) {
+        this.radius.set(radius);
+    }
+}
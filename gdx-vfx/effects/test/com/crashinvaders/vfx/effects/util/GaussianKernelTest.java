@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2019 metaphore
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.crashinvaders.vfx.effects.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GaussianKernelTest {
+
+    private static final float[] SIGMAS = { 0.8f, 1f, 2f, 3.5f, 5f };
+    private static final int[] PASSES = { 2, 3, 4, 8 };
+
+    @Test
+    public void linearKernelReproducesDiscreteKernel() {
+        for (float sigma : SIGMAS) {
+            int radius = GaussianKernel.computeRadius(sigma,
+                    GaussianKernel.DEFAULT_MAX_ERROR);
+            double[] linear = expandLinear(sigma, radius);
+
+            double total = 0.0;
+            for (int i = -radius; i <= radius; i++) {
+                total += gaussian(sigma, i);
+            }
+            for (int i = -radius; i <= radius; i++) {
+                assertEquals("sigma " + sigma + ", texel " + i,
+                        gaussian(sigma, i) / total,
+                        linear[i + linear.length / 2], 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void computeVarianceMatchesExpandedKernel() {
+        for (float sigma : SIGMAS) {
+            int radius = GaussianKernel.computeRadius(sigma,
+                    GaussianKernel.DEFAULT_MAX_ERROR);
+            int length = GaussianKernel.getTapCount(radius);
+            float[] weights = new float[length];
+            float[] offsets = new float[length];
+            GaussianKernel.computeLinear(sigma, radius, weights, offsets);
+
+            assertEquals("sigma " + sigma, variance(expand(weights, offsets)),
+                    GaussianKernel.computeVariance(weights, offsets, length),
+                    1e-4);
+        }
+    }
+
+    @Test
+    public void passCountKeepsKernelsWithinTapLimit() {
+        for (float variance = 1f; variance < 2000f; variance *= 1.5f) {
+            int passes = GaussianKernel.computePassCount(variance,
+                    GaussianKernel.DEFAULT_MAX_ERROR);
+            int radius = GaussianKernel.computeRadius(
+                    (float) Math.sqrt(variance / passes),
+                    GaussianKernel.DEFAULT_MAX_ERROR);
+            assertTrue(GaussianKernel.getTapCount(
+                    radius) <= GaussianKernel.MAX_TAPS);
+            if (passes > 1) {
+                // One pass less would exceed the limit.
+                int fewer = GaussianKernel.computeRadius(
+                        (float) Math.sqrt(variance / (passes - 1)),
+                        GaussianKernel.DEFAULT_MAX_ERROR);
+                assertTrue(fewer > GaussianKernel.getMaxRadius());
+            }
+        }
+    }
+
+    /**
+     * Collapses N passes the same way GaussianBlurEffect does and compares
+     * the result with N convolutions of the original kernel.
+     */
+    @Test
+    public void collapsedKernelMatchesRepeatedPasses() {
+        for (float sigma : SIGMAS) {
+            int radius = Math.min(GaussianKernel.getMaxRadius(),
+                    GaussianKernel.computeRadius(sigma,
+                            GaussianKernel.DEFAULT_MAX_ERROR));
+            int length = GaussianKernel.getTapCount(radius);
+            float[] weights = new float[length];
+            float[] offsets = new float[length];
+            GaussianKernel.computeLinear(sigma, radius, weights, offsets);
+            double[] kernel = expand(weights, offsets);
+
+            for (int passes : PASSES) {
+                double[] expected = convolvePasses(kernel, passes);
+
+                float variance = passes * GaussianKernel
+                        .computeVariance(weights, offsets, length);
+                int collapsedPasses = GaussianKernel.computePassCount(
+                        variance, GaussianKernel.DEFAULT_MAX_ERROR);
+                float collapsedSigma = (float) Math
+                        .sqrt(variance / collapsedPasses);
+                int collapsedRadius = GaussianKernel.computeRadius(
+                        collapsedSigma, GaussianKernel.DEFAULT_MAX_ERROR);
+                double[] actual = convolvePasses(
+                        expandLinear(collapsedSigma, collapsedRadius),
+                        collapsedPasses);
+
+                // Both kernels are truncated, which costs a little of the
+                // variance.
+                String message = "sigma " + sigma + ", " + passes
+                        + " passes";
+                assertEquals(message, variance(expected), variance(actual),
+                        variance(expected) * 0.03);
+                assertEquals(message, 0.0, maxDifference(expected, actual),
+                        peak(expected) * 0.02);
+            }
+        }
+    }
+
+    private static double gaussian(float sigma, int x) {
+        return Math.exp(-(x * x) / (2.0 * sigma * sigma));
+    }
+
+    private static double[] expandLinear(float sigma, int radius) {
+        int length = GaussianKernel.getTapCount(radius);
+        float[] weights = new float[length];
+        float[] offsets = new float[length];
+        GaussianKernel.computeLinear(sigma, radius, weights, offsets);
+        return expand(weights, offsets);
+    }
+
+    /**
+     * @return the discrete kernel, centered in the array, that bilinear
+     *         fetches at the specified offsets reproduce
+     */
+    private static double[] expand(float[] weights, float[] offsets) {
+        int reach = 0;
+        for (float offset : offsets) {
+            reach = Math.max(reach, (int) Math.ceil(Math.abs(offset)));
+        }
+        double[] out = new double[reach * 2 + 1];
+        for (int i = 0; i < weights.length; i++) {
+            double lower = Math.floor(offsets[i]);
+            double fraction = offsets[i] - lower;
+            int index = (int) lower + reach;
+            out[index] += weights[i] * (1.0 - fraction);
+            if (fraction > 0.0) {
+                out[index + 1] += weights[i] * fraction;
+            }
+        }
+        return out;
+    }
+
+    private static double[] convolvePasses(double[] kernel, int passes) {
+        double[] result = kernel;
+        for (int i = 1; i < passes; i++) {
+            double[] next = new double[result.length + kernel.length - 1];
+            for (int a = 0; a < result.length; a++) {
+                for (int b = 0; b < kernel.length; b++) {
+                    next[a + b] += result[a] * kernel[b];
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    private static double variance(double[] kernel) {
+        int center = kernel.length / 2;
+        double variance = 0.0;
+        for (int i = 0; i < kernel.length; i++) {
+            variance += kernel[i] * (i - center) * (i - center);
+        }
+        return variance;
+    }
+
+    private static double peak(double[] kernel) {
+        return kernel[kernel.length / 2];
+    }
+
+    /** Compares two centered kernels of possibly different reach. */
+    private static double maxDifference(double[] a, double[] b) {
+        int reach = Math.max(a.length, b.length) / 2;
+        double max = 0.0;
+        for (int x = -reach; x <= reach; x++) {
+            max = Math.max(max, Math.abs(at(a, x) - at(b, x)));
+        }
+        return max;
+    }
+
+    private static double at(double[] kernel, int x) {
+        int index = x + kernel.length / 2;
+        return index >= 0 && index < kernel.length ? kernel[index] : 0.0;
+    }
+}